@@ -0,0 +1,128 @@
+package com.buganalyzer;
+
+import com.buganalyzer.core.BatchProcessor;
+import com.buganalyzer.core.FileSplitter;
+import com.buganalyzer.core.ImportOptions;
+import com.buganalyzer.core.KeywordManager;
+import com.buganalyzer.core.KeywordMatcher;
+import com.buganalyzer.core.SettingsManager;
+import com.buganalyzer.model.BatchSummary;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Headless entry point (no JavaFX is loaded), started as: Launcher --batch <zipDir> [options]
+public class BatchMain {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: --batch <zipDir> [options]",
+            "  --out <dir>        Directory for the <zip>.summary.json files (default: <zipDir>)",
+            "  --workers <n>      Zips processed at once (default: number of cores)",
+            "  --keywords <file>  Keyword categories as JSON {\"category\": [\"keyword\", ...]}",
+            "                     (default: the categories configured in the UI)",
+            "  --no-index         Don't build the trigram search index while importing",
+            "  --no-extract       Read bugreports in place from the zip instead of extracting them",
+            "  --compress         Store extracted reports block-compressed",
+            "  --dedup            Keep identical reports once, shared by all projects",
+            "  --split <mode>     How large reports are split into parts: size, lines or section",
+            "                     (default: as configured in the UI)");
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args));
+    }
+
+    // Returns the process exit code: 0 if every zip was processed, 1 if any failed, 2 on bad usage
+    static int run(String[] args) {
+        File zipDir = null;
+        File outDir = null;
+        File keywordFile = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        SettingsManager settings = new SettingsManager();
+        boolean buildIndex = settings.isBuildSearchIndex();
+        boolean extractReports = !settings.isReadReportsFromZip();
+        boolean compressReports = settings.isCompressReports();
+        boolean deduplicateReports = settings.isDeduplicateReports();
+        FileSplitter.Mode splitMode = settings.getSplitMode();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out": outDir = new File(args[++i]); break;
+                    case "--workers": workers = Integer.parseInt(args[++i]); break;
+                    case "--keywords": keywordFile = new File(args[++i]); break;
+                    case "--no-index": buildIndex = false; break;
+                    case "--no-extract": extractReports = false; break;
+                    case "--compress": compressReports = true; break;
+                    case "--dedup": deduplicateReports = true; break;
+                    case "--split": splitMode = FileSplitter.Mode.valueOf(args[++i].toUpperCase()); break;
+                    default:
+                        if (args[i].startsWith("--") || zipDir != null) {
+                            System.err.println("Unknown argument: " + args[i]);
+                            System.err.println(USAGE);
+                            return 2;
+                        }
+                        zipDir = new File(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (zipDir == null || !zipDir.isDirectory()) {
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        Map<String, List<String>> categories;
+        try {
+            categories = keywordFile != null
+                    ? new ObjectMapper().readValue(keywordFile, new TypeReference<Map<String, List<String>>>() {})
+                    : new KeywordManager().getCategorizedKeywords();
+        } catch (IOException e) {
+            System.err.println("Could not read keywords: " + e.getMessage());
+            return 2;
+        }
+
+        ImportOptions options = new ImportOptions();
+        options.setBuildSearchIndex(buildIndex);
+        options.setExtractReports(extractReports);
+        options.setCompressReports(compressReports);
+        options.setDeduplicateReports(deduplicateReports);
+        options.setSplitPolicy(FileSplitter.policy(splitMode, settings.getSplitPartSizeMB() * 1024L * 1024L,
+                settings.getSplitLinesPerPart()));
+        BatchProcessor processor = new BatchProcessor(KeywordMatcher.forCategories(categories, true), options,
+                outDir != null ? outDir : zipDir, workers);
+
+        List<File> zips = BatchProcessor.findZips(zipDir);
+        System.out.println("Processing " + zips.size() + " zip(s) with " + workers + " worker(s)");
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        try {
+            processor.processAll(zips, summary -> {
+                if (summary.getError() != null) failed.incrementAndGet();
+                System.out.println("[" + done.incrementAndGet() + "/" + zips.size() + "] " + describe(summary));
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        System.out.println("Done: " + (zips.size() - failed.get()) + " ok, " + failed.get() + " failed");
+        return failed.get() == 0 ? 0 : 1;
+    }
+
+    private static String describe(BatchSummary summary) {
+        String name = new File(summary.getZipPath()).getName();
+        if (summary.getError() != null) {
+            return name + " FAILED: " + summary.getError();
+        }
+        int hits = summary.getReports().stream().mapToInt(BatchSummary.ReportSummary::getTotalHits).sum();
+        return name + ": " + summary.getReports().size() + " report(s), " + hits + " hit line(s), "
+                + summary.getElapsedMillis() + " ms";
+    }
+}
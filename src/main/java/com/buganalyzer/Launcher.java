@@ -1,7 +1,14 @@
 package com.buganalyzer;
 
+import java.util.Arrays;
+
 public class Launcher {
     public static void main(String[] args) {
+        // Batch mode must not touch JavaFX, so it can run on a headless server
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchMain.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Main.main(args);
     }
 }
@@ -0,0 +1,156 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.BatchSummary;
+import com.buganalyzer.model.FileMetadata;
+import com.buganalyzer.model.ProjectManifest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+// Headless import + keyword triage of many zips. Each worker imports one zip at a time (same
+// extraction, indexing and splitting as the UI) and then counts keyword-category hits in its
+// bugreports; the scans themselves also run in parallel on the SearchEngine pool. One JSON
+// summary is written per zip.
+public class BatchProcessor {
+
+    public static final String SUMMARY_EXTENSION = ".summary.json";
+    private static final int SAMPLES_PER_CATEGORY = 5;
+    private static final int SAMPLE_LENGTH = 300;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final KeywordMatcher keywordMatcher;
+    private final ImportOptions options;
+    private final File outputDir;
+    private final int workers;
+
+    public BatchProcessor(KeywordMatcher keywordMatcher, ImportOptions options, File outputDir, int workers) {
+        this.keywordMatcher = keywordMatcher;
+        this.options = options;
+        this.outputDir = outputDir;
+        this.workers = Math.max(1, workers);
+    }
+
+    // The .zip files directly inside the directory, by name
+    public static List<File> findZips(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".zip"));
+        if (files == null) return new ArrayList<>();
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    // Processes all zips on the worker pool. onFinished is called from a worker thread as each
+    // zip is done; the returned summaries are in input order.
+    public List<BatchSummary> processAll(List<File> zips, Consumer<BatchSummary> onFinished) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "batch-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<BatchSummary>> futures = new ArrayList<>();
+            for (File zip : zips) {
+                futures.add(executor.submit(() -> {
+                    BatchSummary summary = process(zip);
+                    onFinished.accept(summary);
+                    return summary;
+                }));
+            }
+            List<BatchSummary> summaries = new ArrayList<>();
+            for (Future<BatchSummary> future : futures) {
+                try {
+                    summaries.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return summaries;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Imports one zip next to itself (as the UI does), triages it and writes its summary.
+    // Failures are recorded in the summary instead of being thrown.
+    public BatchSummary process(File zip) {
+        long start = System.nanoTime();
+        BatchSummary summary = new BatchSummary(zip.getAbsolutePath());
+        try {
+            ProjectManifest manifest = ZipExtractor.extractProject(zip, options);
+            File projectDir = new File(zip.getAbsoluteFile().getParent(), manifest.getProjectName());
+            ProjectManager.saveProject(manifest, projectDir);
+            summary.setProjectDir(projectDir.getAbsolutePath());
+
+            for (FileMetadata file : manifest.getFiles()) {
+                if (file.getType() == FileMetadata.FileType.BUGREPORT) {
+                    summary.getReports().add(summarize(file, projectDir));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            summary.setError(e.toString());
+        }
+        summary.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+
+        try {
+            writeSummary(summary, summaryFile(zip));
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (summary.getError() == null) {
+                summary.setError("Could not write summary: " + e.getMessage());
+            }
+        }
+        return summary;
+    }
+
+    public File summaryFile(File zip) {
+        return new File(outputDir, FilenameUtils.getBaseName(zip.getName()) + SUMMARY_EXTENSION);
+    }
+
+    private BatchSummary.ReportSummary summarize(FileMetadata file, File projectDir) throws IOException {
+        BatchSummary.ReportSummary report = new BatchSummary.ReportSummary(file.getFileName(), file.getOriginalPath());
+        report.setLineCount(file.getLineCount());
+        for (String category : keywordMatcher.getCategories()) {
+            report.getCategoryHits().put(category, 0);
+        }
+        if (keywordMatcher.isEmpty()) return report;
+
+        ProjectSearch.searchReport(file, projectDir, null, SearchEngine.keywordMatcher(keywordMatcher), new SearchHandle(), results -> {
+            for (SearchEngine.SearchResult r : results) {
+                report.setTotalHits(report.getTotalHits() + 1);
+                for (String keyword : r.keywords) {
+                    report.getKeywordHits().merge(keyword, 1, Integer::sum);
+                }
+                for (String category : r.categories) {
+                    report.getCategoryHits().merge(category, 1, Integer::sum);
+                    List<String> samples = report.getSamples().computeIfAbsent(category, k -> new ArrayList<>());
+                    if (samples.size() < SAMPLES_PER_CATEGORY) {
+                        samples.add("[Line " + r.lineNumber + "] " + truncate(r.lineContent.trim()));
+                    }
+                }
+            }
+        });
+        return report;
+    }
+
+    private static String truncate(String line) {
+        return line.length() > SAMPLE_LENGTH ? line.substring(0, SAMPLE_LENGTH) + "..." : line;
+    }
+
+    private static void writeSummary(BatchSummary summary, File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file, summary);
+    }
+}
@@ -0,0 +1,250 @@
+package com.buganalyzer.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// A file stored as independently compressed blocks, for projects that keep their bugreports
+// compressed on disk. Reading a range only decompresses the blocks it touches, so the viewer
+// and search work on it like on a plain file, and blocks can be decompressed in parallel.
+// Recently used blocks are kept decompressed in a small LRU cache. Blocks are raw deflate at
+// zlib's fastest level, which keeps import close to plain-copy speed.
+//
+// Format: "BLZ1", codec id (1 byte), block size (int), the compressed blocks, then the block
+// index: blockCount + 1 offsets of the blocks in this file (longs, the last one is where the
+// index starts), the uncompressed size (long) and blockCount (int).
+public class BlockCompressedFile implements ByteSource {
+
+    public static final String EXTENSION = ".blz";
+
+    private static final int MAGIC = 0x424C5A31; // "BLZ1"
+    private static final int HEADER_SIZE = 9;
+    private static final int FOOTER_SIZE = 12;
+    private static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    private static final int CACHED_BLOCKS = 32;
+    private static final int CODEC_DEFLATE = 1; // The only codec so far
+
+    private final File file;
+    private final String name;
+    private final int blockSize;
+    private final long size;
+    private final long[] blockOffsets;
+    private final Map<Integer, byte[]> blocks = new LinkedHashMap<>(CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    private BlockCompressedFile(File file, String name, int blockSize, long size, long[] blockOffsets) {
+        this.file = file;
+        this.name = name;
+        this.blockSize = blockSize;
+        this.size = size;
+        this.blockOffsets = blockOffsets;
+    }
+
+    // Opens a block-compressed file; name is the name of the file it holds
+    public static BlockCompressedFile open(File file, String name) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = readAt(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a block-compressed file: " + file.getName());
+            }
+            int codec = header.get();
+            if (codec != CODEC_DEFLATE) {
+                throw new IOException("Unknown block codec " + codec + " in " + file.getName());
+            }
+            int blockSize = header.getInt();
+
+            ByteBuffer footer = readAt(channel, channel.size() - FOOTER_SIZE, FOOTER_SIZE);
+            long size = footer.getLong();
+            int blockCount = footer.getInt();
+            long indexStart = channel.size() - FOOTER_SIZE - (blockCount + 1L) * 8;
+            ByteBuffer index = readAt(channel, indexStart, (blockCount + 1) * 8);
+            long[] offsets = new long[blockCount + 1];
+            for (int i = 0; i <= blockCount; i++) {
+                offsets[i] = index.getLong();
+            }
+            return new BlockCompressedFile(file, name, blockSize, size, offsets);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long lastModified() {
+        return file.lastModified();
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (position >= size) return -1;
+        int count = (int) Math.min(length, size - position);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            int done = 0;
+            while (done < count) {
+                long pos = position + done;
+                byte[] block = block(channel, (int) (pos / blockSize));
+                int inBlock = (int) (pos % blockSize);
+                int n = Math.min(count - done, block.length - inBlock);
+                System.arraycopy(block, inBlock, buffer, offset + done, n);
+                done += n;
+            }
+        }
+        return count;
+    }
+
+    // Decompresses outside the lock, so parallel search chunks decompress their blocks at once
+    private byte[] block(FileChannel channel, int blockNumber) throws IOException {
+        synchronized (blocks) {
+            byte[] block = blocks.get(blockNumber);
+            if (block != null) return block;
+        }
+        long start = blockOffsets[blockNumber];
+        ByteBuffer compressed = readAt(channel, start, (int) (blockOffsets[blockNumber + 1] - start));
+        byte[] block = new byte[(int) Math.min(blockSize, size - (long) blockNumber * blockSize)];
+        decompress(compressed.array(), block);
+        synchronized (blocks) {
+            blocks.put(blockNumber, block);
+        }
+        return block;
+    }
+
+    private void decompress(byte[] compressed, byte[] block) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int total = 0;
+            while (total < block.length && !inflater.finished()) {
+                int n = inflater.inflate(block, total, block.length - total);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                total += n;
+            }
+            if (total < block.length) {
+                throw new IOException("Truncated block in " + file.getName());
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block in " + file.getName(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of block-compressed file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Writes a block-compressed file as the bytes stream in; the block index is written on close
+    public static class Writer extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] block;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        private final byte[] deflateBuffer = new byte[64 * 1024];
+        private long[] offsets = new long[64];
+        private int blockCount;
+        private int blockLength;
+        private long position = HEADER_SIZE;
+        private long size;
+
+        public Writer(File file) throws IOException {
+            this(file, DEFAULT_BLOCK_SIZE);
+        }
+
+        public Writer(File file, int blockSize) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+            this.block = new byte[blockSize];
+            out.writeInt(MAGIC);
+            out.writeByte(CODEC_DEFLATE);
+            out.writeInt(blockSize);
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, block.length - blockLength);
+                System.arraycopy(b, off, block, blockLength, n);
+                blockLength += n;
+                size += n;
+                off += n;
+                len -= n;
+                if (blockLength == block.length) {
+                    writeBlock();
+                }
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            compressed.reset();
+            deflater.reset();
+            deflater.setInput(block, 0, blockLength);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(deflateBuffer);
+                compressed.write(deflateBuffer, 0, n);
+            }
+            if (blockCount == offsets.length) {
+                long[] grown = new long[offsets.length * 2];
+                System.arraycopy(offsets, 0, grown, 0, blockCount);
+                offsets = grown;
+            }
+            offsets[blockCount++] = position;
+            compressed.writeTo(out);
+            position += compressed.size();
+            blockLength = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (blockLength > 0) {
+                    writeBlock();
+                }
+                for (int i = 0; i < blockCount; i++) {
+                    out.writeLong(offsets[i]);
+                }
+                out.writeLong(position);
+                out.writeLong(size);
+                out.writeInt(blockCount);
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.buganalyzer.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// Random-access, read-only bytes of one logical file, wherever they are actually stored.
+// Sources that keep something open between reads release it in close(); a closed source
+// must not be read again.
+public interface ByteSource extends Closeable {
+
+    String getName();
+
+    long size();
+
+    // Modification time of the stored bytes, which sidecar indexes are checked against
+    long lastModified();
+
+    // Reads up to length bytes starting at the absolute position. Returns the number of bytes
+    // read, or -1 if the position is at or past the end.
+    int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+    // Fills the buffer completely unless the end is reached first; returns the bytes read
+    default int readFully(long position, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = read(position + total, buffer, offset + total, length - total);
+            if (read <= 0) break;
+            total += read;
+        }
+        return total;
+    }
+
+    // Sources that hold nothing open between reads have nothing to release
+    @Override
+    default void close() throws IOException {
+    }
+
+    // Closes every source, logging rather than stopping at a failure
+    static void closeAll(List<? extends ByteSource> sources) {
+        for (ByteSource source : sources) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
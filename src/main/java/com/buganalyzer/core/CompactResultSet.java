@@ -0,0 +1,185 @@
+package com.buganalyzer.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+// Search hits stored as primitive arrays (file id, line number, byte offset) instead of one
+// String per hit: about 12 bytes per hit, 16 once hits span several files. Line text is read
+// back from the source file only when it is asked for, e.g. by a visible list cell, and the
+// most recently read lines are cached.
+//
+// Hits are appended by the search thread and read by the UI thread, so access is synchronized.
+public class CompactResultSet {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int CACHED_LINES = 512;
+    private static final int READ_STEP = 512;
+    private static final int SCAN_WINDOW = 1024 * 1024;
+
+    private final List<? extends ByteSource> sources; // Indexed by file id
+    private int size;
+    private int[] fileIds;  // Null while every hit is in file 0
+    private int[] lineNumbers = new int[INITIAL_CAPACITY];
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private final Map<Integer, String> lineCache = new LinkedHashMap<>(CACHED_LINES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+            return size() > CACHED_LINES;
+        }
+    };
+
+    public CompactResultSet(List<? extends ByteSource> sources) {
+        this.sources = sources;
+    }
+
+    public synchronized void add(int fileId, int lineNumber, long offset) {
+        if (size == lineNumbers.length) {
+            int capacity = size * 2;
+            lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            if (fileIds != null) fileIds = Arrays.copyOf(fileIds, capacity);
+        }
+        if (fileId != 0 && fileIds == null) {
+            fileIds = new int[lineNumbers.length];
+        }
+        if (fileIds != null) fileIds[size] = fileId;
+        lineNumbers[size] = lineNumber;
+        offsets[size] = offset;
+        size++;
+    }
+
+    public synchronized void addAll(List<SearchEngine.SearchResult> results) {
+        for (SearchEngine.SearchResult r : results) {
+            add(r.fileIndex, r.lineNumber, r.offset);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getFileId(int i) {
+        checkIndex(i);
+        return fileIds != null ? fileIds[i] : 0;
+    }
+
+    public synchronized int getLineNumber(int i) {
+        checkIndex(i);
+        return lineNumbers[i];
+    }
+
+    public synchronized long getOffset(int i) {
+        checkIndex(i);
+        return offsets[i];
+    }
+
+    public ByteSource getSource(int fileId) {
+        return sources.get(fileId);
+    }
+
+    // Text of the i-th hit's line, without its line break
+    public String getLine(int i) {
+        synchronized (this) {
+            String cached = lineCache.get(i);
+            if (cached != null) return cached;
+        }
+        String line;
+        try {
+            line = readLine(getSource(getFileId(i)), getOffset(i));
+        } catch (IOException e) {
+            line = "<读取失败: " + e.getMessage() + ">";
+        }
+        synchronized (this) {
+            lineCache.put(i, line);
+        }
+        return line;
+    }
+
+    // Reads from the offset up to the next '\n', growing the read until the line end is found
+    private static String readLine(ByteSource source, long offset) throws IOException {
+        byte[] buffer = new byte[READ_STEP];
+        int length = 0;
+        while (true) {
+            int read = source.readFully(offset + length, buffer, length, buffer.length - length);
+            for (int j = length; j < length + read; j++) {
+                if (buffer[j] == '\n') {
+                    return decode(buffer, j);
+                }
+            }
+            length += read;
+            if (length < buffer.length) {
+                return decode(buffer, length); // End of file
+            }
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+    }
+
+    private static String decode(byte[] data, int end) {
+        return decode(data, 0, end);
+    }
+
+    private static String decode(byte[] data, int start, int end) {
+        if (end > start && data[end - 1] == '\r') end--;
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // Reader for a scan over many hits' lines, such as a find-in-results filter. Hits come in
+    // offset order, so asking for them in row order reads each file sequentially through one
+    // large window instead of once per hit. Bypasses the line cache, which is left to the rows
+    // on screen. Not thread-safe: one per scan.
+    public IntFunction<String> newLineScanner() {
+        return new LineScanner();
+    }
+
+    private class LineScanner implements IntFunction<String> {
+        private byte[] window = new byte[SCAN_WINDOW];
+        private int windowFile = -1;
+        private long windowStart;
+        private int windowLength;
+
+        @Override
+        public String apply(int i) {
+            int fileId = getFileId(i);
+            long offset = getOffset(i);
+            try {
+                String line = cut(fileId, offset);
+                if (line != null) return line;
+                // Read the window from this line on, growing it until the whole line fits
+                ByteSource source = getSource(fileId);
+                while (true) {
+                    windowFile = fileId;
+                    windowStart = offset;
+                    windowLength = Math.max(0, source.readFully(offset, window, 0, window.length));
+                    line = cut(fileId, offset);
+                    if (line != null) return line;
+                    window = new byte[window.length * 2];
+                }
+            } catch (IOException e) {
+                windowFile = -1;
+                return "<读取失败: " + e.getMessage() + ">";
+            }
+        }
+
+        // The line at the offset if the window holds all of it, else null
+        private String cut(int fileId, long offset) {
+            if (fileId != windowFile || offset < windowStart || offset > windowStart + windowLength) return null;
+            int start = (int) (offset - windowStart);
+            for (int j = start; j < windowLength; j++) {
+                if (window[j] == '\n') return decode(window, start, j);
+            }
+            // A window cut short by the end of the file holds the last line whole
+            return windowLength < window.length ? decode(window, start, windowLength) : null;
+        }
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Hit " + i + " of " + size);
+        }
+    }
+}
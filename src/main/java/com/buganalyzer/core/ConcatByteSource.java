@@ -0,0 +1,90 @@
+package com.buganalyzer.core;
+
+import java.io.IOException;
+import java.util.List;
+
+// Several sources read back to back as one, e.g. the split parts of a bugreport
+public class ConcatByteSource implements ByteSource {
+
+    private final String name;
+    private final List<? extends ByteSource> sources;
+    private final long[] starts; // sources.size() + 1 offsets, the last one is the total size
+
+    public ConcatByteSource(String name, List<? extends ByteSource> sources) {
+        this.name = name;
+        this.sources = sources;
+        this.starts = new long[sources.size() + 1];
+        for (int i = 0; i < sources.size(); i++) {
+            starts[i + 1] = starts[i] + sources.get(i).size();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long size() {
+        return starts[starts.length - 1];
+    }
+
+    @Override
+    public long lastModified() {
+        long modified = 0;
+        for (ByteSource source : sources) {
+            modified = Math.max(modified, source.lastModified());
+        }
+        return modified;
+    }
+
+    public int getSourceCount() {
+        return sources.size();
+    }
+
+    public ByteSource getSource(int i) {
+        return sources.get(i);
+    }
+
+    // Offset of the i-th source inside the concatenation
+    public long getSourceStart(int i) {
+        return starts[i];
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (position >= size()) return -1;
+        int total = 0;
+        int i = sourceAt(position);
+        while (total < length && i < sources.size()) {
+            long local = position + total - starts[i];
+            int read = sources.get(i).read(local, buffer, offset + total, length - total);
+            if (read <= 0) {
+                i++;
+                continue;
+            }
+            total += read;
+            if (position + total >= starts[i + 1]) i++;
+        }
+        return total;
+    }
+
+    private int sourceAt(long position) {
+        int lo = 0;
+        int hi = sources.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public void close() {
+        ByteSource.closeAll(sources);
+    }
+}
@@ -0,0 +1,307 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.FileMetadata;
+import com.buganalyzer.model.FilePart;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.function.IOSupplier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Content-addressed store of extracted bugreports shared by all projects, under
+// ~/.bugreport_analyzer/store. Each distinct report is kept once in objects/<sha-256>/ together
+// with its sidecar indexes and the metadata they describe, and projects point at that folder
+// (FileMetadata.storeDir) instead of holding a copy. An alias named after the zip entry's size
+// and CRC-32 leads to the object, so a report that is already stored is recognised from the
+// zip's directory without inflating all of it again.
+//
+// Size and CRC-32 are not a content hash: two different reports can share them. An alias hit
+// is therefore only taken once the entry's first SAMPLE_SIZE bytes match the stored content.
+// Reports equal in size, CRC-32 and first 64 KB but different further on would still be taken
+// for one another; that is accepted so that the import doesn't inflate every entry to hash it.
+//
+// Each object lists the project files that use it in refs.txt. Objects are only removed by
+// purge(), on request, once no project that lists them (or that the caller knows of) still
+// points at them.
+public class ContentStore {
+
+    public static final String CONTENT_NAME = "report.txt"; // Name of the content in every object
+    public static final int SAMPLE_SIZE = 64 * 1024;
+    private static final String CONFIG_DIR = System.getProperty("user.home") + File.separator + ".bugreport_analyzer";
+    private static final String OBJECT_FILE = "object.json";
+    private static final String REFS_FILE = "refs.txt";
+    // An import commits its objects before it saves the project that uses them, so recent
+    // objects and staging folders are left alone by purge()
+    private static final long PURGE_GRACE_MILLIS = 24L * 60 * 60 * 1000;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    // Space taken by the store, and by the objects no known project uses
+    public static class Usage {
+        private final int objectCount;
+        private final long bytes;
+        private final int unreferencedCount;
+        private final long unreferencedBytes;
+
+        Usage(int objectCount, long bytes, int unreferencedCount, long unreferencedBytes) {
+            this.objectCount = objectCount;
+            this.bytes = bytes;
+            this.unreferencedCount = unreferencedCount;
+            this.unreferencedBytes = unreferencedBytes;
+        }
+
+        public int getObjectCount() { return objectCount; }
+        public long getBytes() { return bytes; }
+        public int getUnreferencedCount() { return unreferencedCount; }
+        public long getUnreferencedBytes() { return unreferencedBytes; }
+    }
+
+    private final File objectsDir;
+    private final File aliasesDir;
+    private final File stagingDir;
+
+    public ContentStore() {
+        this(new File(CONFIG_DIR, "store"));
+    }
+
+    public ContentStore(File root) {
+        this.objectsDir = new File(root, "objects");
+        this.aliasesDir = new File(root, "aliases");
+        this.stagingDir = new File(root, "staging");
+    }
+
+    // Folder holding a file's content and sidecar indexes: its store object, or the project folder
+    public static File dirOf(FileMetadata fileMetadata, File projectDir) {
+        return fileMetadata.getStoreDir() != null ? new File(fileMetadata.getStoreDir()) : projectDir;
+    }
+
+    // Name of the file's uncompressed content in that folder, which its indexes are keyed by
+    public static String nameOf(FileMetadata fileMetadata) {
+        return fileMetadata.getStoreDir() != null ? CONTENT_NAME : fileMetadata.getFileName();
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JRE has SHA-256
+        }
+    }
+
+    // The stored report whose zip entry had this size and CRC-32, or null if there is none. head
+    // supplies the entry's first SAMPLE_SIZE bytes (fewer if it is shorter); it is only asked
+    // for when there is a candidate, which must start with the same bytes.
+    public FileMetadata lookup(long size, long crc, IOSupplier<byte[]> head) throws IOException {
+        File alias = aliasFile(size, crc);
+        if (!alias.exists()) return null;
+        File objectDir = new File(objectsDir, FileUtils.readFileToString(alias, StandardCharsets.UTF_8).trim());
+        if (!objectDir.isDirectory()) return null;
+        FileMetadata stored = load(objectDir);
+        return startsWith(stored, head.get()) ? stored : null;
+    }
+
+    private static boolean startsWith(FileMetadata stored, byte[] head) {
+        File dir = new File(stored.getStoreDir());
+        try (ByteSource content = stored.getCompressedFile() != null
+                ? BlockCompressedFile.open(new File(dir, stored.getCompressedFile()), CONTENT_NAME)
+                : new FileByteSource(new File(dir, CONTENT_NAME))) {
+            byte[] bytes = new byte[head.length];
+            return content.readFully(0, bytes, 0, bytes.length) == bytes.length && Arrays.equals(bytes, head);
+        } catch (IOException e) {
+            // A damaged object is never a match; the report is extracted again
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // A new empty folder to extract a report into while its hash is computed. It is on the
+    // same file system as the objects, so committing it is a rename.
+    public File newStaging() throws IOException {
+        stagingDir.mkdirs();
+        return Files.createTempDirectory(stagingDir.toPath(), "import").toFile();
+    }
+
+    // Files a staged report under its SHA-256, or drops it if the same content is already stored,
+    // and records the size/CRC-32 alias. metadata describes the staged files by their names in
+    // the folder. Returns the stored metadata, with storeDir set.
+    public synchronized FileMetadata commit(File staging, byte[] sha256, long size, long crc, FileMetadata metadata) throws IOException {
+        File objectDir = new File(objectsDir, toHex(sha256));
+        if (objectDir.isDirectory()) {
+            FileUtils.deleteDirectory(staging);
+        } else {
+            mapper.writeValue(new File(staging, OBJECT_FILE), metadata);
+            objectsDir.mkdirs();
+            try {
+                Files.move(staging.toPath(), objectDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // Another process may have stored the same content just now
+                if (!objectDir.isDirectory()) throw e;
+                FileUtils.deleteDirectory(staging);
+            }
+        }
+
+        aliasesDir.mkdirs();
+        File alias = aliasFile(size, crc);
+        File partial = new File(aliasesDir, alias.getName() + ".part");
+        FileUtils.writeStringToFile(partial, objectDir.getName(), StandardCharsets.UTF_8);
+        Files.move(partial.toPath(), alias.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return load(objectDir);
+    }
+
+    // A project's entry for a stored report: its own name and path in the zip, the store's
+    // content and indexes. Part names follow the project's file name.
+    public static FileMetadata forProject(FileMetadata stored, String fileName, String originalPath) {
+        FileMetadata metadata = mapper.convertValue(stored, FileMetadata.class);
+        metadata.setFileName(fileName);
+        metadata.setOriginalPath(originalPath);
+        if (metadata.getParts() != null) {
+            for (int i = 0; i < metadata.getParts().size(); i++) {
+                FilePart part = metadata.getParts().get(i);
+                part.setName(FileSplitter.partName(fileName, i + 1));
+            }
+        }
+        return metadata;
+    }
+
+    // Records that a project file uses the object. Called whenever a project is saved.
+    public static synchronized void addReference(File objectDir, File projectFile) throws IOException {
+        File refs = new File(objectDir, REFS_FILE);
+        String path = projectFile.getAbsolutePath();
+        if (refs.exists() && Files.readAllLines(refs.toPath(), StandardCharsets.UTF_8).contains(path)) return;
+        Files.write(refs.toPath(), List.of(path), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // knownProjects are project files to count as users besides those the objects list, e.g.
+    // the recent projects, which covers objects stored before references were recorded
+    public Usage usage(List<File> knownProjects) throws IOException {
+        List<File> objects = listObjects();
+        List<File> unreferenced = unreferenced(objects, knownProjects);
+        return new Usage(objects.size(), sizeOf(objects), unreferenced.size(), sizeOf(unreferenced));
+    }
+
+    // Deletes the objects no project uses any more, their aliases, and staging folders left by
+    // imports that died. Returns what was removed.
+    public synchronized Usage purge(List<File> knownProjects) throws IOException {
+        List<File> objects = listObjects();
+        List<File> unreferenced = unreferenced(objects, knownProjects);
+        long total = sizeOf(objects);
+        long bytes = sizeOf(unreferenced);
+        for (File objectDir : unreferenced) {
+            FileUtils.deleteDirectory(objectDir);
+        }
+        File[] aliases = aliasesDir.listFiles();
+        if (aliases != null) {
+            for (File alias : aliases) {
+                String target = FileUtils.readFileToString(alias, StandardCharsets.UTF_8).trim();
+                if (!new File(objectsDir, target).isDirectory()) Files.deleteIfExists(alias.toPath());
+            }
+        }
+        File[] stagings = stagingDir.listFiles();
+        if (stagings != null) {
+            for (File staging : stagings) {
+                if (!isRecent(staging)) FileUtils.deleteDirectory(staging);
+            }
+        }
+        return new Usage(objects.size() - unreferenced.size(), total - bytes, unreferenced.size(), bytes);
+    }
+
+    private List<File> listObjects() {
+        List<File> objects = new ArrayList<>();
+        File[] dirs = objectsDir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            objects.addAll(Arrays.asList(dirs));
+        }
+        return objects;
+    }
+
+    private List<File> unreferenced(List<File> objects, List<File> knownProjects) throws IOException {
+        Map<File, Set<String>> storeDirs = new HashMap<>();
+        Set<String> used = new HashSet<>();
+        for (File project : knownProjects) {
+            Set<String> dirs = storeDirsOf(project, storeDirs);
+            if (dirs != null) used.addAll(dirs);
+        }
+        List<File> unreferenced = new ArrayList<>();
+        for (File objectDir : objects) {
+            String path = objectDir.getAbsolutePath();
+            if (used.contains(path) || isRecent(objectDir)) continue;
+            boolean referenced = false;
+            File refs = new File(objectDir, REFS_FILE);
+            if (refs.exists()) {
+                for (String ref : Files.readAllLines(refs.toPath(), StandardCharsets.UTF_8)) {
+                    if (ref.isBlank()) continue;
+                    Set<String> dirs = storeDirsOf(new File(ref), storeDirs);
+                    // A project file that can't be read might still use it
+                    if (dirs == null || dirs.contains(path)) {
+                        referenced = true;
+                        break;
+                    }
+                }
+            }
+            if (!referenced) unreferenced.add(objectDir);
+        }
+        return unreferenced;
+    }
+
+    // The store objects a project file points at: empty if the file is gone, null if it can't be read
+    private static Set<String> storeDirsOf(File projectFile, Map<File, Set<String>> cache) {
+        File key = projectFile.getAbsoluteFile();
+        if (cache.containsKey(key)) return cache.get(key);
+        Set<String> dirs = new HashSet<>();
+        if (key.exists()) {
+            try {
+                for (FileMetadata file : ProjectManager.loadProject(key).getFiles()) {
+                    if (file.getStoreDir() != null) dirs.add(new File(file.getStoreDir()).getAbsolutePath());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                dirs = null;
+            }
+        }
+        cache.put(key, dirs);
+        return dirs;
+    }
+
+    private static boolean isRecent(File dir) {
+        return System.currentTimeMillis() - dir.lastModified() < PURGE_GRACE_MILLIS;
+    }
+
+    private static long sizeOf(List<File> dirs) {
+        long size = 0;
+        for (File dir : dirs) {
+            size += FileUtils.sizeOfDirectory(dir);
+        }
+        return size;
+    }
+
+    private FileMetadata load(File objectDir) throws IOException {
+        FileMetadata metadata = mapper.readValue(new File(objectDir, OBJECT_FILE), FileMetadata.class);
+        metadata.setStoreDir(objectDir.getAbsolutePath());
+        return metadata;
+    }
+
+    private File aliasFile(long size, long crc) {
+        return new File(aliasesDir, size + "-" + String.format("%08x", crc));
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
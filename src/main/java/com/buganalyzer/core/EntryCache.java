@@ -0,0 +1,153 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.ArchiveEntry;
+import com.buganalyzer.model.ProjectManifest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Entries that weren't extracted at import are read from the original zip the first time they
+// are opened and kept under <project>/.entries/<path in zip>, so later opens are plain files.
+// Entries of the outer zip are read straight from the data offset recorded at import; nested
+// ones are looked up by name. Either way the copy is checked against the entry's CRC-32.
+public class EntryCache {
+
+    public static final String CACHE_DIR = ".entries";
+
+    // One lock per cached file: fetching one entry doesn't hold up opening any other
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    // The file holding the entry's bytes: the extracted file, or the cached copy (fetched now if
+    // needed). Blocks while fetching, so call it off the FX thread.
+    public static File fetch(ProjectManifest manifest, File projectDir, ArchiveEntry entry) throws IOException {
+        File cached = cacheFile(projectDir, entry);
+        synchronized (LOCKS.computeIfAbsent(cached.getAbsolutePath(), k -> new Object())) {
+            return fetch(manifest, projectDir, entry, cached);
+        }
+    }
+
+    private static File fetch(ProjectManifest manifest, File projectDir, ArchiveEntry entry, File cached) throws IOException {
+        if (entry.getExtractedFile() != null) {
+            File extracted = new File(projectDir, entry.getExtractedFile());
+            if (extracted.exists()) return extracted;
+        }
+        if (cached.exists() && (entry.getSize() < 0 || cached.length() == entry.getSize())) {
+            return cached;
+        }
+
+        File zipFile = new File(manifest.getOriginalZipPath());
+        if (!zipFile.exists()) {
+            throw new FileNotFoundException("Original zip not found: " + zipFile);
+        }
+        cached.getParentFile().mkdirs();
+        // Copied under a temporary name so a cancelled fetch never looks complete
+        File partial = new File(cached.getParentFile(), cached.getName() + ".part");
+        try (CheckedOutputStream out = new CheckedOutputStream(new FileOutputStream(partial), new CRC32())) {
+            if (ZipEntrySource.canReadInPlace(entry)) {
+                copyInPlace(zipFile, entry, out);
+            } else {
+                try (ZipFile zip = new ZipFile(zipFile)) {
+                    if (!copyEntry(zip, entry.getZipPath(), 0, entry.getName(), out)) {
+                        throw new FileNotFoundException("Entry not found in " + zipFile.getName() + ": " + entry.fullPath());
+                    }
+                }
+            }
+            if (entry.getCrc() >= 0 && out.getChecksum().getValue() != entry.getCrc()) {
+                throw new IOException("CRC mismatch for " + entry.fullPath() + " in " + zipFile.getName()
+                        + "; the zip may have changed since it was imported");
+            }
+        } catch (IOException e) {
+            partial.delete();
+            throw e;
+        }
+        Files.move(partial.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return cached;
+    }
+
+    // Name of the cached copy relative to the project folder, as used by FileMetadata
+    public static String relativeName(File projectDir, File file) {
+        return projectDir.toPath().relativize(file.toPath()).toString();
+    }
+
+    // Path segments like ".." or absolute names must not lead out of the cache folder
+    static File cacheFile(File projectDir, ArchiveEntry entry) {
+        File file = new File(projectDir, CACHE_DIR);
+        for (String zipName : entry.getZipPath()) {
+            file = appendSegments(file, zipName);
+        }
+        return appendSegments(file, entry.getName());
+    }
+
+    private static File appendSegments(File dir, String path) {
+        for (String segment : path.split("[/\\\\]")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            dir = new File(dir, segment.equals("..") ? "_" : segment);
+        }
+        return dir;
+    }
+
+    // Stored or deflated data at the offset found at import, without reading the zip's directory
+    private static void copyInPlace(File zipFile, ArchiveEntry entry, OutputStream out) throws IOException {
+        try (ZipEntrySource source = new ZipEntrySource(zipFile, entry.getName(), entry)) {
+            byte[] buffer = new byte[256 * 1024];
+            long position = 0;
+            int read;
+            while ((read = source.read(position, buffer, 0, buffer.length)) > 0) {
+                out.write(buffer, 0, read);
+                position += read;
+            }
+        }
+    }
+
+    private static boolean copyEntry(ZipFile zip, List<String> zipPath, int depth, String name, OutputStream out) throws IOException {
+        String target = depth < zipPath.size() ? zipPath.get(depth) : name;
+        ZipArchiveEntry entry = zip.getEntry(target);
+        if (entry == null) return false;
+        try (InputStream is = zip.getInputStream(entry)) {
+            if (depth == zipPath.size()) {
+                IOUtils.copy(is, out);
+                return true;
+            }
+            return copyFromNested(is, entry.getSize(), zipPath, depth + 1, name, out);
+        }
+    }
+
+    // Same memory-or-stream choice as the import
+    private static boolean copyFromNested(InputStream is, long size, List<String> zipPath, int depth, String name,
+                                          OutputStream out) throws IOException {
+        if (size >= 0 && size <= ZipExtractor.inMemoryNestedLimit()) {
+            byte[] data = IOUtils.toByteArray(is, size);
+            try (ZipFile nested = new ZipFile(new SeekableInMemoryByteChannel(data))) {
+                return copyEntry(nested, zipPath, depth, name, out);
+            }
+        }
+        String target = depth < zipPath.size() ? zipPath.get(depth) : name;
+        ZipArchiveInputStream zin = new ZipArchiveInputStream(is, "UTF-8", true, true);
+        ZipArchiveEntry entry;
+        while ((entry = zin.getNextZipEntry()) != null) {
+            if (!entry.getName().equals(target) || !zin.canReadEntryData(entry)) continue;
+            if (depth == zipPath.size()) {
+                IOUtils.copy(zin, out);
+                return true;
+            }
+            return copyFromNested(zin, entry.getSize(), zipPath, depth + 1, name, out);
+        }
+        return false;
+    }
+}
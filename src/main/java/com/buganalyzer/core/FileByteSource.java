@@ -0,0 +1,74 @@
+package com.buganalyzer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// A plain file on disk, read with positional channel reads of just the requested slice. The
+// channel is opened on the first read and kept until close(), so a source that is never read
+// holds nothing open.
+public class FileByteSource implements ByteSource {
+
+    private final File file;
+    private FileChannel channel; // Guarded by this
+    private boolean closed;
+
+    public FileByteSource(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getName() {
+        return file.getName();
+    }
+
+    @Override
+    public long size() {
+        return file.length();
+    }
+
+    @Override
+    public long lastModified() {
+        return file.lastModified();
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        FileChannel channel = channel();
+        long size = channel.size();
+        if (position >= size) return -1;
+        ByteBuffer target = ByteBuffer.wrap(buffer, offset, (int) Math.min(length, size - position));
+        int total = 0;
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position + total);
+            if (read < 0) break;
+            total += read;
+        }
+        return total > 0 ? total : -1;
+    }
+
+    // Positional reads don't move the channel's position, so concurrent readers can share it.
+    // A reader interrupted mid-read closes the channel; the next read opens it again.
+    private synchronized FileChannel channel() throws IOException {
+        if (closed) throw new IOException(file.getName() + " is closed");
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
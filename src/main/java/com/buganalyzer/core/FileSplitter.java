@@ -1,63 +1,148 @@
 package com.buganalyzer.core;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import com.buganalyzer.model.FilePart;
+
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+// Splits a file into parts without copying it: each part is a byte range of the one extracted
+// file. A SplitPolicy picks the lines the parts start on, so a part never cuts a line (and
+// therefore never a UTF-8 character, since '\n' can't occur inside one). Projects imported
+// before this still list physical "_subN" files in FileMetadata.splitParts.
 public class FileSplitter {
 
-    public static List<String> splitFile(File sourceFile) throws IOException {
-        long fileSize = sourceFile.length();
-        if (fileSize < 10 * 1024 * 1024) { // Less than 10MB
-            return null;
+    public enum Mode {
+        SIZE, LINES, SECTION
+    }
+
+    public static final int DEFAULT_LINES_PER_PART = 200_000;
+    private static final long MIN_PART_BYTES = 8L * 1024 * 1024;
+    private static final long MAX_PART_BYTES = 64L * 1024 * 1024;
+
+    // Chooses where the parts of a file start
+    public interface SplitPolicy {
+        // Ascending 1-based first lines of the parts (the first is always 1), or null to leave
+        // the file whole. sections may be null when no section index was built.
+        int[] partStarts(LineIndex lines, SectionIndex sections);
+    }
+
+    // Part size that keeps a part's worth of lines comfortably inside the viewer's heap
+    public static long defaultPartBytes() {
+        long budget = Runtime.getRuntime().maxMemory() / 16;
+        return Math.max(MIN_PART_BYTES, Math.min(MAX_PART_BYTES, budget));
+    }
+
+    public static SplitPolicy policy(Mode mode, long partBytes, int linesPerPart) {
+        long bytes = partBytes > 0 ? partBytes : defaultPartBytes();
+        switch (mode) {
+            case LINES: return byLines(linesPerPart > 0 ? linesPerPart : DEFAULT_LINES_PER_PART);
+            case SECTION: return bySection(bytes);
+            default: return bySize(bytes);
         }
+    }
+
+    // Parts of about partBytes each, ending at the first line break past that size
+    public static SplitPolicy bySize(long partBytes) {
+        return named("size:" + partBytes, (lines, sections) -> {
+            if (lines.getFileSize() <= partBytes) return null;
+            List<Integer> starts = new ArrayList<>();
+            int line = 1;
+            while (line <= lines.getLineCount()) {
+                starts.add(line);
+                line = lines.lineAt(lines.lineStart(line) + partBytes - 1) + 1;
+            }
+            return toArray(starts);
+        });
+    }
+
+    // Parts of linesPerPart lines each
+    public static SplitPolicy byLines(int linesPerPart) {
+        return named("lines:" + linesPerPart, (lines, sections) -> {
+            if (lines.getLineCount() <= linesPerPart) return null;
+            List<Integer> starts = new ArrayList<>();
+            for (long line = 1; line <= lines.getLineCount(); line += linesPerPart) {
+                starts.add((int) line);
+            }
+            return toArray(starts);
+        });
+    }
+
+    // Parts that start on section headers, packing consecutive sections up to maxPartBytes. A
+    // single section larger than that is cut by size like bySize.
+    public static SplitPolicy bySection(long maxPartBytes) {
+        return named("section:" + maxPartBytes, (lines, sections) -> {
+            if (lines.getFileSize() <= maxPartBytes) return null;
+            List<Integer> headers = new ArrayList<>();
+            if (sections != null) {
+                for (SectionIndex.Section section : sections.getSections()) {
+                    if (section.getLine() > 1) headers.add(section.getLine());
+                }
+            }
 
-        long sizeMB = fileSize / (1024 * 1024);
-        
-        // Rule: 10-100 parts. 
-        // < 100MB -> 10 parts
-        // > 1000MB -> 100 parts
-        // Linear in between: part count = sizeMB / 10
-        int parts = (int) (sizeMB / 10);
-        if (parts < 10) parts = 10;
-        if (parts > 100) parts = 100;
-
-        List<String> generatedFiles = new ArrayList<>();
-        long bytesPerPart = fileSize / parts;
-        
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(sourceFile))) {
-            String baseName = sourceFile.getName();
-            String parentPath = sourceFile.getParent();
-            // Remove extension for base name
-            int dotIndex = baseName.lastIndexOf('.');
-            String nameOnly = (dotIndex == -1) ? baseName : baseName.substring(0, dotIndex);
-            String extension = (dotIndex == -1) ? "" : baseName.substring(dotIndex);
-
-            byte[] buffer = new byte[8192];
-            
-            for (int i = 1; i <= parts; i++) {
-                String partName = nameOnly + "_sub" + i + extension;
-                File partFile = new File(parentPath, partName);
-                generatedFiles.add(partName);
-
-                try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(partFile))) {
-                    long bytesWritten = 0;
-                    // For the last part, write everything remaining
-                    long limit = (i == parts) ? (fileSize - (bytesPerPart * (parts - 1))) : bytesPerPart;
-                    
-                    while (bytesWritten < limit) {
-                        int maxRead = (int) Math.min(buffer.length, limit - bytesWritten);
-                        int read = bis.read(buffer, 0, maxRead);
-                        if (read == -1) break;
-                        bos.write(buffer, 0, read);
-                        bytesWritten += read;
-                    }
+            List<Integer> starts = new ArrayList<>();
+            int line = 1;
+            int next = 0; // First header past the current part's start
+            while (line <= lines.getLineCount()) {
+                starts.add(line);
+                long limit = lines.lineStart(line) + maxPartBytes;
+                if (lines.getFileSize() <= limit) break; // The rest fits in this part
+                while (next < headers.size() && headers.get(next) <= line) next++;
+                int end = -1;
+                while (next < headers.size() && lines.lineStart(headers.get(next)) <= limit) {
+                    end = headers.get(next++);
+                }
+                if (end < 0) {
+                    // No header within reach: cut by size instead
+                    end = lines.lineAt(limit - 1) + 1;
                 }
+                line = end;
             }
+            return toArray(starts);
+        });
+    }
+
+    // A policy whose toString() says which one it is and with what size, for
+    // ImportOptions.signature()
+    private static SplitPolicy named(String name, SplitPolicy policy) {
+        return new SplitPolicy() {
+            @Override
+            public int[] partStarts(LineIndex lines, SectionIndex sections) {
+                return policy.partStarts(lines, sections);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    public static List<FilePart> planParts(File sourceFile, LineIndex index, SectionIndex sections, SplitPolicy policy) {
+        int[] starts = policy.partStarts(index, sections);
+        if (starts == null) {
+            return null;
+        }
+
+        List<FilePart> parts = new ArrayList<>();
+        for (int i = 0; i < starts.length; i++) {
+            long start = index.lineStart(starts[i]);
+            long end = i + 1 < starts.length ? index.lineStart(starts[i + 1]) : index.getFileSize();
+            parts.add(new FilePart(partName(sourceFile.getName(), i + 1), start, end - start, starts[i]));
         }
-        
-        return generatedFiles;
+        return parts;
+    }
+
+    // "name_subN.ext" for the 1-based part number
+    public static String partName(String fileName, int partNumber) {
+        // Remove extension for base name
+        int dotIndex = fileName.lastIndexOf('.');
+        String nameOnly = (dotIndex == -1) ? fileName : fileName.substring(0, dotIndex);
+        String extension = (dotIndex == -1) ? "" : fileName.substring(dotIndex);
+        return nameOnly + "_sub" + partNumber + extension;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
     }
 }
@@ -0,0 +1,45 @@
+package com.buganalyzer.core;
+
+// Options for importing a zip into a project, usually taken from the user's settings
+public class ImportOptions {
+    private boolean buildSearchIndex = true;
+    private boolean extractReports = true; // False to read bugreports in place from the zip
+    private boolean compressReports; // Store extracted bugreports as BlockCompressedFiles
+    private boolean deduplicateReports; // Keep extracted bugreports once in the ContentStore
+    private FileSplitter.SplitPolicy splitPolicy = FileSplitter.bySize(FileSplitter.defaultPartBytes());
+
+    public ImportOptions() {}
+
+    public static ImportOptions fromSettings(SettingsManager settingsManager) {
+        ImportOptions options = new ImportOptions();
+        options.setBuildSearchIndex(settingsManager.isBuildSearchIndex());
+        options.setExtractReports(!settingsManager.isReadReportsFromZip());
+        options.setCompressReports(settingsManager.isCompressReports());
+        options.setDeduplicateReports(settingsManager.isDeduplicateReports());
+        options.setSplitPolicy(FileSplitter.policy(settingsManager.getSplitMode(),
+                settingsManager.getSplitPartSizeMB() * 1024L * 1024L, settingsManager.getSplitLinesPerPart()));
+        return options;
+    }
+
+    // What these options make an import write, to tell whether an earlier import of a zip used
+    // the same settings
+    public String signature() {
+        return "index=" + buildSearchIndex + ";extract=" + extractReports + ";compress=" + compressReports
+                + ";dedup=" + deduplicateReports + ";split=" + splitPolicy;
+    }
+
+    public boolean isBuildSearchIndex() { return buildSearchIndex; }
+    public void setBuildSearchIndex(boolean buildSearchIndex) { this.buildSearchIndex = buildSearchIndex; }
+
+    public boolean isExtractReports() { return extractReports; }
+    public void setExtractReports(boolean extractReports) { this.extractReports = extractReports; }
+
+    public boolean isCompressReports() { return compressReports; }
+    public void setCompressReports(boolean compressReports) { this.compressReports = compressReports; }
+
+    public boolean isDeduplicateReports() { return deduplicateReports; }
+    public void setDeduplicateReports(boolean deduplicateReports) { this.deduplicateReports = deduplicateReports; }
+
+    public FileSplitter.SplitPolicy getSplitPolicy() { return splitPolicy; }
+    public void setSplitPolicy(FileSplitter.SplitPolicy splitPolicy) { this.splitPolicy = splitPolicy; }
+}
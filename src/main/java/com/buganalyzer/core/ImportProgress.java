@@ -0,0 +1,139 @@
+package com.buganalyzer.core;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Progress of one import, shared by the importing threads and whoever shows it, and the pause
+// and cancel requests for it. The extraction calls checkpoint() whenever it reads the zip or
+// writes a file, so a pause takes effect within one buffer and a cancel fails the import there.
+// Progress is counted in bytes read from the zip, whose size is known up front; bugreports are
+// indexed while they stream past, so reading is most of the work.
+public class ImportProgress {
+
+    public enum Stage {
+        QUEUED,     // Waiting for a free import slot
+        EXTRACTING, // Reading entries from the zip, indexing bugreports on the way
+        INDEXING,   // Writing the line, trigram and section indexes and planning split parts
+        SAVING,     // Writing the project manifest
+        DONE
+    }
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicInteger extracting = new AtomicInteger(); // Entries being read right now
+    private final AtomicInteger indexing = new AtomicInteger();   // Entries writing their indexes
+    private volatile long totalBytes;
+    private volatile Stage stage = Stage.QUEUED;
+    private volatile boolean cancelled;
+    private volatile boolean paused;
+    private long startNanos;
+    private long pausedNanos; // Time spent paused, left out of the rate
+    private long pauseStartNanos;
+    private long endNanos;
+
+    public long getBytesRead() { return bytesRead.get(); }
+    public long getTotalBytes() { return totalBytes; }
+    public boolean isCancelled() { return cancelled; }
+    public boolean isPaused() { return paused; }
+
+    // The stage that best describes the import right now: while any entry is still being read
+    // the zip is the bottleneck, so that wins over index writing
+    public Stage getStage() {
+        if (stage != Stage.EXTRACTING) return stage;
+        if (extracting.get() == 0 && indexing.get() > 0) return Stage.INDEXING;
+        return Stage.EXTRACTING;
+    }
+
+    // 0..1, or -1 before the size of the zip is known
+    public double getFraction() {
+        long total = totalBytes;
+        return total > 0 ? Math.min(1.0, (double) bytesRead.get() / total) : -1;
+    }
+
+    // Bytes read per second of unpaused running time, or 0 before anything was read. Frozen
+    // once the import has ended.
+    public synchronized double getBytesPerSecond() {
+        if (startNanos == 0) return 0;
+        long now = endNanos != 0 ? endNanos : paused ? pauseStartNanos : System.nanoTime();
+        double seconds = (now - startNanos - pausedNanos) / 1e9;
+        return seconds > 0 ? bytesRead.get() / seconds : 0;
+    }
+
+    // Estimated seconds until the zip is fully read, or -1 if unknown or already ended
+    public long getEtaSeconds() {
+        double rate = getBytesPerSecond();
+        long remaining = totalBytes - bytesRead.get();
+        if (rate <= 0 || totalBytes <= 0 || isEnded()) return -1;
+        return (long) Math.ceil(Math.max(0, remaining) / rate);
+    }
+
+    synchronized void start(long totalBytes) {
+        this.totalBytes = totalBytes;
+        this.stage = Stage.EXTRACTING;
+        this.startNanos = System.nanoTime();
+    }
+
+    // Stops the clock, whether the import succeeded or not
+    synchronized void end() {
+        if (endNanos == 0) endNanos = paused ? pauseStartNanos : System.nanoTime();
+    }
+
+    private synchronized boolean isEnded() {
+        return endNanos != 0;
+    }
+
+    void setStage(Stage stage) {
+        this.stage = stage;
+    }
+
+    void addBytes(long count) {
+        bytesRead.addAndGet(count);
+    }
+
+    void enter(Stage stage) {
+        (stage == Stage.INDEXING ? indexing : extracting).incrementAndGet();
+    }
+
+    void leave(Stage stage) {
+        (stage == Stage.INDEXING ? indexing : extracting).decrementAndGet();
+    }
+
+    public synchronized void pause() {
+        if (paused || cancelled) return;
+        paused = true;
+        pauseStartNanos = System.nanoTime();
+    }
+
+    public synchronized void resume() {
+        if (!paused) return;
+        paused = false;
+        if (startNanos != 0) pausedNanos += System.nanoTime() - Math.max(pauseStartNanos, startNanos);
+        notifyAll();
+    }
+
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    // Blocks while paused; throws once cancelled
+    void checkpoint() throws InterruptedIOException {
+        if (paused || cancelled) {
+            waitIfPaused();
+        }
+    }
+
+    private synchronized void waitIfPaused() throws InterruptedIOException {
+        while (paused && !cancelled) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted");
+            }
+        }
+        if (cancelled) {
+            throw new InterruptedIOException("Import cancelled");
+        }
+    }
+}
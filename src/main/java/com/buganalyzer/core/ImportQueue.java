@@ -0,0 +1,188 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.ProjectManifest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Imports several zips, a bounded number at a time, the rest waiting in the order they were
+// submitted. Each job is a full import (extract, index, split, save the project next to the
+// zip) with its own progress that can be paused or cancelled. A paused job that had started
+// keeps its worker, since it holds the zip open and its files half written; a paused job that
+// hadn't started yet is passed over until it is resumed. Jobs importing into the same project
+// folder never run side by side: the later one waits until the earlier one has finished.
+public class ImportQueue {
+
+    public enum State { QUEUED, RUNNING, PAUSED, DONE, FAILED, CANCELLED }
+
+    public static class Job {
+        private final File zipFile;
+        private final File targetDir; // The project folder it imports into
+        private final ImportOptions options;
+        private final ImportProgress progress = new ImportProgress();
+        private volatile State state = State.QUEUED;
+        private volatile boolean started;
+        private volatile ProjectManifest manifest;
+        private volatile File projectDir;
+        private volatile Exception error;
+
+        Job(File zipFile, ImportOptions options) {
+            this.zipFile = zipFile;
+            this.targetDir = ZipExtractor.projectDirOf(zipFile);
+            this.options = options;
+        }
+
+        public File getZipFile() { return zipFile; }
+        public ImportProgress getProgress() { return progress; }
+        public State getState() { return state; }
+        public ProjectManifest getManifest() { return manifest; }
+        public File getProjectDir() { return projectDir; }
+        public Exception getError() { return error; }
+
+        boolean isSameZip(File other) {
+            return zipFile.toPath().toAbsolutePath().normalize().equals(other.toPath().toAbsolutePath().normalize());
+        }
+
+        public boolean isFinished() {
+            return state == State.DONE || state == State.FAILED || state == State.CANCELLED;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "import-job");
+        t.setDaemon(true);
+        return t;
+    });
+    private final List<Job> pending = new ArrayList<>();
+    private final List<Job> jobs = new ArrayList<>(); // Submitted and not finished
+    private final Set<File> busyDirs = new HashSet<>(); // Project folders of the running jobs
+    private volatile Consumer<Job> listener = job -> {};
+    private int workers;
+    private int running;
+
+    public ImportQueue(int workers) {
+        this.workers = workers > 0 ? workers : defaultWorkers();
+    }
+
+    // Each import already inflates up to four entries at once, so a couple of imports side by
+    // side are enough to keep the disk busy while one of them is stuck on a single big entry
+    public static int defaultWorkers() {
+        return Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    // Called from the importing threads whenever a job changes state
+    public void setListener(Consumer<Job> listener) {
+        this.listener = listener != null ? listener : job -> {};
+    }
+
+    public synchronized void setWorkers(int workers) {
+        this.workers = workers > 0 ? workers : defaultWorkers();
+        startNext();
+    }
+
+    // A zip that is already queued or being imported isn't queued again: its job is returned
+    public Job submit(File zipFile, ImportOptions options) {
+        synchronized (this) {
+            for (Job job : jobs) {
+                if (job.isSameZip(zipFile)) return job;
+            }
+            Job job = new Job(zipFile, options);
+            jobs.add(job);
+            pending.add(job);
+            startNext();
+            return job;
+        }
+    }
+
+    public void pause(Job job) {
+        synchronized (this) {
+            if (job.isFinished() || job.state == State.PAUSED) return;
+            job.progress.pause();
+            job.state = State.PAUSED;
+        }
+        listener.accept(job);
+    }
+
+    public void resume(Job job) {
+        synchronized (this) {
+            if (job.state != State.PAUSED) return;
+            job.progress.resume();
+            job.state = job.started ? State.RUNNING : State.QUEUED;
+            startNext();
+        }
+        listener.accept(job);
+    }
+
+    // A running job stops at its next read or write and removes what it had written
+    public void cancel(Job job) {
+        boolean wasPending;
+        synchronized (this) {
+            if (job.isFinished()) return;
+            job.progress.cancel();
+            wasPending = pending.remove(job);
+            if (wasPending) {
+                job.state = State.CANCELLED;
+                jobs.remove(job);
+            }
+        }
+        if (wasPending) listener.accept(job);
+    }
+
+    private synchronized void startNext() {
+        while (running < workers) {
+            Job next = null;
+            for (Job job : pending) {
+                if (job.state == State.QUEUED && !busyDirs.contains(job.targetDir)) {
+                    next = job;
+                    break;
+                }
+            }
+            if (next == null) return;
+            pending.remove(next);
+            next.started = true;
+            next.state = State.RUNNING;
+            busyDirs.add(next.targetDir);
+            running++;
+            Job job = next;
+            executor.submit(() -> run(job));
+        }
+    }
+
+    private void run(Job job) {
+        listener.accept(job);
+        State result;
+        try {
+            ProjectManifest manifest = ZipExtractor.extractProject(job.zipFile, job.options, job.progress);
+            job.progress.setStage(ImportProgress.Stage.SAVING);
+            File projectDir = job.targetDir;
+            ProjectManager.saveProject(manifest, projectDir);
+            job.manifest = manifest;
+            job.projectDir = projectDir;
+            job.progress.setStage(ImportProgress.Stage.DONE);
+            result = State.DONE;
+        } catch (Exception e) {
+            job.error = e;
+            if (job.progress.isCancelled()) {
+                result = State.CANCELLED;
+            } else {
+                e.printStackTrace();
+                result = State.FAILED;
+            }
+        }
+        job.progress.end();
+        synchronized (this) {
+            job.state = result;
+            jobs.remove(job);
+            busyDirs.remove(job.targetDir);
+            running--;
+            startNext();
+        }
+        listener.accept(job);
+    }
+}
@@ -0,0 +1,452 @@
+package com.buganalyzer.core;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// Aho-Corasick automaton over the keywords of one or more KeywordManager categories.
+// Built once per keyword set, then every line is scanned in a single pass regardless of
+// how many keywords there are. Instances are immutable and safe to share between threads.
+// Keywords containing regex metacharacters that compile as a pattern are matched as regexes
+// beside the automaton, as the old joined-pattern search did; all other keywords are literal.
+public class KeywordMatcher {
+
+    private static final int ASCII = 128;
+    private static final int[] NO_OUTPUT = new int[0];
+    private static final long MAX_OTHER_MOVES = 1 << 20;
+    private static final String REGEX_METACHARACTERS = ".*+?()[]{}|^$\\";
+
+    private final boolean ignoreCase;
+    private final List<String> keywords = new ArrayList<>();
+    private final List<String> categories = new ArrayList<>();
+    private final List<int[]> keywordCategories = new ArrayList<>(); // keyword id -> category ids
+
+    // Automaton: ASCII transitions are a full DFA table. Other characters are looked up in a
+    // primitive hash table: a full DFA too when nodes x distinct keyword characters stays
+    // under MAX_OTHER_MOVES, else goto edges followed along fail links. A character that is in
+    // no keyword always leads back to the root.
+    private int[][] asciiNext;
+    private CharTable otherNext = new CharTable(16);
+    private boolean otherComplete;
+    private final BitSet keywordChars = new BitSet(); // Non-ASCII characters of the keywords
+    private int[] fail;
+    private int[][] output; // node -> keyword ids ending here (including via fail links)
+
+    // Regex keywords, kept out of the automaton
+    private final List<Integer> patternIds = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final boolean[] isPattern; // keyword id -> matched by a pattern
+
+    public static KeywordMatcher forCategories(Map<String, List<String>> categorizedKeywords, boolean ignoreCase) {
+        return new KeywordMatcher(categorizedKeywords, ignoreCase);
+    }
+
+    public static KeywordMatcher forKeywords(List<String> keywords, boolean ignoreCase) {
+        Map<String, List<String>> single = new LinkedHashMap<>();
+        single.put("", keywords);
+        return new KeywordMatcher(single, ignoreCase);
+    }
+
+    private KeywordMatcher(Map<String, List<String>> categorizedKeywords, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+
+        // Collect distinct keywords, remembering every category each one belongs to
+        Map<String, Integer> keywordIds = new HashMap<>();
+        List<Set<Integer>> cats = new ArrayList<>();
+        for (Map.Entry<String, List<String>> e : categorizedKeywords.entrySet()) {
+            int catId = categories.size();
+            categories.add(e.getKey());
+            if (e.getValue() == null) continue;
+            for (String kw : e.getValue()) {
+                if (kw == null || kw.isEmpty()) continue;
+                String key = fold(kw);
+                Integer id = keywordIds.get(key);
+                if (id == null) {
+                    id = keywords.size();
+                    keywordIds.put(key, id);
+                    keywords.add(kw);
+                    cats.add(new LinkedHashSet<>());
+                }
+                cats.get(id).add(catId);
+            }
+        }
+        for (Set<Integer> s : cats) {
+            keywordCategories.add(s.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        isPattern = new boolean[keywords.size()];
+        for (int id = 0; id < keywords.size(); id++) {
+            Pattern pattern = patternOf(keywords.get(id), ignoreCase);
+            if (pattern != null) {
+                isPattern[id] = true;
+                patternIds.add(id);
+                patterns.add(pattern);
+            }
+        }
+
+        build();
+    }
+
+    // Compiled pattern for a keyword that is meant as a regex, null for a literal keyword
+    static Pattern patternOf(String keyword, boolean ignoreCase) {
+        boolean meta = false;
+        for (int i = 0; i < keyword.length() && !meta; i++) {
+            meta = REGEX_METACHARACTERS.indexOf(keyword.charAt(i)) >= 0;
+        }
+        if (!meta) return null;
+        try {
+            return Pattern.compile(keyword, ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        } catch (PatternSyntaxException e) {
+            return null; // Not a valid regex, so it can only be meant literally
+        }
+    }
+
+    public boolean isPattern(int keywordId) {
+        return isPattern[keywordId];
+    }
+
+    private void build() {
+        List<int[]> gotoAscii = new ArrayList<>();
+        List<int[]> ownOutput = new ArrayList<>();
+        List<List<long[]>> otherChildren = new ArrayList<>(); // per node: {char, child}
+        gotoAscii.add(newRow());
+        ownOutput.add(NO_OUTPUT);
+        otherChildren.add(null);
+
+        for (int id = 0; id < keywords.size(); id++) {
+            if (isPattern[id]) continue;
+            String kw = keywords.get(id);
+            int node = 0;
+            for (int i = 0; i < kw.length(); i++) {
+                char c = fold(kw.charAt(i));
+                int next;
+                if (c < ASCII) {
+                    next = gotoAscii.get(node)[c];
+                    if (next < 0) {
+                        next = gotoAscii.size();
+                        gotoAscii.get(node)[c] = next;
+                    }
+                } else {
+                    int existing = otherNext.get(key(node, c));
+                    if (existing >= 0) {
+                        next = existing;
+                    } else {
+                        next = gotoAscii.size();
+                        otherNext.put(key(node, c), next);
+                        keywordChars.set(c);
+                        if (otherChildren.get(node) == null) otherChildren.set(node, new ArrayList<>());
+                        otherChildren.get(node).add(new long[]{c, next});
+                    }
+                }
+                if (next == gotoAscii.size()) {
+                    gotoAscii.add(newRow());
+                    ownOutput.add(NO_OUTPUT);
+                    otherChildren.add(null);
+                }
+                node = next;
+            }
+            ownOutput.set(node, append(ownOutput.get(node), id));
+        }
+
+        int n = gotoAscii.size();
+        asciiNext = new int[n][];
+        fail = new int[n];
+        output = new int[n][];
+        output[0] = ownOutput.get(0);
+
+        // BFS: fail links and the completed ASCII DFA of shallower nodes are ready before deeper ones
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] rootRow = gotoAscii.get(0);
+        asciiNext[0] = new int[ASCII];
+        for (int c = 0; c < ASCII; c++) {
+            int v = rootRow[c];
+            if (v >= 0) {
+                asciiNext[0][c] = v;
+                fail[v] = 0;
+                output[v] = ownOutput.get(v);
+                queue.add(v);
+            } else {
+                asciiNext[0][c] = 0;
+            }
+        }
+        if (otherChildren.get(0) != null) {
+            for (long[] child : otherChildren.get(0)) {
+                int v = (int) child[1];
+                fail[v] = 0;
+                output[v] = ownOutput.get(v);
+                queue.add(v);
+            }
+        }
+
+        int[] order = new int[n]; // Nodes in BFS order
+        int ordered = 0;
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+            order[ordered++] = u;
+            int[] row = gotoAscii.get(u);
+            int[] dfa = new int[ASCII];
+            int[] failRow = asciiNext[fail[u]];
+            for (int c = 0; c < ASCII; c++) {
+                int v = row[c];
+                if (v >= 0) {
+                    dfa[c] = v;
+                    fail[v] = failRow[c];
+                    output[v] = merge(ownOutput.get(v), output[fail[v]]);
+                    queue.add(v);
+                } else {
+                    dfa[c] = failRow[c];
+                }
+            }
+            asciiNext[u] = dfa;
+            if (otherChildren.get(u) != null) {
+                for (long[] child : otherChildren.get(u)) {
+                    int v = (int) child[1];
+                    fail[v] = step(fail[u], (char) child[0]);
+                    output[v] = merge(ownOutput.get(v), output[fail[v]]);
+                    queue.add(v);
+                }
+            }
+        }
+        completeOtherMoves(order, ordered);
+    }
+
+    // Replaces the non-ASCII goto edges by every move that doesn't lead back to the root, so
+    // step() never walks fail links. Each node's moves follow from its fail node's, which BFS
+    // order has completed first.
+    private void completeOtherMoves(int[] order, int ordered) {
+        int[] chars = keywordChars.stream().toArray();
+        if (chars.length == 0 || (long) asciiNext.length * chars.length > MAX_OTHER_MOVES) return;
+        CharTable complete = new CharTable(otherNext.size() * 2);
+        for (int c : chars) {
+            int v = otherNext.get(key(0, (char) c));
+            if (v > 0) complete.put(key(0, (char) c), v);
+        }
+        for (int i = 0; i < ordered; i++) {
+            int u = order[i];
+            for (int c : chars) {
+                int v = otherNext.get(key(u, (char) c));
+                if (v < 0) v = Math.max(0, complete.get(key(fail[u], (char) c)));
+                if (v > 0) complete.put(key(u, (char) c), v);
+            }
+        }
+        otherNext = complete;
+        otherComplete = true;
+    }
+
+    boolean hasCompleteOtherMoves() {
+        return otherComplete;
+    }
+
+    private int step(int state, char c) {
+        if (c < ASCII) {
+            return asciiNext[state][c];
+        }
+        if (!keywordChars.get(c)) return 0;
+        if (otherComplete) {
+            return Math.max(0, otherNext.get(key(state, c)));
+        }
+        while (true) {
+            int v = otherNext.get(key(state, c));
+            if (v >= 0) return v;
+            if (state == 0) return 0;
+            state = fail[state];
+        }
+    }
+
+    public boolean isEmpty() {
+        return keywords.isEmpty();
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    public List<String> getKeywords() {
+        return Collections.unmodifiableList(keywords);
+    }
+
+    public List<String> getCategories() {
+        return Collections.unmodifiableList(categories);
+    }
+
+    public String getKeyword(int keywordId) {
+        return keywords.get(keywordId);
+    }
+
+    public int[] getCategoryIds(int keywordId) {
+        return keywordCategories.get(keywordId);
+    }
+
+    // True as soon as any keyword occurs in the text
+    public boolean matches(CharSequence text) {
+        if (keywords.isEmpty()) return false;
+        int state = 0;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            state = step(state, fold(text.charAt(i)));
+            if (output[state].length > 0) return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(text).find()) return true;
+        }
+        return false;
+    }
+
+    // Distinct keyword ids found in the text, in order of first occurrence. Empty array if none.
+    public int[] findKeywordIds(CharSequence text) {
+        if (keywords.isEmpty()) return NO_OUTPUT;
+        int[] found = NO_OUTPUT;
+        int[] ends = NO_OUTPUT; // Where each found keyword first ended, only needed to place regex hits
+        int state = 0;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            state = step(state, fold(text.charAt(i)));
+            for (int id : output[state]) {
+                if (!contains(found, id)) {
+                    found = append(found, id);
+                    if (!patterns.isEmpty()) ends = append(ends, i + 1);
+                }
+            }
+        }
+        for (int p = 0; p < patterns.size(); p++) {
+            Matcher m = patterns.get(p).matcher(text);
+            if (!m.find()) continue;
+            // Insert by end position, so the order of first occurrence holds across both kinds
+            int at = 0;
+            while (at < ends.length && ends[at] <= m.end()) at++;
+            found = insert(found, at, patternIds.get(p));
+            ends = insert(ends, at, m.end());
+        }
+        return found;
+    }
+
+    // Distinct category ids for a set of keyword ids, in category order
+    public int[] categoryIdsOf(int[] keywordIds) {
+        boolean[] seen = new boolean[categories.size()];
+        int count = 0;
+        for (int id : keywordIds) {
+            for (int cat : keywordCategories.get(id)) {
+                if (!seen[cat]) {
+                    seen[cat] = true;
+                    count++;
+                }
+            }
+        }
+        int[] result = new int[count];
+        int j = 0;
+        for (int cat = 0; cat < seen.length; cat++) {
+            if (seen[cat]) result[j++] = cat;
+        }
+        return result;
+    }
+
+    private char fold(char c) {
+        if (!ignoreCase) return c;
+        if (c < ASCII) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + 32) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    private String fold(String s) {
+        if (!ignoreCase) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            sb.append(fold(s.charAt(i)));
+        }
+        return sb.toString();
+    }
+
+    private static long key(int node, char c) {
+        return ((long) node << 16) | c;
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[ASCII];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private static boolean contains(int[] arr, int value) {
+        for (int v : arr) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+
+    private static int[] append(int[] arr, int value) {
+        int[] result = Arrays.copyOf(arr, arr.length + 1);
+        result[arr.length] = value;
+        return result;
+    }
+
+    private static int[] insert(int[] arr, int index, int value) {
+        int[] result = new int[arr.length + 1];
+        System.arraycopy(arr, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(arr, index, result, index + 1, arr.length - index);
+        return result;
+    }
+
+    private static int[] merge(int[] own, int[] inherited) {
+        if (inherited.length == 0) return own;
+        if (own.length == 0) return inherited;
+        int[] result = Arrays.copyOf(own, own.length + inherited.length);
+        System.arraycopy(inherited, 0, result, own.length, inherited.length);
+        return result;
+    }
+
+    // Open-addressing map from key(node, char) to a node, so lookups neither box nor allocate.
+    // Missing keys read as -1.
+    private static final class CharTable {
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        CharTable(int expected) {
+            int capacity = 16;
+            while (capacity < expected * 2) capacity <<= 1;
+            keys = new long[capacity];
+            Arrays.fill(keys, -1);
+            values = new int[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return values[i];
+                if (k < 0) return -1;
+            }
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) grow();
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] >= 0 && keys[i] != key) i = (i + 1) & mask;
+            if (keys[i] < 0) size++;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            Arrays.fill(keys, -1);
+            values = new int[keys.length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] >= 0) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int hash(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+    }
+}
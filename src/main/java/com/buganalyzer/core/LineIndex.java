@@ -0,0 +1,226 @@
+package com.buganalyzer.core;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Sidecar index of line start offsets for one file, so "line N" maps to a byte offset in O(1)
+// and an offset maps back to its line number in O(log n). Lines end at '\n'; line numbers are
+// 1-based and global for the whole file, independent of how it is split into parts.
+//
+// On disk the offsets are packed as one absolute long checkpoint per 1024 lines plus one
+// unsigned 32-bit delta per line, and the delta table is memory-mapped on open.
+public class LineIndex {
+
+    public static final String EXTENSION = ".lines";
+
+    private static final int MAGIC = 0x424C4E49; // "BLNI"
+    private static final int VERSION = 1;
+    private static final int CHECKPOINT_SHIFT = 10;
+
+    private final long fileSize;
+    private final long lastModified;
+    private final int lineCount;
+    private final long[] checkpoints;
+    private final IntBuffer deltas;
+
+    private LineIndex(long fileSize, long lastModified, int lineCount, long[] checkpoints, IntBuffer deltas) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.lineCount = lineCount;
+        this.checkpoints = checkpoints;
+        this.deltas = deltas;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    // True if the file on disk is still the one that was indexed
+    public boolean isFresh(File file) {
+        return isFresh(file.length(), file.lastModified());
+    }
+
+    public boolean isFresh(long size, long modified) {
+        return size == fileSize && modified == lastModified;
+    }
+
+    // Byte offset where the 1-based line starts
+    public long lineStart(int line) {
+        int i = line - 1;
+        return checkpoints[i >>> CHECKPOINT_SHIFT] + (deltas.get(i) & 0xFFFFFFFFL);
+    }
+
+    // Byte offset just past the line, including its line break
+    public long lineEnd(int line) {
+        return line < lineCount ? lineStart(line + 1) : fileSize;
+    }
+
+    // 1-based number of the line containing the byte offset
+    public int lineAt(long offset) {
+        int lo = 1;
+        int hi = lineCount;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (lineStart(mid) <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    public static LineIndex open(File indexFile) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a line index: " + indexFile.getName());
+        }
+        long fileSize = buffer.getLong();
+        long lastModified = buffer.getLong();
+        int lineCount = buffer.getInt();
+        long[] checkpoints = new long[buffer.getInt()];
+        for (int i = 0; i < checkpoints.length; i++) {
+            checkpoints[i] = buffer.getLong();
+        }
+        IntBuffer deltas = buffer.slice(buffer.position(), lineCount * 4).asIntBuffer();
+        return new LineIndex(fileSize, lastModified, lineCount, checkpoints, deltas);
+    }
+
+    public static void build(File sourceFile, File indexFile) throws IOException {
+        scan(sourceFile).write(indexFile, sourceFile);
+    }
+
+    // In-memory index for files that have no sidecar (older projects, split parts)
+    public static LineIndex buildInMemory(File sourceFile) throws IOException {
+        return scan(sourceFile).toIndex(sourceFile);
+    }
+
+    private static Builder scan(File sourceFile) throws IOException {
+        Builder builder = new Builder();
+        try (InputStream in = new FileInputStream(sourceFile)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                builder.update(buffer, 0, read);
+            }
+        }
+        return builder;
+    }
+
+    // Feeds a source to the builder in steps, publishing a snapshot after each step so a viewer
+    // can show the lines indexed so far while the rest is still being scanned
+    public static LineIndex scanProgressively(ByteSource source, int stepSize, Consumer<LineIndex> onProgress)
+            throws IOException {
+        Builder builder = new Builder();
+        byte[] buffer = new byte[stepSize];
+        long position = 0;
+        int read;
+        while ((read = source.readFully(position, buffer, 0, buffer.length)) > 0) {
+            builder.update(buffer, 0, read);
+            position += read;
+            if (position < source.size()) {
+                onProgress.accept(builder.snapshot());
+            }
+        }
+        return builder.toIndex(position, 0);
+    }
+
+    // Streaming builder: feed the file's bytes in order (e.g. while extracting it), then write()
+    public static class Builder {
+        private final List<Long> checkpoints = new ArrayList<>();
+        private int[] deltas = new int[1024];
+        private int lineCount;
+        private long position;
+        private boolean atLineStart = true;
+
+        public void update(byte[] data, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (atLineStart) {
+                    addLine(position);
+                    atLineStart = false;
+                }
+                position++;
+                if (data[i] == '\n') {
+                    atLineStart = true;
+                }
+            }
+        }
+
+        private void addLine(long start) {
+            if ((lineCount & ((1 << CHECKPOINT_SHIFT) - 1)) == 0) {
+                checkpoints.add(start);
+            }
+            long delta = start - checkpoints.get(checkpoints.size() - 1);
+            if (delta > 0xFFFFFFFFL) {
+                throw new IllegalStateException("Lines too long for the line index");
+            }
+            if (lineCount == deltas.length) {
+                deltas = Arrays.copyOf(deltas, lineCount * 2);
+            }
+            deltas[lineCount++] = (int) delta;
+        }
+
+        public int getLineCount() {
+            return lineCount;
+        }
+
+        public LineIndex toIndex(File sourceFile) {
+            return toIndex(sourceFile.length(), sourceFile.lastModified());
+        }
+
+        LineIndex toIndex(long fileSize, long lastModified) {
+            long[] checkpointArray = checkpoints.stream().mapToLong(Long::longValue).toArray();
+            return new LineIndex(fileSize, lastModified, lineCount, checkpointArray, IntBuffer.wrap(deltas, 0, lineCount));
+        }
+
+        // Index of the complete lines fed so far. Shares the delta array instead of copying it:
+        // later updates only append past the snapshot's end.
+        public LineIndex snapshot() {
+            int complete = atLineStart ? lineCount : lineCount - 1;
+            long end = atLineStart ? position : lineStartOf(lineCount);
+            long[] checkpointArray = checkpoints.stream().mapToLong(Long::longValue).toArray();
+            return new LineIndex(end, 0, complete, checkpointArray, IntBuffer.wrap(deltas, 0, Math.max(complete, 0)));
+        }
+
+        private long lineStartOf(int line) {
+            int i = line - 1;
+            return checkpoints.get(i >>> CHECKPOINT_SHIFT) + (deltas[i] & 0xFFFFFFFFL);
+        }
+
+        // The source file must be complete (closed) so its size and timestamp are final
+        public void write(File indexFile, File sourceFile) throws IOException {
+            write(indexFile, sourceFile.length(), sourceFile.lastModified());
+        }
+
+        // For sources that aren't a file of their own, e.g. a zip entry read in place
+        public void write(File indexFile, long fileSize, long lastModified) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fileSize);
+                out.writeLong(lastModified);
+                out.writeInt(lineCount);
+                out.writeInt(checkpoints.size());
+                for (long checkpoint : checkpoints) {
+                    out.writeLong(checkpoint);
+                }
+                for (int i = 0; i < lineCount; i++) {
+                    out.writeInt(deltas[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.buganalyzer.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Random access to a run of lines of a ByteSource through its LineIndex. Lines are decoded a page
+// at a time from a slice of the source and kept in a small LRU cache, so memory use does not
+// depend on the file size. Reading a page also prefetches its neighbours in the background,
+// which for split parts means the next part is already read before scrolling reaches it.
+// Invalid UTF-8 is replaced instead of failing the whole load. The UI thread uses peekLine,
+// which never waits for the source: a page that isn't decoded yet is loaded in the background
+// and the page listener is told once it is.
+//
+// The reader can grow: while the source is still being indexed, extend() swaps in a larger
+// snapshot of the index and the lines past the old end become readable.
+public class PagedLineReader implements Closeable {
+
+    private static final int PAGE_LINES = 512;
+    private static final int CACHED_PAGES = 32;
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "line-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ByteSource source;
+    private final int firstLine; // 1-based line of the source shown as row 0
+    private volatile LineIndex index;
+    private volatile int lineCount;
+    private final Map<Integer, String[]> pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+    private final Set<Integer> loading = new HashSet<>(); // Pages queued on LOADER, guarded by pages
+    private volatile Runnable pageListener = () -> {};
+
+    public PagedLineReader(ByteSource source, LineIndex index) {
+        this(source, index, 1, index.getLineCount());
+    }
+
+    public PagedLineReader(ByteSource source, LineIndex index, int firstLine, int lineCount) {
+        this.source = source;
+        this.index = index;
+        this.firstLine = firstLine;
+        this.lineCount = lineCount;
+    }
+
+    public ByteSource getSource() {
+        return source;
+    }
+
+    public LineIndex getIndex() {
+        return index;
+    }
+
+    // Switches to a newer index of the same source that covers more lines. Cached pages stay
+    // valid; a page that was cut short by the old end is re-read on next access.
+    public void extend(LineIndex newIndex) {
+        int newCount = newIndex.getLineCount() - firstLine + 1;
+        if (newCount < lineCount) return;
+        index = newIndex;
+        lineCount = newCount;
+    }
+
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    // Called from the loading thread each time a page has been decoded
+    public void setPageListener(Runnable listener) {
+        this.pageListener = listener != null ? listener : () -> {};
+    }
+
+    // Line for a 0-based row of this reader, read now if its page isn't cached
+    public String getLine(int row) {
+        checkRow(row);
+        int page = row / PAGE_LINES;
+        String[] lines = loadPage(page);
+        prefetch(page - 1);
+        prefetch(page + 1);
+        return lines[row - page * PAGE_LINES];
+    }
+
+    // Line for a 0-based row if its page is cached; otherwise null, and the page is loaded in
+    // the background
+    public String peekLine(int row) {
+        checkRow(row);
+        int page = row / PAGE_LINES;
+        String[] lines = cachedPage(page);
+        if (lines == null) {
+            prefetch(page);
+            return null;
+        }
+        prefetch(page - 1);
+        prefetch(page + 1);
+        return lines[row - page * PAGE_LINES];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= lineCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + lineCount);
+        }
+    }
+
+    // Closes the source and drops the cached pages; the reader can't be read afterwards
+    @Override
+    public void close() throws IOException {
+        synchronized (pages) {
+            pages.clear();
+        }
+        source.close();
+    }
+
+    private void prefetch(int page) {
+        if (page < 0 || page * PAGE_LINES >= lineCount) return;
+        synchronized (pages) {
+            if (cachedPage(page) != null || !loading.add(page)) return;
+        }
+        LOADER.execute(() -> {
+            try {
+                loadPage(page);
+            } finally {
+                synchronized (pages) {
+                    loading.remove(page);
+                }
+            }
+            pageListener.run();
+        });
+    }
+
+    // The cached page, unless it is missing or was cut short by an older end of the index
+    private String[] cachedPage(int page) {
+        int expected = Math.min(PAGE_LINES, lineCount - page * PAGE_LINES);
+        synchronized (pages) {
+            String[] cached = pages.get(page);
+            return cached != null && cached.length >= expected ? cached : null;
+        }
+    }
+
+    private String[] loadPage(int page) {
+        String[] cached = cachedPage(page);
+        if (cached != null) return cached;
+        String[] lines = readPage(page);
+        synchronized (pages) {
+            pages.put(page, lines);
+        }
+        return lines;
+    }
+
+    private String[] readPage(int page) {
+        // extend() publishes the index before the count, so this pair is always consistent
+        int lineCount = this.lineCount;
+        LineIndex index = this.index;
+        int fromRow = page * PAGE_LINES;
+        int count = Math.min(PAGE_LINES, lineCount - fromRow);
+        int fromLine = firstLine + fromRow;
+        long start = index.lineStart(fromLine);
+        long end = index.lineEnd(fromLine + count - 1);
+        String[] lines = new String[count];
+        try {
+            byte[] bytes = new byte[(int) (end - start)];
+            source.readFully(start, bytes, 0, bytes.length);
+            for (int i = 0; i < count; i++) {
+                int lineStart = (int) (index.lineStart(fromLine + i) - start);
+                int lineEnd = (int) (index.lineEnd(fromLine + i) - start);
+                if (lineEnd > lineStart && bytes[lineEnd - 1] == '\n') lineEnd--;
+                if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') lineEnd--;
+                lines[i] = new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            for (int i = 0; i < count; i++) {
+                lines[i] = "";
+            }
+            lines[0] = "<读取失败: " + e.getMessage() + ">";
+        }
+        return lines;
+    }
+}
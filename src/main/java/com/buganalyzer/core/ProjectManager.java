@@ -1,5 +1,6 @@
 package com.buganalyzer.core;
 
+import com.buganalyzer.model.FileMetadata;
 import com.buganalyzer.model.ProjectManifest;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -13,9 +14,24 @@ public class ProjectManager {
     public static void saveProject(ProjectManifest manifest, File projectDir) throws IOException {
         File jsonFile = new File(projectDir, manifest.getProjectName() + ".json");
         mapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, manifest);
+        // Shared reports remember who uses them, so the store can tell which ones are unused
+        for (FileMetadata file : manifest.getFiles()) {
+            if (file.getStoreDir() != null) {
+                ContentStore.addReference(new File(file.getStoreDir()), jsonFile);
+            }
+        }
     }
 
     public static ProjectManifest loadProject(File jsonFile) throws IOException {
         return mapper.readValue(jsonFile, ProjectManifest.class);
     }
+
+    // Folder holding the project's extracted files: .../ProjectName/ProjectName.json (new
+    // structure) or a .../ProjectName/ sibling of the JSON file (old structure)
+    public static File getProjectDir(File jsonFile, ProjectManifest manifest) {
+        if (jsonFile.getAbsoluteFile().getParentFile().getName().equals(manifest.getProjectName())) {
+            return jsonFile.getAbsoluteFile().getParentFile();
+        }
+        return new File(jsonFile.getAbsoluteFile().getParentFile(), manifest.getProjectName());
+    }
 }
@@ -0,0 +1,375 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.FileMetadata;
+import com.buganalyzer.model.ProjectManifest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+// Runs one query over every BUGREPORT entry of one or more projects. A few reports are
+// searched at once (each one still splits into parallel chunks on the SearchEngine pool), and
+// at most DISK_PERMITS of them read from the same disk at a time so one slow drive isn't
+// thrashed by many sequential scans. Smaller reports go first so hit counts show up early.
+public class ProjectSearch {
+
+    private static final int MAX_CONCURRENT_REPORTS = 4;
+    private static final int DISK_PERMITS = 2;
+    private static final int CACHED_INDEXES = 64;
+    private static final long MAX_CACHED_INDEX_BYTES = 256L * 1024 * 1024;
+
+    // Most recently used last; kept within CACHED_INDEXES entries and cachedIndexBytes()
+    private static final LinkedHashMap<String, OpenIndex> OPEN_INDEXES = new LinkedHashMap<>(CACHED_INDEXES, 0.75f, true);
+    private static long openIndexBytes;
+
+    // A loaded project: its manifest and the folder holding its extracted files
+    public static class Project {
+        private final String name;
+        private final ProjectManifest manifest;
+        private final File projectDir;
+
+        public Project(String name, ProjectManifest manifest, File projectDir) {
+            this.name = name;
+            this.manifest = manifest;
+            this.projectDir = projectDir;
+        }
+
+        public static Project load(File jsonFile) throws IOException {
+            ProjectManifest manifest = ProjectManager.loadProject(jsonFile);
+            String name = manifest.getDisplayName();
+            if (name == null || name.isEmpty()) {
+                name = manifest.getProjectName();
+            }
+            return new Project(name, manifest, ProjectManager.getProjectDir(jsonFile, manifest));
+        }
+
+        public String getName() { return name; }
+        public ProjectManifest getManifest() { return manifest; }
+        public File getProjectDir() { return projectDir; }
+    }
+
+    // The outcome for one report. Filled in by the search thread and handed over once finished.
+    // Its sources stay open for the results to read their lines; close it once they are dropped.
+    public static class ReportResult implements Closeable {
+        private final Project project;
+        private final FileMetadata report;
+        private final List<ByteSource> sources;
+        private final CompactResultSet results;
+        private SearchHandle.StopReason stopReason = SearchHandle.StopReason.NONE;
+        private String error;
+        private long elapsedMillis;
+        private volatile boolean finished;
+
+        ReportResult(Project project, FileMetadata report) {
+            this.project = project;
+            this.report = report;
+            List<ByteSource> sources;
+            try {
+                sources = sourcesToSearch(report, project.getProjectDir());
+            } catch (IOException e) {
+                e.printStackTrace();
+                sources = new ArrayList<>();
+                error = e.getMessage();
+            }
+            this.sources = sources;
+            this.results = new CompactResultSet(sources);
+        }
+
+        public Project getProject() { return project; }
+        public FileMetadata getReport() { return report; }
+        public List<ByteSource> getSources() { return sources; }
+        public CompactResultSet getResults() { return results; }
+        public int getHitCount() { return results.size(); }
+        public SearchHandle.StopReason getStopReason() { return stopReason; }
+        public String getError() { return error; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public boolean isFinished() { return finished; }
+
+        @Override
+        public void close() {
+            ByteSource.closeAll(sources);
+        }
+    }
+
+    public static void closeAll(List<ReportResult> reports) {
+        for (ReportResult report : reports) {
+            report.close();
+        }
+    }
+
+    // Every BUGREPORT entry of the projects, as not-yet-searched results
+    public static List<ReportResult> plan(List<Project> projects) {
+        List<ReportResult> reports = new ArrayList<>();
+        for (Project project : projects) {
+            for (FileMetadata file : project.getManifest().getFiles()) {
+                if (file.getType() == FileMetadata.FileType.BUGREPORT) {
+                    reports.add(new ReportResult(project, file));
+                }
+            }
+        }
+        return reports;
+    }
+
+    // Searches the planned reports and calls onReportFinished (from a worker thread) as each one
+    // completes. Blocks until all are done or the handle is cancelled. maxResultsPerReport = 0
+    // means unlimited.
+    public static void search(List<ReportResult> reports, SearchEngine.LineMatcher matcher, SearchHandle handle,
+                              int maxResultsPerReport, Consumer<ReportResult> onReportFinished) throws InterruptedException {
+        List<ReportResult> ordered = new ArrayList<>(reports);
+        ordered.sort(Comparator.comparingLong(ProjectSearch::totalSize));
+
+        Map<Object, Semaphore> diskPermits = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_REPORTS, r -> {
+            Thread t = new Thread(r, "project-search");
+            t.setDaemon(true);
+            return t;
+        });
+        CountDownLatch done = new CountDownLatch(ordered.size());
+        try {
+            for (ReportResult report : ordered) {
+                Semaphore permits = diskPermits.computeIfAbsent(diskOf(report), k -> new Semaphore(DISK_PERMITS));
+                executor.execute(() -> {
+                    try {
+                        permits.acquire();
+                        try {
+                            searchReport(report, matcher, handle.child(maxResultsPerReport));
+                        } finally {
+                            permits.release();
+                        }
+                        onReportFinished.accept(report);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void searchReport(ReportResult report, SearchEngine.LineMatcher matcher, SearchHandle handle) {
+        long start = System.nanoTime();
+        if (handle.shouldStop()) {
+            report.stopReason = handle.getStopReason();
+            report.finished = true;
+            return;
+        }
+        try {
+            if (report.error == null) {
+                searchReport(report.getReport(), report.getProject().getProjectDir(), report.getSources(), null,
+                        matcher, handle, report.results::addAll);
+            }
+        } catch (IOException e) {
+            // A cancelled search may find its sources already closed under it
+            if (!handle.shouldStop()) e.printStackTrace();
+            report.error = e.getMessage();
+        }
+        report.stopReason = handle.getStopReason();
+        report.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        report.finished = true;
+    }
+
+    // The files holding a report's text: the unsplit file when present, so line numbers are
+    // global and no line is cut at a part boundary; otherwise its split parts
+    public static List<File> filesToSearch(FileMetadata fileMetadata, File projectDir) {
+        List<File> files = new ArrayList<>();
+        File mainFile = new File(ContentStore.dirOf(fileMetadata, projectDir), ContentStore.nameOf(fileMetadata));
+        if (!mainFile.exists()) {
+            // Fallback: Try parent directory
+            File parentDir = projectDir.getParentFile();
+            if (parentDir != null) {
+                File fallbackFile = new File(parentDir, fileMetadata.getFileName());
+                if (fallbackFile.exists()) {
+                    mainFile = fallbackFile;
+                }
+            }
+        }
+
+        if (!mainFile.exists() && fileMetadata.getSplitParts() != null) {
+            for (String part : fileMetadata.getSplitParts()) {
+                File partFile = new File(projectDir, part);
+                if (partFile.exists()) {
+                    files.add(partFile);
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            files.add(mainFile);
+        }
+        return files;
+    }
+
+    // The report's bytes when they aren't a plain file in the project folder: read in place
+    // from its zip, or from its block-compressed file. Null for plain files.
+    public static ByteSource storedSource(FileMetadata fileMetadata, File projectDir) throws IOException {
+        ZipEntrySource inZip = ZipEntrySource.open(fileMetadata);
+        if (inZip != null) return inZip;
+        if (fileMetadata.getCompressedFile() == null) return null;
+        File compressed = new File(ContentStore.dirOf(fileMetadata, projectDir), fileMetadata.getCompressedFile());
+        if (!compressed.exists()) {
+            throw new IOException("File not found. Proj: " + projectDir + " | File: " + compressed.getName());
+        }
+        return BlockCompressedFile.open(compressed, ContentStore.nameOf(fileMetadata));
+    }
+
+    // The bytes of a report as a search reads them, in the order of SearchResult.fileIndex: its
+    // stored source, or its file(s) in the project folder
+    public static List<ByteSource> sourcesToSearch(FileMetadata fileMetadata, File projectDir) throws IOException {
+        List<ByteSource> sources = new ArrayList<>();
+        ByteSource stored = storedSource(fileMetadata, projectDir);
+        if (stored != null) {
+            sources.add(stored);
+            return sources;
+        }
+        for (File file : filesToSearch(fileMetadata, projectDir)) {
+            sources.add(new FileByteSource(file));
+        }
+        return sources;
+    }
+
+    // Searches one report wherever its bytes are, optionally only one of its sections.
+    // Returns the number of matches delivered.
+    public static int searchReport(FileMetadata fileMetadata, File projectDir, SectionIndex.Section section,
+                                   SearchEngine.LineMatcher matcher, SearchHandle handle,
+                                   Consumer<List<SearchEngine.SearchResult>> batchConsumer) throws IOException {
+        List<ByteSource> sources = sourcesToSearch(fileMetadata, projectDir);
+        try {
+            return searchReport(fileMetadata, projectDir, sources, section, matcher, handle, batchConsumer);
+        } finally {
+            ByteSource.closeAll(sources);
+        }
+    }
+
+    // Same, over sources the caller already opened with sourcesToSearch and keeps open to read
+    // the results' lines from
+    public static int searchReport(FileMetadata fileMetadata, File projectDir, List<ByteSource> sources,
+                                   SectionIndex.Section section, SearchEngine.LineMatcher matcher, SearchHandle handle,
+                                   Consumer<List<SearchEngine.SearchResult>> batchConsumer) throws IOException {
+        TrigramIndex index = openSearchIndex(fileMetadata, projectDir.getPath());
+        if (sources.size() == 1 && !(sources.get(0) instanceof FileByteSource)) {
+            ByteSource stored = sources.get(0);
+            TrigramIndex.FileEntry entry = index != null ? index.getFreshEntry(stored.getName(), stored.size(), stored.lastModified()) : null;
+            return SearchEngine.searchSourceStreaming(stored, section, matcher, entry, handle, batchConsumer);
+        }
+        List<File> files = new ArrayList<>();
+        for (ByteSource source : sources) {
+            files.add(((FileByteSource) source).getFile());
+        }
+        // Section offsets refer to the unsplit file; old projects may only have physical parts
+        if (section != null && files.size() == 1 && files.get(0).getName().equals(ContentStore.nameOf(fileMetadata))) {
+            return SearchEngine.searchSectionStreaming(files.get(0), section, matcher, index, handle, batchConsumer);
+        }
+        return SearchEngine.searchFilesStreaming(files, matcher, index, handle, batchConsumer);
+    }
+
+    // The project's trigram index for this file, or null to fall back to a full scan. Opened
+    // indexes are kept on the heap, so a report's index is read once and not again on every
+    // search; no file stays open or mapped.
+    public static TrigramIndex openSearchIndex(FileMetadata fileMetadata, String projectPath) {
+        if (fileMetadata.getSearchIndex() == null) return null;
+        File indexFile = new File(ContentStore.dirOf(fileMetadata, new File(projectPath)), fileMetadata.getSearchIndex());
+        if (!indexFile.exists()) return null;
+        String key = indexFile.getAbsolutePath();
+        synchronized (OPEN_INDEXES) {
+            OpenIndex cached = OPEN_INDEXES.get(key);
+            if (cached != null && cached.isFresh(indexFile)) return cached.index;
+        }
+        try {
+            OpenIndex opened = new OpenIndex(indexFile, TrigramIndex.open(indexFile));
+            synchronized (OPEN_INDEXES) {
+                OpenIndex replaced = OPEN_INDEXES.put(key, opened);
+                if (replaced != null) openIndexBytes -= replaced.length;
+                openIndexBytes += opened.length;
+                Iterator<OpenIndex> eldest = OPEN_INDEXES.values().iterator();
+                while (OPEN_INDEXES.size() > 1
+                        && (OPEN_INDEXES.size() > CACHED_INDEXES || openIndexBytes > cachedIndexBytes())) {
+                    openIndexBytes -= eldest.next().length;
+                    eldest.remove();
+                }
+            }
+            return opened.index;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Drops the cached indexes of files under dir, before its files are replaced or deleted
+    public static void evictIndexes(File dir) {
+        String prefix = dir.getAbsolutePath() + File.separator;
+        synchronized (OPEN_INDEXES) {
+            Iterator<Map.Entry<String, OpenIndex>> it = OPEN_INDEXES.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, OpenIndex> e = it.next();
+                if (e.getKey().startsWith(prefix)) {
+                    openIndexBytes -= e.getValue().length;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static long cachedIndexBytes() {
+        return Math.min(MAX_CACHED_INDEX_BYTES, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    // An opened index and the file it was read from, to notice a re-import rewriting it
+    private static class OpenIndex {
+        final TrigramIndex index;
+        final long length;
+        final long lastModified;
+
+        OpenIndex(File file, TrigramIndex index) {
+            this.index = index;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        boolean isFresh(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    private static long totalSize(ReportResult report) {
+        long size = 0;
+        for (ByteSource source : report.getSources()) {
+            size += source.size();
+        }
+        return size;
+    }
+
+    // Reports on the same file store share disk permits; unknown stores get their own
+    private static Object diskOf(ReportResult report) {
+        if (report.getSources().isEmpty()) return report.getProject().getProjectDir();
+        try {
+            ByteSource source = report.getSources().get(0);
+            File file;
+            if (source instanceof ZipEntrySource) {
+                file = ((ZipEntrySource) source).getZipFile();
+            } else if (source instanceof BlockCompressedFile) {
+                file = ((BlockCompressedFile) source).getFile();
+            } else {
+                file = ((FileByteSource) source).getFile();
+            }
+            return Files.getFileStore(file.toPath());
+        } catch (IOException e) {
+            return report.getProject().getProjectDir();
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.buganalyzer.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// Inflates raw deflate data read straight from a file, like java.util.zip.Inflater, but it
+// can also stop at a deflate block boundary and describe where it is: the compressed bit
+// position plus the last 32 KB it wrote. Such an AccessPoint is enough to start a new
+// inflater there later, which zlib's Inflater can't do since it can neither save its state
+// nor start at a bit that isn't the first of a byte.
+class RawInflater {
+
+    static final int WINDOW_SIZE = 32 * 1024;
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+    private static final int INPUT_SIZE = 64 * 1024;
+    private static final int FAST_BITS = 10;
+
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DIST_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LITERALS;
+    private static final Huffman FIXED_DISTANCES;
+
+    static {
+        byte[] lengths = new byte[288];
+        for (int i = 0; i < 288; i++) {
+            lengths[i] = (byte) (i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8);
+        }
+        byte[] distances = new byte[30];
+        Arrays.fill(distances, (byte) 5);
+        try {
+            FIXED_LITERALS = new Huffman(lengths, 0, 288);
+            FIXED_DISTANCES = new Huffman(distances, 0, 30);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Where an inflater can be restarted: at a block boundary, output position and compressed
+    // bit position, with the output just before it that later matches may copy from
+    static final class AccessPoint {
+        final long position;
+        final long bitPosition;
+        final byte[] window;
+
+        AccessPoint(long position, long bitPosition, byte[] window) {
+            this.position = position;
+            this.bitPosition = bitPosition;
+            this.window = window;
+        }
+    }
+
+    private enum State { HEADER, STORED, CODES, DONE }
+
+    private final FileChannel channel;
+    private final long dataOffset;
+    private final long compressedSize;
+    private final byte[] input = new byte[INPUT_SIZE];
+    private long inputStart; // Offset of input[0] within the compressed data
+    private int inputPos;
+    private int inputLimit;
+    private long bits;
+    private int bitCount;
+
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private long position; // Bytes written so far, counting those before the access point
+
+    private State state = State.HEADER;
+    private boolean lastBlock;
+    private int storedRemaining;
+    private Huffman literals;
+    private Huffman distances;
+    private int copyRemaining;
+    private int copyDistance;
+
+    // Reads compressedSize bytes of deflate data at dataOffset of the channel, from its start
+    // or from an access point an earlier inflater of the same data returned
+    RawInflater(FileChannel channel, long dataOffset, long compressedSize, AccessPoint from) throws IOException {
+        this.channel = channel;
+        this.dataOffset = dataOffset;
+        this.compressedSize = compressedSize;
+        if (from == null) return;
+        position = from.position;
+        for (int i = 0; i < from.window.length; i++) {
+            window[(int) ((position - from.window.length + i) & WINDOW_MASK)] = from.window[i];
+        }
+        inputStart = from.bitPosition >>> 3;
+        int skip = (int) (from.bitPosition & 7);
+        if (skip > 0) {
+            need(skip);
+            drop(skip);
+        }
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    boolean isFinished() {
+        return state == State.DONE;
+    }
+
+    // True between deflate blocks, where accessPoint() may be called
+    boolean atBlockBoundary() {
+        return state == State.HEADER && copyRemaining == 0;
+    }
+
+    AccessPoint accessPoint() {
+        int length = (int) Math.min(WINDOW_SIZE, position);
+        byte[] saved = new byte[length];
+        for (int i = 0; i < length; i++) {
+            saved[i] = window[(int) ((position - length + i) & WINDOW_MASK)];
+        }
+        long bitPosition = (inputStart + inputPos) * 8 - bitCount;
+        return new AccessPoint(position, bitPosition, saved);
+    }
+
+    // Inflates up to length bytes, stopping early at the end of a block if stopAtBlock is
+    // set (and something was written). Returns -1 once the data is exhausted.
+    int inflate(byte[] buffer, int offset, int length, boolean stopAtBlock) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (copyRemaining > 0) {
+                int n = Math.min(copyRemaining, length - done);
+                copy(buffer, offset + done, n, copyDistance);
+                copyRemaining -= n;
+                done += n;
+                continue;
+            }
+            switch (state) {
+                case HEADER:
+                    if (lastBlock) {
+                        state = State.DONE;
+                        continue;
+                    }
+                    if (stopAtBlock && done > 0) return done;
+                    readHeader();
+                    break;
+                case STORED:
+                    done += inflateStored(buffer, offset + done, length - done);
+                    break;
+                case CODES:
+                    done += inflateCodes(buffer, offset + done, length - done);
+                    break;
+                default:
+                    return done > 0 ? done : -1;
+            }
+        }
+        return done;
+    }
+
+    private void readHeader() throws IOException {
+        need(3);
+        lastBlock = (bits & 1) != 0;
+        int type = (int) (bits >>> 1) & 3;
+        drop(3);
+        switch (type) {
+            case 0:
+                drop(bitCount & 7);
+                need(32);
+                int len = (int) bits & 0xFFFF;
+                int nlen = (int) (bits >>> 16) & 0xFFFF;
+                drop(32);
+                if (len != (~nlen & 0xFFFF)) throw new IOException("Corrupt stored block");
+                storedRemaining = len;
+                state = State.STORED;
+                break;
+            case 1:
+                literals = FIXED_LITERALS;
+                distances = FIXED_DISTANCES;
+                state = State.CODES;
+                break;
+            case 2:
+                readDynamicTables();
+                state = State.CODES;
+                break;
+            default:
+                throw new IOException("Invalid deflate block type");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        need(14);
+        int literalCount = (int) (bits & 31) + 257;
+        int distanceCount = (int) (bits >>> 5 & 31) + 1;
+        int codeLengthCount = (int) (bits >>> 10 & 15) + 4;
+        drop(14);
+        if (literalCount > 286 || distanceCount > 30) throw new IOException("Corrupt dynamic block");
+
+        byte[] codeLengths = new byte[19];
+        for (int i = 0; i < codeLengthCount; i++) {
+            need(3);
+            codeLengths[CODE_LENGTH_ORDER[i]] = (byte) (bits & 7);
+            drop(3);
+        }
+        Huffman codeLengthCode = new Huffman(codeLengths, 0, 19);
+
+        byte[] lengths = new byte[literalCount + distanceCount];
+        int i = 0;
+        while (i < lengths.length) {
+            int symbol = decode(codeLengthCode);
+            if (symbol < 16) {
+                lengths[i++] = (byte) symbol;
+                continue;
+            }
+            int repeat;
+            byte value = 0;
+            if (symbol == 16) {
+                if (i == 0) throw new IOException("Corrupt dynamic block");
+                value = lengths[i - 1];
+                repeat = 3 + take(2);
+            } else if (symbol == 17) {
+                repeat = 3 + take(3);
+            } else {
+                repeat = 11 + take(7);
+            }
+            if (i + repeat > lengths.length) throw new IOException("Corrupt dynamic block");
+            while (repeat-- > 0) {
+                lengths[i++] = value;
+            }
+        }
+        if (lengths[256] == 0) throw new IOException("Corrupt dynamic block");
+        literals = new Huffman(lengths, 0, literalCount);
+        distances = new Huffman(lengths, literalCount, distanceCount);
+    }
+
+    private int inflateStored(byte[] buffer, int offset, int length) throws IOException {
+        int n = Math.min(storedRemaining, length);
+        for (int i = 0; i < n; i++) {
+            need(8);
+            write(buffer, offset + i, (byte) bits);
+            drop(8);
+        }
+        storedRemaining -= n;
+        if (storedRemaining == 0) state = State.HEADER;
+        return n;
+    }
+
+    private int inflateCodes(byte[] buffer, int offset, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            int symbol = decode(literals);
+            if (symbol < 256) {
+                write(buffer, offset + done++, (byte) symbol);
+                continue;
+            }
+            if (symbol == 256) {
+                state = State.HEADER;
+                return done;
+            }
+            symbol -= 257;
+            if (symbol >= 29) throw new IOException("Invalid length code");
+            int matchLength = LENGTH_BASE[symbol] + take(LENGTH_EXTRA[symbol]);
+            int distanceSymbol = decode(distances);
+            if (distanceSymbol >= 30) throw new IOException("Invalid distance code");
+            int distance = DIST_BASE[distanceSymbol] + take(DIST_EXTRA[distanceSymbol]);
+            if (distance > position) throw new IOException("Distance too far back");
+            int n = Math.min(matchLength, length - done);
+            copy(buffer, offset + done, n, distance);
+            done += n;
+            if (n < matchLength) {
+                copyRemaining = matchLength - n;
+                copyDistance = distance;
+            }
+        }
+        return done;
+    }
+
+    private void write(byte[] buffer, int offset, byte b) {
+        buffer[offset] = b;
+        window[(int) (position++ & WINDOW_MASK)] = b;
+    }
+
+    private void copy(byte[] buffer, int offset, int length, int distance) {
+        for (int i = 0; i < length; i++) {
+            byte b = window[(int) ((position - distance) & WINDOW_MASK)];
+            buffer[offset + i] = b;
+            window[(int) (position++ & WINDOW_MASK)] = b;
+        }
+    }
+
+    private int decode(Huffman code) throws IOException {
+        if (bitCount < 15) refill();
+        int entry = code.fast[(int) bits & ((1 << FAST_BITS) - 1)];
+        int length = entry & 15;
+        if (entry != 0 && length <= bitCount) {
+            drop(length);
+            return entry >>> 4;
+        }
+        // Codes longer than the fast table, one bit at a time
+        int value = 0;
+        int first = 0;
+        int index = 0;
+        for (int len = 1; len <= 15; len++) {
+            need(1);
+            value |= (int) bits & 1;
+            drop(1);
+            int count = code.counts[len];
+            if (value - first < count) return code.symbols[index + value - first];
+            index += count;
+            first = (first + count) << 1;
+            value <<= 1;
+        }
+        throw new IOException("Invalid Huffman code");
+    }
+
+    private int take(int count) throws IOException {
+        if (count == 0) return 0;
+        need(count);
+        int value = (int) bits & ((1 << count) - 1);
+        drop(count);
+        return value;
+    }
+
+    private void need(int count) throws IOException {
+        if (bitCount < count) refill();
+        if (bitCount < count) throw new IOException("Unexpected end of deflate data");
+    }
+
+    private void drop(int count) {
+        bits >>>= count;
+        bitCount -= count;
+    }
+
+    private void refill() throws IOException {
+        while (bitCount <= 56) {
+            if (inputPos == inputLimit && !fillInput()) return;
+            bits |= (long) (input[inputPos++] & 0xFF) << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private boolean fillInput() throws IOException {
+        inputStart += inputLimit;
+        inputPos = 0;
+        inputLimit = 0;
+        long remaining = compressedSize - inputStart;
+        if (remaining <= 0) return false;
+        ByteBuffer target = ByteBuffer.wrap(input, 0, (int) Math.min(INPUT_SIZE, remaining));
+        while (target.hasRemaining()) {
+            if (channel.read(target, dataOffset + inputStart + target.position()) < 0) break;
+        }
+        inputLimit = target.position();
+        return inputLimit > 0;
+    }
+
+    // Canonical Huffman code: a table for codes up to FAST_BITS long, indexed by the next
+    // bits of input, and counts and symbols in code order for the longer ones
+    private static final class Huffman {
+        final int[] counts = new int[16];
+        final int[] symbols;
+        final int[] fast = new int[1 << FAST_BITS]; // symbol << 4 | length, 0 if longer
+
+        Huffman(byte[] lengths, int offset, int count) throws IOException {
+            symbols = new int[count];
+            for (int i = 0; i < count; i++) {
+                counts[lengths[offset + i]]++;
+            }
+            counts[0] = 0;
+            int left = 1;
+            for (int len = 1; len <= 15; len++) {
+                left = (left << 1) - counts[len];
+                if (left < 0) throw new IOException("Over-subscribed Huffman code");
+            }
+            int[] next = new int[16];
+            for (int len = 1; len < 15; len++) {
+                next[len + 1] = next[len] + counts[len];
+            }
+            for (int i = 0; i < count; i++) {
+                if (lengths[offset + i] != 0) symbols[next[lengths[offset + i]]++] = i;
+            }
+
+            int code = 0;
+            int index = 0;
+            for (int len = 1; len <= FAST_BITS; len++) {
+                for (int k = 0; k < counts[len]; k++) {
+                    int reversed = Integer.reverse(code) >>> (32 - len);
+                    for (int slot = reversed; slot < fast.length; slot += 1 << len) {
+                        fast[slot] = symbols[index] << 4 | len;
+                    }
+                    code++;
+                    index++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+}
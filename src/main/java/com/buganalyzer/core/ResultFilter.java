@@ -0,0 +1,130 @@
+package com.buganalyzer.core;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+// Find-in-results: the query is compiled once, then run() scans the rows (off the FX thread)
+// and keeps the matching row indices as a sorted array, so next/previous is a binary search.
+//
+// Work from the previous filter is reused: the same query only scans rows added since, and a
+// literal query that extends the previous one (the user typed more) only re-tests the rows
+// the previous one matched.
+public class ResultFilter {
+
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final String text;
+    private final boolean regex;
+    private final boolean caseSensitive;
+    private final boolean wholeWord;
+    private final Predicate<String> predicate;
+    private int[] matches = NO_MATCHES;
+    private int matchCount;
+    private int scannedRows;
+
+    // Throws PatternSyntaxException for an invalid regex
+    public ResultFilter(String text, boolean regex, boolean caseSensitive, boolean wholeWord) {
+        this.text = text;
+        this.regex = regex;
+        this.caseSensitive = caseSensitive;
+        this.wholeWord = wholeWord;
+        this.predicate = compile(text, regex, caseSensitive, wholeWord);
+    }
+
+    private static Predicate<String> compile(String text, boolean regex, boolean caseSensitive, boolean wholeWord) {
+        int flags = caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        if (regex || wholeWord) {
+            String expression = regex ? text : "\\b" + Pattern.quote(text) + "\\b";
+            Pattern pattern = Pattern.compile(expression, flags);
+            return s -> pattern.matcher(s).find();
+        }
+        if (caseSensitive) {
+            return s -> s.contains(text);
+        }
+        return s -> containsIgnoreCase(s, text);
+    }
+
+    private static boolean containsIgnoreCase(String s, String needle) {
+        int last = s.length() - needle.length();
+        for (int i = 0; i <= last; i++) {
+            if (s.regionMatches(true, i, needle, 0, needle.length())) return true;
+        }
+        return false;
+    }
+
+    public boolean isSameQuery(ResultFilter other) {
+        return other != null && text.equals(other.text) && regex == other.regex
+                && caseSensitive == other.caseSensitive && wholeWord == other.wholeWord;
+    }
+
+    // True if every row this filter matches is also matched by the previous one
+    private boolean narrows(ResultFilter previous) {
+        return previous != null && !regex && !wholeWord && !previous.regex && !previous.wholeWord
+                && caseSensitive == previous.caseSensitive
+                && (caseSensitive ? text.contains(previous.text) : text.toLowerCase().contains(previous.text.toLowerCase()));
+    }
+
+    // Brings the matches up to date with rows [0, rowCount). previous may be null; it is only
+    // read. Returns false if the handle stopped the scan, leaving this filter incomplete.
+    public boolean run(ResultFilter previous, IntFunction<String> rows, int rowCount, SearchHandle handle) {
+        int from = 0;
+        if (previous != null && previous.scannedRows <= rowCount && (isSameQuery(previous) || narrows(previous))) {
+            if (isSameQuery(previous)) {
+                matches = Arrays.copyOf(previous.matches, Math.max(previous.matchCount, 16));
+                matchCount = previous.matchCount;
+            } else {
+                for (int i = 0; i < previous.matchCount; i++) {
+                    if ((i & 0xFF) == 0 && handle.shouldStop()) return false;
+                    int row = previous.matches[i];
+                    if (predicate.test(rows.apply(row))) add(row);
+                }
+            }
+            from = previous.scannedRows;
+        }
+        for (int row = from; row < rowCount; row++) {
+            if ((row & 0xFF) == 0 && handle.shouldStop()) return false;
+            if (predicate.test(rows.apply(row))) add(row);
+        }
+        scannedRows = rowCount;
+        return true;
+    }
+
+    private void add(int row) {
+        if (matchCount == matches.length) {
+            matches = Arrays.copyOf(matches, Math.max(16, matchCount * 2));
+        }
+        matches[matchCount++] = row;
+    }
+
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    public int getScannedRows() {
+        return scannedRows;
+    }
+
+    // Position of the row among the matches, or -1 if it is not one
+    public int indexOf(int row) {
+        int i = Arrays.binarySearch(matches, 0, matchCount, row);
+        return i >= 0 ? i : -1;
+    }
+
+    // First matching row after the given one, wrapping around; -1 if nothing matches
+    public int next(int row) {
+        if (matchCount == 0) return -1;
+        int i = Arrays.binarySearch(matches, 0, matchCount, row + 1);
+        if (i < 0) i = -i - 1;
+        return matches[i < matchCount ? i : 0];
+    }
+
+    // Last matching row before the given one, wrapping around; -1 if nothing matches
+    public int previous(int row) {
+        if (matchCount == 0) return -1;
+        int i = Arrays.binarySearch(matches, 0, matchCount, row - 1);
+        if (i < 0) i = -i - 2;
+        return matches[i >= 0 ? i : matchCount - 1];
+    }
+}
@@ -1,20 +1,44 @@
 package com.buganalyzer.core;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class SearchEngine {
 
+    // Files above this size are searched as several line-aligned byte ranges in parallel
+    private static final long MIN_CHUNK_SIZE = 8 * 1024 * 1024;
+    // Chunks are memory-mapped, so they must stay well below the 2 GB mapping limit
+    private static final long MAX_CHUNK_SIZE = 256 * 1024 * 1024;
+    // Bytes copied out of a mapped chunk per step; the search handle is checked once per window
+    private static final int SCAN_WINDOW_SIZE = 256 * 1024;
+    // Upper bound of results handed to a streaming consumer at once
+    private static final int BATCH_SIZE = 1000;
+    private static final ForkJoinPool SEARCH_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     public static class SearchResult {
         public String filePath;
         public int lineNumber;
         public String lineContent;
+        public int fileIndex;     // Position of the file in the searched list
+        public long offset = -1;  // Byte offset of the line start in its file
+        // Only set for keyword (category) searches
+        public List<String> keywords;
+        public List<String> categories;
 
         public SearchResult(String filePath, int lineNumber, String lineContent) {
             this.filePath = filePath;
@@ -23,45 +47,557 @@ public class SearchEngine {
         }
     }
 
-    public static List<SearchResult> searchFile(File file, String query, boolean isRegex, boolean ignoreCase) throws IOException {
-        List<SearchResult> results = new ArrayList<>();
-        Pattern pattern = null;
-        String lowerQuery = null;
+    // Decides whether a single line matches. Implementations must be thread-safe.
+    public interface LineMatcher {
+        // Returns the result for a matching line, or null
+        SearchResult match(String fileName, int lineNumber, String line);
+    }
 
+    public static LineMatcher queryMatcher(String query, boolean isRegex, boolean ignoreCase) {
         if (isRegex) {
             int flags = ignoreCase ? Pattern.CASE_INSENSITIVE : 0;
-            pattern = Pattern.compile(query, flags);
+            Pattern pattern = Pattern.compile(query, flags);
+            return (fileName, lineNumber, line) -> pattern.matcher(line).find()
+                    ? new SearchResult(fileName, lineNumber, line) : null;
+        }
+        return new LiteralMatcher(query, ignoreCase);
+    }
+
+    // Plain (non-regex) query. Where possible it is matched directly against the raw UTF-8
+    // bytes of a memory-mapped chunk, and only matching lines are ever decoded.
+    public static class LiteralMatcher implements LineMatcher {
+        private final String query;
+        private final String lowerQuery;
+        private final boolean ignoreCase;
+        private final byte[] pattern; // UTF-8 bytes, ASCII-lowercased if ignoreCase; null if the byte path can't be used
+
+        public LiteralMatcher(String query, boolean ignoreCase) {
+            this.query = query;
+            this.lowerQuery = query.toLowerCase();
+            this.ignoreCase = ignoreCase;
+            this.pattern = canMatchBytes(query, ignoreCase)
+                    ? (ignoreCase ? asciiLowerCase(query) : query).getBytes(StandardCharsets.UTF_8)
+                    : null;
+        }
+
+        @Override
+        public SearchResult match(String fileName, int lineNumber, String line) {
+            boolean found = ignoreCase ? line.toLowerCase().contains(lowerQuery) : line.contains(query);
+            return found ? new SearchResult(fileName, lineNumber, line) : null;
+        }
+
+        boolean matchesBytes() {
+            return pattern != null;
+        }
+
+        // Byte matching only folds ASCII, so any other cased character forces the String path
+        private static boolean canMatchBytes(String query, boolean ignoreCase) {
+            if (query.isEmpty()) return false;
+            for (int i = 0; i < query.length(); i++) {
+                char c = query.charAt(i);
+                if (c == '\n' || c == '\r') return false;
+                if (ignoreCase && c >= 128 && (Character.toLowerCase(c) != c || Character.toUpperCase(c) != c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String asciiLowerCase(String s) {
+            StringBuilder sb = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                sb.append(c >= 'A' && c <= 'Z' ? (char) (c + 32) : c);
+            }
+            return sb.toString();
+        }
+    }
+
+    // Records which keywords and categories hit each matching line
+    public static LineMatcher keywordMatcher(KeywordMatcher matcher) {
+        return (fileName, lineNumber, line) -> {
+            int[] keywordIds = matcher.findKeywordIds(line);
+            if (keywordIds.length == 0) return null;
+            SearchResult result = new SearchResult(fileName, lineNumber, line);
+            result.keywords = new ArrayList<>(keywordIds.length);
+            for (int id : keywordIds) {
+                result.keywords.add(matcher.getKeyword(id));
+            }
+            result.categories = new ArrayList<>();
+            for (int cat : matcher.categoryIdsOf(keywordIds)) {
+                result.categories.add(matcher.getCategories().get(cat));
+            }
+            return result;
+        };
+    }
+
+    public static List<SearchResult> searchFile(File file, String query, boolean isRegex, boolean ignoreCase) throws IOException {
+        return searchFile(file, queryMatcher(query, isRegex, ignoreCase));
+    }
+
+    // Single pass over the file for a whole keyword set, recording which keywords and categories hit each line
+    public static List<SearchResult> searchFile(File file, KeywordMatcher matcher) throws IOException {
+        return searchFile(file, keywordMatcher(matcher));
+    }
+
+    public static List<SearchResult> searchFile(File file, LineMatcher matcher) throws IOException {
+        return searchFilesParallel(List.of(file), matcher);
+    }
+
+    // Searches all files on the shared fork-join pool. Large files are additionally cut into
+    // line-aligned byte ranges. Results come back in file order with per-file line numbers.
+    public static List<SearchResult> searchFilesParallel(List<File> files, LineMatcher matcher) throws IOException {
+        List<SearchResult> results = new ArrayList<>();
+        searchFilesStreaming(files, matcher, new SearchHandle(), results::addAll);
+        return results;
+    }
+
+    // Same as searchFilesParallel, but hands results to the consumer in batches (in file order)
+    // as soon as every chunk before them has finished, instead of collecting them all first.
+    // Stops early when the handle is cancelled, its time budget runs out or its result limit is
+    // reached; everything delivered up to then is still a correct, in-order prefix.
+    // Returns the total number of matches delivered.
+    public static int searchFilesStreaming(List<File> files, LineMatcher matcher, SearchHandle handle,
+                                           Consumer<List<SearchResult>> batchConsumer) throws IOException {
+        return searchFilesStreaming(files, matcher, null, handle, batchConsumer);
+    }
+
+    // With a trigram index, literal queries only scan the blocks the index can't rule out.
+    // Files missing from the index, or changed since it was built, are scanned in full.
+    public static int searchFilesStreaming(List<File> files, LineMatcher matcher, TrigramIndex index, SearchHandle handle,
+                                           Consumer<List<SearchResult>> batchConsumer) throws IOException {
+        List<List<long[]>> plans = new ArrayList<>();
+        for (File file : files) {
+            plans.add(planChunks(file, matcher, index, null));
+        }
+        return runChunks(files, plans, matcher, handle, batchConsumer);
+    }
+
+    // Searches only the bytes of one section of the file. Line numbers and offsets are still
+    // those of the whole file.
+    public static int searchSectionStreaming(File file, SectionIndex.Section section, LineMatcher matcher, TrigramIndex index,
+                                             SearchHandle handle, Consumer<List<SearchResult>> batchConsumer) throws IOException {
+        return runChunks(List.of(file), List.of(planChunks(file, matcher, index, section)), matcher, handle, batchConsumer);
+    }
+
+    private static int runChunks(List<File> files, List<List<long[]>> plans, LineMatcher matcher, SearchHandle handle,
+                                 Consumer<List<SearchResult>> batchConsumer) throws IOException {
+        List<ForkJoinTask<ChunkResult>> tasks = new ArrayList<>();
+        List<Integer> chunkFileIndex = new ArrayList<>();
+        List<long[]> chunkRanges = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            for (long[] range : plans.get(i)) {
+                tasks.add(SEARCH_POOL.submit(() -> searchChunk(file, range[0], range[1], matcher, handle)));
+                chunkFileIndex.add(i);
+                chunkRanges.add(range);
+            }
+        }
+
+        Delivery delivery = new Delivery(handle, batchConsumer);
+        int currentFile = -1;
+        try {
+            for (int t = 0; t < tasks.size(); t++) {
+                if (handle.isCancelled()) break;
+                if (chunkFileIndex.get(t) != currentFile) {
+                    currentFile = chunkFileIndex.get(t);
+                    delivery.lineOffset = 0;
+                }
+                ChunkResult chunk = tasks.get(t).get();
+                tasks.set(t, null); // Let the chunk's results be collected once delivered
+                if (!delivery.deliver(chunk, chunkRanges.get(t), currentFile)) break;
+            }
+            cancelAll(tasks);
+        } catch (InterruptedException e) {
+            cancelAll(tasks);
+            Thread.currentThread().interrupt();
+            throw new IOException("Search interrupted", e);
+        } catch (ExecutionException e) {
+            cancelAll(tasks);
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        return delivery.total;
+    }
+
+    // Searches a source that is read rather than mapped, such as a zip entry read in place. It
+    // is read front to back on this thread in line-aligned chunks, which are scanned on the pool
+    // while the next ones are read. With a section only its bytes are read; with a fresh index
+    // entry only the candidate ranges of a literal query are.
+    public static int searchSourceStreaming(ByteSource source, SectionIndex.Section section, LineMatcher matcher,
+                                            TrigramIndex.FileEntry indexEntry, SearchHandle handle,
+                                            Consumer<List<SearchResult>> batchConsumer) throws IOException {
+        long from = section != null ? section.getOffset() : 0;
+        long to = section != null ? Math.min(section.getEndOffset(), source.size()) : source.size();
+        long linesBefore = section != null ? section.getLine() - 1 : 0;
+        List<long[]> planned = null;
+        if (indexEntry != null && matcher instanceof LiteralMatcher && ((LiteralMatcher) matcher).pattern != null) {
+            planned = indexEntry.candidateRanges(((LiteralMatcher) matcher).pattern, MIN_CHUNK_SIZE);
+            if (planned != null && section != null) planned = clip(planned, from, to, linesBefore);
+        }
+        SourceReader reader = new SourceReader(source, from, to, linesBefore, planned);
+
+        Delivery delivery = new Delivery(handle, batchConsumer);
+        ArrayDeque<ForkJoinTask<ChunkResult>> tasks = new ArrayDeque<>();
+        ArrayDeque<long[]> ranges = new ArrayDeque<>();
+        try {
+            while (!handle.isCancelled()) {
+                while (tasks.size() < SEARCH_POOL.getParallelism() && !handle.shouldStop()) {
+                    long[] range = reader.next();
+                    if (range == null) break;
+                    ByteBuffer buffer = ByteBuffer.wrap(reader.data);
+                    tasks.add(SEARCH_POOL.submit(() -> scanChunk(buffer, source.getName(), matcher, handle)));
+                    ranges.add(range);
+                }
+                if (tasks.isEmpty()) break;
+                if (!delivery.deliver(tasks.poll().get(), ranges.poll(), 0)) break;
+            }
+            cancelAll(tasks);
+        } catch (InterruptedException e) {
+            cancelAll(tasks);
+            Thread.currentThread().interrupt();
+            throw new IOException("Search interrupted", e);
+        } catch (ExecutionException e) {
+            cancelAll(tasks);
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        return delivery.total;
+    }
+
+    // Reads the {start, end, linesBefore} chunks of a source in order: the planned ranges, or
+    // else consecutive line-aligned chunks of about MIN_CHUNK_SIZE. data holds the last chunk.
+    private static class SourceReader {
+        private final ByteSource source;
+        private final long to;
+        private final List<long[]> planned;
+        private int nextPlanned;
+        private long position;
+        private long linesBefore; // Only known for the first chunk when reading consecutively
+        byte[] data;
+
+        SourceReader(ByteSource source, long from, long to, long linesBefore, List<long[]> planned) {
+            this.source = source;
+            this.to = to;
+            this.planned = planned;
+            this.position = from;
+            this.linesBefore = linesBefore;
+        }
+
+        long[] next() throws IOException {
+            if (planned != null) {
+                if (nextPlanned == planned.size()) return null;
+                long[] range = planned.get(nextPlanned++);
+                data = new byte[(int) (range[1] - range[0])];
+                source.readFully(range[0], data, 0, data.length);
+                return range;
+            }
+            if (position >= to) return null;
+            int length = (int) Math.min(MIN_CHUNK_SIZE, to - position);
+            while (true) {
+                byte[] buffer = new byte[length];
+                int read = source.readFully(position, buffer, 0, length);
+                int end = read;
+                if (position + read < to) {
+                    end = lastIndexOfNewline(buffer, read) + 1;
+                    if (end == 0) {
+                        // A single line longer than the chunk
+                        length = (int) Math.min((long) length * 2, to - position);
+                        continue;
+                    }
+                }
+                data = end == buffer.length ? buffer : Arrays.copyOf(buffer, end);
+                long[] range = {position, position + end, linesBefore};
+                position += end;
+                linesBefore = -1;
+                return range;
+            }
+        }
+    }
+
+    // Hands chunk results to the consumer in chunk order, turning chunk-relative line numbers
+    // and offsets into file ones
+    private static class Delivery {
+        private final SearchHandle handle;
+        private final Consumer<List<SearchResult>> batchConsumer;
+        int total;
+        int lineOffset;
+
+        Delivery(SearchHandle handle, Consumer<List<SearchResult>> batchConsumer) {
+            this.handle = handle;
+            this.batchConsumer = batchConsumer;
+        }
+
+        // Returns false once nothing after this chunk may be delivered
+        boolean deliver(ChunkResult chunk, long[] range, int fileIndex) {
+            if (range[2] >= 0) {
+                lineOffset = (int) range[2]; // Known from the index
+            }
+            List<SearchResult> chunkResults = chunk.results;
+            if (handle.getMaxResults() > 0 && total + chunkResults.size() >= handle.getMaxResults()) {
+                chunkResults = chunkResults.subList(0, handle.getMaxResults() - total);
+                handle.stop(SearchHandle.StopReason.RESULT_LIMIT);
+            }
+            for (SearchResult r : chunkResults) {
+                r.lineNumber += lineOffset;
+                r.fileIndex = fileIndex;
+                r.offset += range[0];
+            }
+            for (int from = 0; from < chunkResults.size(); from += BATCH_SIZE) {
+                int to = Math.min(from + BATCH_SIZE, chunkResults.size());
+                batchConsumer.accept(new ArrayList<>(chunkResults.subList(from, to)));
+            }
+            total += chunkResults.size();
+            lineOffset += chunk.lineCount;
+            // Line numbers of later chunks are unknown once a chunk has stopped short
+            return chunk.complete && !handle.isResultLimitReached(total);
+        }
+    }
+
+    private static void cancelAll(Collection<? extends ForkJoinTask<?>> tasks) {
+        for (ForkJoinTask<?> task : tasks) {
+            if (task != null) task.cancel(true);
+        }
+    }
+
+    private static class ChunkResult {
+        final List<SearchResult> results;
+        final int lineCount;
+        final boolean complete; // False if the scan stopped before the end of the chunk
+
+        ChunkResult(List<SearchResult> results, int lineCount, boolean complete) {
+            this.results = results;
+            this.lineCount = lineCount;
+            this.complete = complete;
+        }
+    }
+
+    // Line numbers and offsets in the returned results are relative to the start of the chunk
+    private static ChunkResult searchChunk(File file, long start, long end, LineMatcher matcher, SearchHandle handle) throws IOException {
+        if (handle.shouldStop()) {
+            return new ChunkResult(new ArrayList<>(), 0, false);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return scanChunk(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, end - start), file.getName(), matcher, handle);
+        }
+    }
+
+    private static ChunkResult scanChunk(ByteBuffer buffer, String fileName, LineMatcher matcher, SearchHandle handle) {
+        if (handle.shouldStop()) {
+            return new ChunkResult(new ArrayList<>(), 0, false);
+        }
+        List<SearchResult> results = new ArrayList<>();
+        int lineCount;
+        if (matcher instanceof LiteralMatcher && ((LiteralMatcher) matcher).pattern != null) {
+            lineCount = scanBytes(buffer, fileName, (LiteralMatcher) matcher, handle, results);
         } else {
-            lowerQuery = ignoreCase ? query.toLowerCase() : query;
+            lineCount = scanLines(buffer, fileName, matcher, handle, results);
+        }
+        return new ChunkResult(results, lineCount, lineCount >= 0);
+    }
+
+    // Literal search over raw bytes: no per-line String, no toLowerCase copies. The mapped chunk
+    // is copied window by window into one reusable array (windows end on a '\n'). Lines end at
+    // '\n'; a trailing '\r' is stripped from decoded lines. Returns the line count, or -1 if stopped early.
+    private static int scanBytes(ByteBuffer buffer, String fileName, LiteralMatcher matcher, SearchHandle handle,
+                                 List<SearchResult> results) {
+        byte[] pattern = matcher.pattern;
+        boolean fold = matcher.ignoreCase;
+        byte first = pattern[0];
+        byte firstAlt = fold && first >= 'a' && first <= 'z' ? (byte) (first - 32) : first;
+        int len = buffer.limit();
+        byte[] window = new byte[SCAN_WINDOW_SIZE];
+        int lineNum = 0;
+        int base = 0;
+
+        while (base < len) {
+            if (handle != null && handle.shouldStop()) return -1;
+            int n = Math.min(window.length, len - base);
+            buffer.get(base, window, 0, n);
+            int limit = n;
+            if (base + n < len) {
+                limit = lastIndexOfNewline(window, n) + 1;
+                if (limit == 0) {
+                    // A single line longer than the window
+                    window = new byte[window.length * 2];
+                    continue;
+                }
+            }
+
+            int lineStart = 0;
+            for (int pos = 0; pos < limit; pos++) {
+                byte b = window[pos];
+                if (b == '\n') {
+                    lineNum++;
+                    lineStart = pos + 1;
+                } else if ((b == first || b == firstAlt) && regionMatches(window, pos, limit, pattern, fold)) {
+                    int lineEnd = indexOfNewline(window, pos + pattern.length, limit);
+                    lineNum++;
+                    SearchResult result = new SearchResult(fileName, lineNum, decodeLine(window, lineStart, lineEnd));
+                    result.offset = base + lineStart;
+                    results.add(result);
+                    if (handle != null && handle.isResultLimitReached(results.size())) return -1;
+                    pos = lineEnd;
+                    lineStart = lineEnd + 1;
+                }
+            }
+            if (lineStart < limit) lineNum++; // Last line of the chunk without a trailing newline
+            base += limit;
+        }
+        return lineNum;
+    }
+
+    private static boolean regionMatches(byte[] data, int pos, int limit, byte[] pattern, boolean fold) {
+        if (pos + pattern.length > limit) return false;
+        for (int i = 1; i < pattern.length; i++) {
+            byte b = data[pos + i];
+            if (fold && b >= 'A' && b <= 'Z') b += 32;
+            if (b != pattern[i]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOfNewline(byte[] data, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (data[i] == '\n') return i;
         }
+        return limit;
+    }
+
+    private static int lastIndexOfNewline(byte[] data, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (data[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static String decodeLine(byte[] data, int start, int end) {
+        if (end > start && data[end - 1] == '\r') end--;
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // Generic search: every line is decoded and handed to the matcher. Uses the same windows
+    // and line rules as scanBytes, so line numbers and offsets agree with the LineIndex.
+    private static int scanLines(ByteBuffer buffer, String fileName, LineMatcher matcher, SearchHandle handle,
+                                 List<SearchResult> results) {
+        int len = buffer.limit();
+        byte[] window = new byte[SCAN_WINDOW_SIZE];
+        int lineNum = 0;
+        int base = 0;
+
+        while (base < len) {
+            int n = Math.min(window.length, len - base);
+            buffer.get(base, window, 0, n);
+            int limit = n;
+            if (base + n < len) {
+                limit = lastIndexOfNewline(window, n) + 1;
+                if (limit == 0) {
+                    window = new byte[window.length * 2];
+                    continue;
+                }
+            }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            int lineNum = 0;
-            while ((line = br.readLine()) != null) {
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = indexOfNewline(window, lineStart, limit);
                 lineNum++;
-                boolean match = false;
-                if (isRegex) {
-                    match = pattern.matcher(line).find();
-                } else {
-                    if (ignoreCase) {
-                        match = line.toLowerCase().contains(lowerQuery);
-                    } else {
-                        match = line.contains(query);
+                if (handle != null && (lineNum & 0xFF) == 0 && handle.shouldStop()) {
+                    return -1;
+                }
+                SearchResult result = matcher.match(fileName, lineNum, decodeLine(window, lineStart, lineEnd));
+                if (result != null) {
+                    result.offset = base + lineStart;
+                    results.add(result);
+                    // No chunk ever needs more results than the overall limit
+                    if (handle != null && handle.isResultLimitReached(results.size())) {
+                        return -1;
                     }
                 }
+                lineStart = lineEnd + 1;
+            }
+            base += limit;
+        }
+        return lineNum;
+    }
 
-                if (match) {
-                    results.add(new SearchResult(file.getName(), lineNum, line));
+    // {start, end, linesBefore} ranges to scan; linesBefore is -1 when only known after scanning
+    // the preceding ranges of the same file. With a section, only ranges inside it are returned.
+    private static List<long[]> planChunks(File file, LineMatcher matcher, TrigramIndex index, SectionIndex.Section section) throws IOException {
+        long from = section != null ? section.getOffset() : 0;
+        long to = section != null ? Math.min(section.getEndOffset(), file.length()) : file.length();
+        long linesBefore = section != null ? section.getLine() - 1 : -1;
+        if (index != null && matcher instanceof LiteralMatcher && ((LiteralMatcher) matcher).pattern != null) {
+            TrigramIndex.FileEntry entry = index.getFreshEntry(file);
+            if (entry != null) {
+                List<long[]> ranges = entry.candidateRanges(((LiteralMatcher) matcher).pattern, chunkSize(to - from));
+                if (ranges != null) return section != null ? clip(ranges, from, to, linesBefore) : ranges;
+            }
+        }
+        return splitIntoChunks(file, from, to, linesBefore);
+    }
+
+    // The parts of line-aligned ranges that fall inside [from, to), which is line-aligned too
+    private static List<long[]> clip(List<long[]> ranges, long from, long to, long linesBeforeFrom) {
+        List<long[]> clipped = new ArrayList<>();
+        for (long[] range : ranges) {
+            if (range[1] <= from || range[0] >= to) continue;
+            long start = Math.max(range[0], from);
+            clipped.add(new long[]{start, Math.min(range[1], to), start == range[0] ? range[2] : linesBeforeFrom});
+        }
+        return clipped;
+    }
+
+    private static long chunkSize(long fileSize) {
+        int maxChunks = SEARCH_POOL.getParallelism() * 4;
+        return Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, fileSize / maxChunks + 1));
+    }
+
+    // Cuts the line-aligned range [from, size) of a file into {start, end, linesBefore} byte
+    // ranges that each begin right after a '\n'. Only the first range gets linesBefore; the
+    // others have -1.
+    static List<long[]> splitIntoChunks(File file, long from, long size, long linesBefore) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long chunkSize = chunkSize(size - from);
+        if (size - from <= chunkSize) {
+            chunks.add(new long[]{from, size, linesBefore});
+            return chunks;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long start = from;
+            byte[] buffer = new byte[8192];
+            while (start < size) {
+                long end = start + chunkSize;
+                if (end >= size) {
+                    end = size;
+                } else {
+                    end = nextLineStart(raf, end, size, buffer);
                 }
+                chunks.add(new long[]{start, end, start == from ? linesBefore : -1});
+                start = end;
             }
         }
-        return results;
+        return chunks;
+    }
+
+    private static long nextLineStart(RandomAccessFile raf, long pos, long size, byte[] buffer) throws IOException {
+        raf.seek(pos);
+        while (pos < size) {
+            int read = raf.read(buffer, 0, (int) Math.min(buffer.length, size - pos));
+            if (read == -1) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
     }
-    
+
     // Simple Logcat parser: "tag:ActivityManager level:E"
     // This is a simplified version. Real logcat parsing is complex.
     // We will treat "tag:X" as "search for X" but maybe refine if needed.
-    // For now, let's assume the user types regex or plain text. 
+    // For now, let's assume the user types regex or plain text.
     // If they type "ActivityManager", it finds it.
 }
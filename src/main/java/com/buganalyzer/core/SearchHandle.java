@@ -0,0 +1,83 @@
+package com.buganalyzer.core;
+
+// Cancellation and limits for one running search. The owner (usually a SearchWindow) calls
+// cancel(); the search itself polls shouldStop() and records why it ended early.
+public class SearchHandle {
+
+    public enum StopReason {
+        NONE, CANCELLED, RESULT_LIMIT, TIME_BUDGET
+    }
+
+    private final SearchHandle parent; // Null unless this is one part of a larger search
+    private final int maxResults;      // 0 = unlimited
+    private final long deadlineNanos;  // 0 = no time budget
+    private volatile boolean cancelled;
+    private volatile StopReason stopReason = StopReason.NONE;
+
+    public SearchHandle() {
+        this(0, 0);
+    }
+
+    public SearchHandle(int maxResults, long timeBudgetMillis) {
+        this(null, maxResults, timeBudgetMillis);
+    }
+
+    private SearchHandle(SearchHandle parent, int maxResults, long timeBudgetMillis) {
+        this.parent = parent;
+        this.maxResults = Math.max(0, maxResults);
+        this.deadlineNanos = timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1_000_000 : 0;
+    }
+
+    // Handle for one part of a larger search (e.g. one report of a project-wide search): it has
+    // its own result limit, and also stops when this handle is cancelled or runs out of time
+    public SearchHandle child(int maxResults) {
+        return new SearchHandle(this, maxResults, 0);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        stop(StopReason.CANCELLED);
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    public boolean isStopped() {
+        return stopReason != StopReason.NONE;
+    }
+
+    // Cheap enough to call for every line: one volatile read, plus a clock read once the budget is set
+    public boolean shouldStop() {
+        if (stopReason != StopReason.NONE) return true;
+        if (parent != null && parent.shouldStop()) {
+            stop(parent.getStopReason());
+            return true;
+        }
+        if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0) {
+            stop(StopReason.TIME_BUDGET);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isResultLimitReached(int resultCount) {
+        return maxResults > 0 && resultCount >= maxResults;
+    }
+
+    void stop(StopReason reason) {
+        synchronized (this) {
+            if (stopReason == StopReason.NONE) {
+                stopReason = reason;
+            }
+        }
+    }
+}
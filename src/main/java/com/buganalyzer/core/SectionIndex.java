@@ -0,0 +1,164 @@
+package com.buganalyzer.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Sidecar index of the sections of a bugreport: the "------ NAME (command) ------" headers
+// (level 0) and the "DUMP OF SERVICE name:" headers inside dumpsys (level 1), each with its
+// byte range and 1-based line range. A level 0 section runs until the next level 0 header, so
+// it contains its services; a service runs until the next header of any level.
+public class SectionIndex {
+
+    public static final String EXTENSION = ".sections.json";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int MAX_HEADER_BYTES = 512;
+    private static final Pattern SECTION_HEADER = Pattern.compile("^------ (.+) ------$");
+    private static final Pattern SERVICE_HEADER = Pattern.compile("^DUMP OF SERVICE (.+):$");
+
+    public static class Section {
+        private String title;
+        private int level;
+        private long offset;
+        private long endOffset; // Exclusive
+        private int line;
+        private int endLine;    // Inclusive
+
+        public Section() {}
+
+        public Section(String title, int level, long offset, int line) {
+            this.title = title;
+            this.level = level;
+            this.offset = offset;
+            this.line = line;
+        }
+
+        public String getTitle() { return title; }
+        public void setTitle(String title) { this.title = title; }
+
+        public int getLevel() { return level; }
+        public void setLevel(int level) { this.level = level; }
+
+        public long getOffset() { return offset; }
+        public void setOffset(long offset) { this.offset = offset; }
+
+        public long getEndOffset() { return endOffset; }
+        public void setEndOffset(long endOffset) { this.endOffset = endOffset; }
+
+        public int getLine() { return line; }
+        public void setLine(int line) { this.line = line; }
+
+        public int getEndLine() { return endLine; }
+        public void setEndLine(int endLine) { this.endLine = endLine; }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    private final List<Section> sections;
+
+    private SectionIndex(List<Section> sections) {
+        this.sections = sections;
+    }
+
+    public List<Section> getSections() {
+        return Collections.unmodifiableList(sections);
+    }
+
+    public static SectionIndex open(File indexFile) throws IOException {
+        return new SectionIndex(mapper.readValue(indexFile, new TypeReference<List<Section>>() {}));
+    }
+
+    public void write(File indexFile) throws IOException {
+        mapper.writeValue(indexFile, sections);
+    }
+
+    // Streaming builder: feed the file's bytes in order, like LineIndex.Builder. Only lines that
+    // can start a header are buffered, and only up to MAX_HEADER_BYTES of them.
+    public static class Builder {
+        private final List<Section> sections = new ArrayList<>();
+        private final byte[] line = new byte[MAX_HEADER_BYTES];
+        private int lineLength;
+        private boolean candidate;
+        private boolean atLineStart = true;
+        private long lineStart;
+        private long position;
+        private int lineNumber;
+
+        public void update(byte[] data, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                byte b = data[i];
+                if (atLineStart) {
+                    atLineStart = false;
+                    lineStart = position;
+                    lineNumber++;
+                    lineLength = 0;
+                    candidate = b == '-' || b == 'D';
+                }
+                position++;
+                if (b == '\n') {
+                    endLine();
+                    atLineStart = true;
+                } else if (candidate) {
+                    if (lineLength < line.length) {
+                        line[lineLength++] = b;
+                    } else {
+                        candidate = false; // Too long to be a header
+                    }
+                }
+            }
+        }
+
+        private void endLine() {
+            if (!candidate) return;
+            candidate = false;
+            int end = lineLength;
+            if (end > 0 && line[end - 1] == '\r') end--;
+            String text = new String(line, 0, end, StandardCharsets.UTF_8);
+            Matcher m = SECTION_HEADER.matcher(text);
+            if (m.matches()) {
+                // Each section is followed by a "------ 0.1s was the duration of 'NAME' ------" footer
+                if (!m.group(1).contains("was the duration of")) {
+                    sections.add(new Section(m.group(1), 0, lineStart, lineNumber));
+                }
+                return;
+            }
+            m = SERVICE_HEADER.matcher(text);
+            if (m.matches()) {
+                sections.add(new Section(m.group(1), 1, lineStart, lineNumber));
+            }
+        }
+
+        public SectionIndex toIndex() {
+            if (!atLineStart) {
+                endLine(); // Last line without a trailing newline
+                atLineStart = true;
+            }
+            List<Section> result = new ArrayList<>();
+            for (int i = 0; i < sections.size(); i++) {
+                Section section = sections.get(i);
+                Section copy = new Section(section.getTitle(), section.getLevel(), section.getOffset(), section.getLine());
+                // Ends where the next section of the same or an outer level starts
+                Section next = null;
+                for (int j = i + 1; j < sections.size() && next == null; j++) {
+                    if (sections.get(j).getLevel() <= section.getLevel()) next = sections.get(j);
+                }
+                copy.setEndOffset(next != null ? next.getOffset() : position);
+                copy.setEndLine(next != null ? next.getLine() - 1 : lineNumber);
+                result.add(copy);
+            }
+            return new SectionIndex(result);
+        }
+    }
+}
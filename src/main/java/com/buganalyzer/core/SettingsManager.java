@@ -59,8 +59,108 @@ public class SettingsManager {
         saveSettings();
     }
 
+    public int getMaxSearchResults() {
+        return settings.getMaxSearchResults();
+    }
+
+    public void setMaxSearchResults(int maxSearchResults) {
+        settings.setMaxSearchResults(maxSearchResults);
+        saveSettings();
+    }
+
+    public int getSearchTimeBudgetSeconds() {
+        return settings.getSearchTimeBudgetSeconds();
+    }
+
+    public void setSearchTimeBudgetSeconds(int searchTimeBudgetSeconds) {
+        settings.setSearchTimeBudgetSeconds(searchTimeBudgetSeconds);
+        saveSettings();
+    }
+
+    public boolean isBuildSearchIndex() {
+        return settings.isBuildSearchIndex();
+    }
+
+    public void setBuildSearchIndex(boolean buildSearchIndex) {
+        settings.setBuildSearchIndex(buildSearchIndex);
+        saveSettings();
+    }
+
+    public boolean isReadReportsFromZip() {
+        return settings.isReadReportsFromZip();
+    }
+
+    public void setReadReportsFromZip(boolean readReportsFromZip) {
+        settings.setReadReportsFromZip(readReportsFromZip);
+        saveSettings();
+    }
+
+    public boolean isCompressReports() {
+        return settings.isCompressReports();
+    }
+
+    public void setCompressReports(boolean compressReports) {
+        settings.setCompressReports(compressReports);
+        saveSettings();
+    }
+
+    public boolean isDeduplicateReports() {
+        return settings.isDeduplicateReports();
+    }
+
+    public void setDeduplicateReports(boolean deduplicateReports) {
+        settings.setDeduplicateReports(deduplicateReports);
+        saveSettings();
+    }
+
+    public int getImportWorkers() {
+        return settings.getImportWorkers();
+    }
+
+    public void setImportWorkers(int importWorkers) {
+        settings.setImportWorkers(importWorkers);
+        saveSettings();
+    }
+
+    public FileSplitter.Mode getSplitMode() {
+        return settings.getSplitMode();
+    }
+
+    public void setSplitMode(FileSplitter.Mode splitMode) {
+        settings.setSplitMode(splitMode);
+        saveSettings();
+    }
+
+    public int getSplitPartSizeMB() {
+        return settings.getSplitPartSizeMB();
+    }
+
+    public void setSplitPartSizeMB(int splitPartSizeMB) {
+        settings.setSplitPartSizeMB(splitPartSizeMB);
+        saveSettings();
+    }
+
+    public int getSplitLinesPerPart() {
+        return settings.getSplitLinesPerPart();
+    }
+
+    public void setSplitLinesPerPart(int splitLinesPerPart) {
+        settings.setSplitLinesPerPart(splitLinesPerPart);
+        saveSettings();
+    }
+
     public static class Settings {
         private String defaultOpenDirectory;
+        private boolean buildSearchIndex = true;
+        private int maxSearchResults; // 0 = unlimited
+        private int searchTimeBudgetSeconds; // 0 = unlimited
+        private boolean readReportsFromZip;
+        private boolean compressReports;
+        private boolean deduplicateReports;
+        private int importWorkers; // 0 = ImportQueue.defaultWorkers()
+        private FileSplitter.Mode splitMode = FileSplitter.Mode.SIZE;
+        private int splitPartSizeMB; // 0 = sized from the available memory
+        private int splitLinesPerPart; // 0 = FileSplitter.DEFAULT_LINES_PER_PART
 
         public String getDefaultOpenDirectory() {
             return defaultOpenDirectory;
@@ -69,5 +169,85 @@ public class SettingsManager {
         public void setDefaultOpenDirectory(String defaultOpenDirectory) {
             this.defaultOpenDirectory = defaultOpenDirectory;
         }
+
+        public int getMaxSearchResults() {
+            return maxSearchResults;
+        }
+
+        public void setMaxSearchResults(int maxSearchResults) {
+            this.maxSearchResults = maxSearchResults;
+        }
+
+        public int getSearchTimeBudgetSeconds() {
+            return searchTimeBudgetSeconds;
+        }
+
+        public boolean isBuildSearchIndex() {
+            return buildSearchIndex;
+        }
+
+        public void setBuildSearchIndex(boolean buildSearchIndex) {
+            this.buildSearchIndex = buildSearchIndex;
+        }
+
+        public void setSearchTimeBudgetSeconds(int searchTimeBudgetSeconds) {
+            this.searchTimeBudgetSeconds = searchTimeBudgetSeconds;
+        }
+
+        public boolean isReadReportsFromZip() {
+            return readReportsFromZip;
+        }
+
+        public void setReadReportsFromZip(boolean readReportsFromZip) {
+            this.readReportsFromZip = readReportsFromZip;
+        }
+
+        public boolean isCompressReports() {
+            return compressReports;
+        }
+
+        public void setCompressReports(boolean compressReports) {
+            this.compressReports = compressReports;
+        }
+
+        public boolean isDeduplicateReports() {
+            return deduplicateReports;
+        }
+
+        public void setDeduplicateReports(boolean deduplicateReports) {
+            this.deduplicateReports = deduplicateReports;
+        }
+
+        public int getImportWorkers() {
+            return importWorkers;
+        }
+
+        public void setImportWorkers(int importWorkers) {
+            this.importWorkers = importWorkers;
+        }
+
+        public FileSplitter.Mode getSplitMode() {
+            return splitMode;
+        }
+
+        public void setSplitMode(FileSplitter.Mode splitMode) {
+            this.splitMode = splitMode;
+        }
+
+        public int getSplitPartSizeMB() {
+            return splitPartSizeMB;
+        }
+
+        public void setSplitPartSizeMB(int splitPartSizeMB) {
+            this.splitPartSizeMB = splitPartSizeMB;
+        }
+
+        public int getSplitLinesPerPart() {
+            return splitLinesPerPart;
+        }
+
+        public void setSplitLinesPerPart(int splitLinesPerPart) {
+            this.splitLinesPerPart = splitLinesPerPart;
+        }
     }
 }
@@ -0,0 +1,566 @@
+package com.buganalyzer.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+// Per-file trigram index over line-aligned blocks, built once at import time and read onto the
+// heap at search time, so no mapping keeps the file from being replaced or deleted afterwards. For a literal query it returns the few blocks that can contain the query,
+// together with the number of lines before each block, so only those bytes need to be verified.
+//
+// Trigrams are taken from ASCII-lowercased bytes and never span a line break, so one index
+// serves case-sensitive and case-insensitive literal queries alike.
+public class TrigramIndex {
+
+    public static final String EXTENSION = ".trigram";
+    public static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static final int MAGIC = 0x42545249; // "BTRI"
+    private static final int VERSION = 1;
+    private static final int TRIGRAM_SPACE = 1 << 24;
+    private static final int TABLE_ENTRY_SIZE = 12; // trigram, posting offset, posting count
+
+    private final Map<String, FileEntry> entries = new HashMap<>();
+
+    private TrigramIndex() {}
+
+    // Index of one searched file inside the index file
+    public static class FileEntry {
+        private final String fileName;
+        private final long fileSize;
+        private final long lastModified;
+        private final long[] blockStarts;  // blockCount + 1 values, the last one is the file size
+        private final int[] linesBefore;   // number of lines before each block
+        private final ByteBuffer table;    // sorted trigram table
+        private final ByteBuffer postings; // varint-coded block id deltas
+        private final int trigramCount;
+
+        private FileEntry(String fileName, long fileSize, long lastModified, long[] blockStarts, int[] linesBefore,
+                          ByteBuffer table, ByteBuffer postings, int trigramCount) {
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.blockStarts = blockStarts;
+            this.linesBefore = linesBefore;
+            this.table = table;
+            this.postings = postings;
+            this.trigramCount = trigramCount;
+        }
+
+        public String getFileName() { return fileName; }
+
+        public int getBlockCount() { return blockStarts.length - 1; }
+
+        // True if the file on disk is still the one that was indexed
+        public boolean isFresh(File file) {
+            return isFresh(file.length(), file.lastModified());
+        }
+
+        public boolean isFresh(long size, long modified) {
+            return size == fileSize && modified == lastModified;
+        }
+
+        // Line-aligned {start, end, linesBefore} ranges that may contain the pattern, adjacent
+        // blocks merged up to maxRangeSize. Returns null if the pattern is too short to narrow
+        // anything down.
+        public List<long[]> candidateRanges(byte[] pattern, long maxRangeSize) {
+            if (pattern.length < 3) return null;
+
+            // Look up every distinct trigram, shortest posting list first
+            Set<Integer> trigrams = new LinkedHashSet<>();
+            for (int i = 0; i + 2 < pattern.length; i++) {
+                trigrams.add(trigram(lower(pattern[i]), lower(pattern[i + 1]), lower(pattern[i + 2])));
+            }
+            List<int[]> lookups = new ArrayList<>(); // {offset, count}
+            for (int t : trigrams) {
+                int[] found = find(t);
+                if (found == null) return new ArrayList<>(); // Trigram never occurs: no candidates at all
+                lookups.add(found);
+            }
+            lookups.sort(Comparator.comparingInt(l -> l[1]));
+
+            int[] candidates = decode(lookups.get(0));
+            for (int i = 1; i < lookups.size() && candidates.length > 0; i++) {
+                candidates = intersect(candidates, decode(lookups.get(i)));
+            }
+
+            List<long[]> ranges = new ArrayList<>();
+            for (int block : candidates) {
+                long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+                if (last != null && last[1] == blockStarts[block] && last[1] - last[0] < maxRangeSize) {
+                    last[1] = blockStarts[block + 1];
+                } else {
+                    ranges.add(new long[]{blockStarts[block], blockStarts[block + 1], linesBefore[block]});
+                }
+            }
+            return ranges;
+        }
+
+        private int[] find(int trigram) {
+            int lo = 0;
+            int hi = trigramCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int value = table.getInt(mid * TABLE_ENTRY_SIZE);
+                if (value < trigram) {
+                    lo = mid + 1;
+                } else if (value > trigram) {
+                    hi = mid - 1;
+                } else {
+                    return new int[]{table.getInt(mid * TABLE_ENTRY_SIZE + 4), table.getInt(mid * TABLE_ENTRY_SIZE + 8)};
+                }
+            }
+            return null;
+        }
+
+        private int[] decode(int[] lookup) {
+            int[] blocks = new int[lookup[1]];
+            int pos = lookup[0];
+            int previous = -1;
+            for (int i = 0; i < blocks.length; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = postings.get(pos++);
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                previous += delta;
+                blocks[i] = previous;
+            }
+            return blocks;
+        }
+    }
+
+    public FileEntry getEntry(String fileName) {
+        return entries.get(fileName);
+    }
+
+    // Entry for the file, or null if the file was not indexed or has changed since
+    public FileEntry getFreshEntry(File file) {
+        FileEntry entry = entries.get(file.getName());
+        return entry != null && entry.isFresh(file) ? entry : null;
+    }
+
+    public FileEntry getFreshEntry(String fileName, long size, long lastModified) {
+        FileEntry entry = entries.get(fileName);
+        return entry != null && entry.isFresh(size, lastModified) ? entry : null;
+    }
+
+    public static TrigramIndex open(File indexFile) throws IOException {
+        if (indexFile.length() > Integer.MAX_VALUE) {
+            throw new IOException("Trigram index too large: " + indexFile.getName());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a trigram index: " + indexFile.getName());
+        }
+        buffer.getInt(); // Block size, informational
+        int fileCount = buffer.getInt();
+
+        TrigramIndex index = new TrigramIndex();
+        for (int f = 0; f < fileCount; f++) {
+            byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(nameBytes);
+            String fileName = new String(nameBytes, StandardCharsets.UTF_8);
+            long fileSize = buffer.getLong();
+            long lastModified = buffer.getLong();
+            int blockCount = buffer.getInt();
+            long[] blockStarts = new long[blockCount + 1];
+            for (int i = 0; i <= blockCount; i++) {
+                blockStarts[i] = buffer.getLong();
+            }
+            int[] linesBefore = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                linesBefore[i] = buffer.getInt();
+            }
+            int trigramCount = buffer.getInt();
+            int postingsSize = buffer.getInt();
+            ByteBuffer table = slice(buffer, trigramCount * TABLE_ENTRY_SIZE);
+            ByteBuffer postings = slice(buffer, postingsSize);
+            index.entries.put(fileName, new FileEntry(fileName, fileSize, lastModified, blockStarts, linesBefore,
+                    table, postings, trigramCount));
+        }
+        return index;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    public static void build(List<File> files, File indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            writeHeader(out, files.size());
+            for (File file : files) {
+                Builder builder = new Builder();
+                try (InputStream in = new FileInputStream(file)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        builder.update(buffer, 0, read);
+                    }
+                }
+                writeEntry(out, file, builder);
+            }
+        }
+    }
+
+    // Writes a single-file index from a builder that was fed while the file was being written
+    public static void write(File indexFile, File sourceFile, Builder builder) throws IOException {
+        write(indexFile, sourceFile.getName(), sourceFile.length(), sourceFile.lastModified(), builder);
+    }
+
+    // For sources that aren't a file of their own, e.g. a zip entry read in place
+    public static void write(File indexFile, String fileName, long fileSize, long lastModified, Builder builder) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            writeHeader(out, 1);
+            writeEntry(out, fileName, fileSize, lastModified, builder);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, int fileCount) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(BLOCK_SIZE);
+        out.writeInt(fileCount);
+    }
+
+    private static void writeEntry(DataOutputStream out, File file, Builder builder) throws IOException {
+        writeEntry(out, file.getName(), file.length(), file.lastModified(), builder);
+    }
+
+    private static void writeEntry(DataOutputStream out, String fileName, long fileSize, long lastModified,
+                                   Builder builder) throws IOException {
+        builder.finish();
+
+        byte[] nameBytes = fileName.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(nameBytes.length);
+        out.write(nameBytes);
+        out.writeLong(fileSize);
+        out.writeLong(lastModified);
+        builder.writeTo(out);
+    }
+
+    // Streaming builder: feed the file's bytes in order, then finish() and writeTo(). Postings
+    // are collected as (trigram, block) pairs; once MAX_PENDING of them have piled up they are
+    // sorted and written to a temporary run file, and writeTo() merges the runs. Memory use is
+    // therefore bounded whatever the file size. Runs hold whole blocks and are cut in block
+    // order, so merging them keeps every posting list sorted.
+    public static class Builder {
+        private static final int MAX_PENDING = 1 << 22;
+
+        private final BitSet blockTrigrams = new BitSet(TRIGRAM_SPACE);
+        private final List<Long> blockStarts = new ArrayList<>();
+        private final List<Integer> linesBefore = new ArrayList<>();
+        private final List<File> runs = new ArrayList<>();
+        private long[] pending = new long[1024]; // trigram << 32 | block
+        private int pendingCount;
+        private int[] touched = new int[1024];
+        private int touchedCount;
+        private long position;
+        private long blockStart;
+        private int lines;
+        private int rolling;
+        private int lineLength;
+        private final int maxPending;
+        private IOException failure;
+
+        public Builder() {
+            this(MAX_PENDING);
+        }
+
+        // Smaller runs let tests exercise the spill and merge
+        Builder(int maxPending) {
+            this.maxPending = maxPending;
+            blockStarts.add(0L);
+            linesBefore.add(0);
+        }
+
+        public void update(byte[] data, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                byte b = data[i];
+                position++;
+                if (b == '\n') {
+                    lines++;
+                    lineLength = 0;
+                    if (position - blockStart >= BLOCK_SIZE) {
+                        closeBlock();
+                        blockStart = position;
+                        blockStarts.add(position);
+                        linesBefore.add(lines);
+                    }
+                    continue;
+                }
+                rolling = ((rolling << 8) | (lower(b) & 0xFF)) & (TRIGRAM_SPACE - 1);
+                if (++lineLength >= 3 && !blockTrigrams.get(rolling)) {
+                    blockTrigrams.set(rolling);
+                    if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+                    touched[touchedCount++] = rolling;
+                }
+            }
+        }
+
+        private void closeBlock() {
+            long blockId = blockStarts.size() - 1;
+            if (pendingCount + touchedCount > pending.length) {
+                int grown = Math.min(pending.length * 2, maxPending + BLOCK_SIZE);
+                pending = Arrays.copyOf(pending, Math.max(grown, pendingCount + touchedCount));
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int t = touched[i];
+                pending[pendingCount++] = (long) t << 32 | blockId;
+                blockTrigrams.clear(t);
+            }
+            touchedCount = 0;
+            if (pendingCount >= maxPending && failure == null) {
+                // update() can't throw; a failed spill is reported by writeTo()
+                try {
+                    File run = File.createTempFile("trigram", ".run");
+                    run.deleteOnExit();
+                    runs.add(run);
+                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(run))) {
+                        writeRun(out);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+
+        // Sorts the pending pairs and writes them as: trigram, count, block id deltas
+        private void writeRun(OutputStream out) throws IOException {
+            Arrays.sort(pending, 0, pendingCount);
+            DataOutputStream data = new DataOutputStream(out);
+            int i = 0;
+            while (i < pendingCount) {
+                int trigram = (int) (pending[i] >>> 32);
+                int j = i;
+                while (j < pendingCount && (int) (pending[j] >>> 32) == trigram) j++;
+                data.writeInt(trigram);
+                writeVarint(data, j - i);
+                int previous = -1;
+                for (int k = i; k < j; k++) {
+                    int block = (int) pending[k];
+                    writeVarint(data, block - previous);
+                    previous = block;
+                }
+                i = j;
+            }
+            data.flush();
+            pendingCount = 0;
+        }
+
+        void finish() {
+            if (position > blockStart || blockStarts.size() == 1) {
+                closeBlock();
+                blockStarts.add(position);
+            } else {
+                // The file ended exactly on a block boundary: drop the empty trailing block
+                linesBefore.remove(linesBefore.size() - 1);
+            }
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            List<RunReader> readers = new ArrayList<>();
+            SpillBuffer last = null;
+            try (SpillBuffer table = new SpillBuffer(); SpillBuffer blob = new SpillBuffer()) {
+                if (failure != null) throw failure;
+                int blockCount = blockStarts.size() - 1;
+                out.writeInt(blockCount);
+                for (long start : blockStarts) {
+                    out.writeLong(start);
+                }
+                for (int i = 0; i < blockCount; i++) {
+                    out.writeInt(linesBefore.get(i));
+                }
+
+                for (File run : runs) {
+                    readers.add(new RunReader(new BufferedInputStream(new FileInputStream(run)), readers.size()));
+                }
+                // The last run can be as large as the spilled ones, so it isn't kept whole in memory either
+                last = new SpillBuffer();
+                writeRun(last);
+                readers.add(new RunReader(last.openInput(), readers.size()));
+
+                int trigramCount = merge(readers, new DataOutputStream(table), blob);
+                out.writeInt(trigramCount);
+                out.writeInt((int) blob.size());
+                table.writeTo(out);
+                blob.writeTo(out);
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.in.close();
+                }
+                if (last != null) last.close();
+                for (File run : runs) {
+                    run.delete();
+                }
+                runs.clear();
+            }
+        }
+
+        // Joins the runs' lists of each trigram, earlier runs first, into one delta-coded list
+        private static int merge(List<RunReader> readers, DataOutputStream table, OutputStream blob) throws IOException {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                    Comparator.comparingInt((RunReader r) -> r.trigram).thenComparingInt(r -> r.order));
+            for (RunReader reader : readers) {
+                if (reader.next()) queue.add(reader);
+            }
+            DataOutputStream postings = new DataOutputStream(blob);
+            int trigramCount = 0;
+            while (!queue.isEmpty()) {
+                int trigram = queue.peek().trigram;
+                int offset = postings.size();
+                int count = 0;
+                int previous = -1;
+                while (!queue.isEmpty() && queue.peek().trigram == trigram) {
+                    RunReader reader = queue.poll();
+                    int block = -1;
+                    for (int i = 0; i < reader.count; i++) {
+                        block += readVarint(reader.in);
+                        writeVarint(postings, block - previous);
+                        previous = block;
+                    }
+                    count += reader.count;
+                    if (reader.next()) queue.add(reader);
+                }
+                table.writeInt(trigram);
+                table.writeInt(offset);
+                table.writeInt(count);
+                trigramCount++;
+            }
+            postings.flush();
+            return trigramCount;
+        }
+    }
+
+    // One sorted run being merged, positioned on a trigram whose block ids come next
+    private static class RunReader {
+        final DataInputStream in;
+        final int order;
+        int trigram;
+        int count;
+
+        RunReader(InputStream in, int order) {
+            this.in = new DataInputStream(in);
+            this.order = order;
+        }
+
+        boolean next() throws IOException {
+            try {
+                trigram = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            count = readVarint(in);
+            return true;
+        }
+    }
+
+    // Bytes kept in memory up to MEMORY_LIMIT, past that in a temporary file
+    private static class SpillBuffer extends OutputStream {
+        private static final int MEMORY_LIMIT = 8 * 1024 * 1024;
+
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File file;
+        private OutputStream fileOut;
+        private long size;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (file == null && memory.size() + len > MEMORY_LIMIT) {
+                file = File.createTempFile("trigram", ".tmp");
+                file.deleteOnExit();
+                fileOut = new BufferedOutputStream(new FileOutputStream(file));
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            if (file == null) {
+                memory.write(b, off, len);
+            } else {
+                fileOut.write(b, off, len);
+            }
+            size += len;
+        }
+
+        long size() {
+            return size;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            if (file == null) {
+                memory.writeTo(out);
+                return;
+            }
+            fileOut.flush();
+            Files.copy(file.toPath(), out);
+        }
+
+        InputStream openInput() throws IOException {
+            if (file == null) return new ByteArrayInputStream(memory.toByteArray());
+            fileOut.flush();
+            return new BufferedInputStream(new FileInputStream(file));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) fileOut.close();
+            if (file != null) file.delete();
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static byte lower(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + 32) : b;
+    }
+
+    private static int trigram(byte a, byte b, byte c) {
+        return ((a & 0xFF) << 16) | ((b & 0xFF) << 8) | (c & 0xFF);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+}
@@ -0,0 +1,225 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.ArchiveEntry;
+import com.buganalyzer.model.FileMetadata;
+import org.apache.commons.compress.archivers.zip.ZipMethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// A zip entry read in place from the original archive, for projects imported without
+// extracting their bugreports. Stored entries are plain positional reads. Deflated entries are
+// inflated into fixed-size blocks kept in an LRU cache. Whatever first inflates a stretch of
+// the entry leaves an access point about every POINT_SPACING bytes (a deflate block boundary
+// and the 32 KB before it); these are never dropped, so reaching a block that isn't cached
+// only inflates from the nearest access point before it. A few live cursors are also kept so
+// that reading on from where the last read stopped doesn't go back to an access point.
+public class ZipEntrySource implements ByteSource {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int CACHED_BLOCKS = 16;
+    private static final int MAX_CURSORS = 4;
+    private static final long POINT_SPACING = 4L * 1024 * 1024;
+
+    private final File zipFile;
+    private final String name;
+    private final long dataOffset;
+    private final long compressedSize;
+    private final long size;
+    private final long crc;
+    private final boolean stored;
+    private final Map<Long, byte[]> blocks = new LinkedHashMap<>(CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+    private final TreeMap<Long, RawInflater.AccessPoint> points = new TreeMap<>();
+    private final List<Cursor> cursors = new ArrayList<>(); // Least recently used first
+    private FileChannel channel;
+    private boolean closed;
+
+    public ZipEntrySource(File zipFile, String name, ArchiveEntry entry) {
+        this.zipFile = zipFile;
+        this.name = name;
+        this.dataOffset = entry.getDataOffset();
+        this.compressedSize = entry.getCompressedSize();
+        this.size = entry.getSize();
+        this.crc = entry.getCrc();
+        this.stored = entry.getMethod() == ZipMethod.STORED.getCode();
+        points.put(0L, new RawInflater.AccessPoint(0, 0, new byte[0]));
+    }
+
+    // The source of a report imported without extraction, or null if it was extracted
+    public static ZipEntrySource open(FileMetadata fileMetadata) {
+        if (fileMetadata.getArchiveEntry() == null || fileMetadata.getArchivePath() == null) return null;
+        return new ZipEntrySource(new File(fileMetadata.getArchivePath()), fileMetadata.getFileName(), fileMetadata.getArchiveEntry());
+    }
+
+    // Whether an entry can be read in place: its data must be at a known offset of the outer
+    // zip and be stored or deflated
+    public static boolean canReadInPlace(ArchiveEntry entry) {
+        return entry.getZipPath().isEmpty() && entry.getDataOffset() >= 0 && entry.getSize() >= 0
+                && (entry.getMethod() == ZipMethod.STORED.getCode() || entry.getMethod() == ZipMethod.DEFLATED.getCode());
+    }
+
+    public File getZipFile() {
+        return zipFile;
+    }
+
+    // Indexes built at import are tied to the zip as it was then
+    @Override
+    public long lastModified() {
+        return zipFile.lastModified();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (closed) throw new IOException(name + " is closed");
+        if (position >= size) return -1;
+        int count = (int) Math.min(length, size - position);
+        if (stored) {
+            ByteBuffer target = ByteBuffer.wrap(buffer, offset, count);
+            while (target.hasRemaining()) {
+                if (channel().read(target, dataOffset + position + target.position() - offset) < 0) {
+                    throw new IOException("Unexpected end of " + zipFile.getName());
+                }
+            }
+            return count;
+        }
+        int done = 0;
+        while (done < count) {
+            long pos = position + done;
+            byte[] block = block(pos / BLOCK_SIZE);
+            int inBlock = (int) (pos % BLOCK_SIZE);
+            int n = Math.min(count - done, block.length - inBlock);
+            System.arraycopy(block, inBlock, buffer, offset + done, n);
+            done += n;
+        }
+        return count;
+    }
+
+    // Closes the zip and drops the cached blocks, cursors and access points
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        blocks.clear();
+        cursors.clear();
+        points.clear();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // One channel serves every read. A thread interrupted while reading closes it, so it is
+    // reopened when that happened.
+    private FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    private byte[] block(long blockNumber) throws IOException {
+        byte[] block = blocks.get(blockNumber);
+        if (block != null) return block;
+
+        long start = blockNumber * BLOCK_SIZE;
+        FileChannel current = channel();
+        cursors.removeIf(c -> c.channel != current);
+        Cursor cursor = null;
+        for (Cursor c : cursors) {
+            if (c.position() <= start && (cursor == null || c.position() > cursor.position())) cursor = c;
+        }
+        RawInflater.AccessPoint point = points.floorEntry(start).getValue();
+        if (cursor == null || point.position > cursor.position()) {
+            if (cursors.size() == MAX_CURSORS) {
+                cursors.remove(0);
+            }
+            cursor = new Cursor(current, point);
+        } else {
+            cursors.remove(cursor);
+        }
+        cursors.add(cursor);
+
+        // Blocks skipped on the way are cached too: the viewer usually reads on from here. An
+        // access point is rarely at a block start, so the part of a block before it is skipped.
+        try {
+            while (cursor.position() <= start) {
+                long position = cursor.position();
+                int inBlock = (int) (position % BLOCK_SIZE);
+                byte[] data = new byte[(int) Math.min(BLOCK_SIZE - inBlock, size - position)];
+                cursor.readFully(data);
+                if (inBlock == 0) {
+                    blocks.put(position / BLOCK_SIZE, data);
+                    block = data;
+                }
+            }
+        } catch (IOException e) {
+            cursors.remove(cursor);
+            throw e;
+        }
+        if (cursor.position() >= size) {
+            cursors.remove(cursor);
+        }
+        return block;
+    }
+
+    // An inflater part way through the entry. It leaves access points behind as it goes, where
+    // there is none yet, and checks the entry's CRC when it inflated all of it.
+    private class Cursor {
+        private final FileChannel channel;
+        private final RawInflater inflater;
+        private final CRC32 checksum;
+
+        Cursor(FileChannel channel, RawInflater.AccessPoint from) throws IOException {
+            this.channel = channel;
+            inflater = new RawInflater(channel, dataOffset, compressedSize, from);
+            checksum = from.position == 0 && crc >= 0 ? new CRC32() : null;
+        }
+
+        long position() {
+            return inflater.getPosition();
+        }
+
+        void readFully(byte[] data) throws IOException {
+            int total = 0;
+            while (total < data.length) {
+                long position = inflater.getPosition();
+                if (inflater.atBlockBoundary() && position < size
+                        && position - points.floorKey(position) >= POINT_SPACING) {
+                    points.put(position, inflater.accessPoint());
+                }
+                int read = inflater.inflate(data, total, data.length - total, true);
+                if (read < 0) throw new IOException("Unexpected end of " + name + " in " + zipFile.getName());
+                total += read;
+            }
+            if (checksum != null) {
+                checksum.update(data);
+                if (inflater.getPosition() == size && checksum.getValue() != crc) {
+                    throw new IOException("CRC mismatch in " + name + " of " + zipFile.getName());
+                }
+            }
+        }
+    }
+}
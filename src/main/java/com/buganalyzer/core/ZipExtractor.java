@@ -1,111 +1,844 @@
 package com.buganalyzer.core;
 
+import com.buganalyzer.model.ArchiveEntry;
 import com.buganalyzer.model.FileMetadata;
 import com.buganalyzer.model.ProjectManifest;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.function.IOSupplier;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 public class ZipExtractor {
 
     private static final Pattern BUGREPORT_PATTERN = Pattern.compile("bugreport.*\\.txt", Pattern.CASE_INSENSITIVE);
     private static final Pattern VIDEO_PATTERN = Pattern.compile(".*\\.mp4", Pattern.CASE_INSENSITIVE);
+    // Nested zips up to this size are opened from memory, larger ones are streamed
+    private static final long MAX_IN_MEMORY_NESTED_ZIP = 256L * 1024 * 1024;
+    // Entries inflated (and bugreports indexed and split) at the same time during one import
+    private static final int EXTRACT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // Folder in the project where a re-import writes the new files of changed entries
+    private static final String REPLACEMENT_DIR = ".reimport";
+    // A file in the project folder, its compressed copy and its sidecar indexes
+    private static final String[] SUFFIXES = {"", BlockCompressedFile.EXTENSION, LineIndex.EXTENSION,
+            TrigramIndex.EXTENSION, SectionIndex.EXTENSION};
 
     public static ProjectManifest extractProject(File zipFile) throws IOException {
-        String zipName = zipFile.getName();
-        String projectName = FilenameUtils.getBaseName(zipName);
-        File projectDir = new File(zipFile.getParent(), projectName);
+        return extractProject(zipFile, new ImportOptions());
+    }
+
+    public static ProjectManifest extractProject(File zipFile, ImportOptions options) throws IOException {
+        return extractProject(zipFile, options, null);
+    }
+
+    // progress, if given, follows the bytes read from the zip and can pause or cancel the
+    // import. A failed or cancelled import removes the files it wrote to the project folder.
+    // Importing a zip again into its existing project is incremental: if the zip's fingerprint
+    // and the import settings haven't changed, the earlier manifest is returned as is;
+    // otherwise entries whose size, CRC-32 and time are unchanged keep their files and indexes,
+    // changed ones are extracted again under their old names, and files of entries that are
+    // gone are removed. The earlier import's files are only replaced or removed once the new
+    // one has succeeded, so a failed or cancelled re-import leaves the project as it was.
+    public static ProjectManifest extractProject(File zipFile, ImportOptions options, ImportProgress progress) throws IOException {
+        String projectName = FilenameUtils.getBaseName(zipFile.getName());
+        File projectDir = projectDirOf(zipFile);
         
         if (!projectDir.exists()) {
             projectDir.mkdirs();
         }
 
+        ProjectManifest previous = loadPrevious(zipFile, projectDir, projectName);
+        long sourceSize = zipFile.length();
+        long sourceLastModified = zipFile.lastModified();
+        String sourceHash = archiveHash(zipFile);
+        // Files written with other settings (compression, splitting, ...) are all written again
+        boolean sameSettings = previous != null && options.signature().equals(previous.getImportSettings());
+        if (sameSettings && previous.getSourceSize() == sourceSize
+                && previous.getSourceLastModified() == sourceLastModified && sourceHash.equals(previous.getSourceHash())
+                && isComplete(previous, projectDir)) {
+            if (progress != null) {
+                progress.start(sourceSize);
+                progress.addBytes(sourceSize);
+            }
+            return previous;
+        }
+
         ProjectManifest manifest = new ProjectManifest(projectName, zipFile.getAbsolutePath());
-        
-        processZip(zipFile, projectDir, manifest, "");
+        manifest.setSourceSize(sourceSize);
+        manifest.setSourceLastModified(sourceLastModified);
+        manifest.setSourceHash(sourceHash);
+        manifest.setImportSettings(options.signature());
+        if (previous != null) {
+            manifest.setDisplayName(previous.getDisplayName());
+        }
+
+        try (Extraction extraction = new Extraction(zipFile, projectDir, options, progress, previous, sameSettings)) {
+            try {
+                if (progress != null) progress.start(sourceSize);
+                processZip(zipFile, extraction, new ArrayList<>());
+                // Manifest order is the order entries were found in, whichever finished first
+                for (FileMetadata metadata : extraction.awaitAll()) {
+                    manifest.addFile(metadata);
+                }
+                manifest.setEntries(extraction.entries);
+                ProjectSearch.evictIndexes(projectDir);
+                extraction.commitReplacements();
+            } catch (IOException | RuntimeException e) {
+                extraction.discard();
+                throw e;
+            }
+            extraction.removeStale();
+        }
         
         return manifest;
     }
 
-    private static void processZip(File zipFile, File projectDir, ProjectManifest manifest, String pathPrefix) throws IOException {
-        try (ZipFile zip = new ZipFile(zipFile)) {
-            Enumeration<ZipArchiveEntry> entries = zip.getEntries();
-            while (entries.hasMoreElements()) {
-                ZipArchiveEntry entry = entries.nextElement();
-                String entryName = entry.getName();
-                String fullPathInZip = pathPrefix + entryName;
+    // The folder a zip is imported into: next to it, named after it
+    public static File projectDirOf(File zipFile) {
+        return new File(zipFile.getAbsoluteFile().getParent(), FilenameUtils.getBaseName(zipFile.getName()));
+    }
+
+    // The manifest of an earlier import of this zip into projectDir, or null
+    private static ProjectManifest loadPrevious(File zipFile, File projectDir, String projectName) {
+        File jsonFile = new File(projectDir, projectName + ".json");
+        if (!jsonFile.isFile()) return null;
+        try {
+            ProjectManifest previous = ProjectManager.loadProject(jsonFile);
+            return zipFile.getAbsolutePath().equals(previous.getOriginalZipPath()) ? previous : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null; // Imported from scratch, as if it weren't there
+        }
+    }
+
+    // Whether the files of an earlier import are all still there
+    private static boolean isComplete(ProjectManifest manifest, File projectDir) {
+        for (FileMetadata file : manifest.getFiles()) {
+            if (!isPresent(file, projectDir)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isPresent(FileMetadata file, File projectDir) {
+        File dir = ContentStore.dirOf(file, projectDir);
+        if (file.getArchiveEntry() != null) {
+            return file.getLineIndex() == null || new File(dir, file.getLineIndex()).exists();
+        }
+        return new File(dir, file.getRelativePath()).exists();
+    }
+
+    // Fast fingerprint of a zip's content: SHA-256 of its size, its first 64 KB and its last
+    // 256 KB. The tail holds the central directory, with every entry's size and CRC-32, so a
+    // changed entry changes the hash without the whole zip being read.
+    static String archiveHash(File zipFile) throws IOException {
+        MessageDigest digest = ContentStore.newDigest();
+        try (FileChannel channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            digest.update(ByteBuffer.allocate(8).putLong(0, size));
+            long headLength = Math.min(size, 64 * 1024);
+            long tailStart = Math.max(headLength, size - 256 * 1024);
+            digestRange(channel, 0, headLength, digest);
+            digestRange(channel, tailStart, size - tailStart, digest);
+        }
+        return ContentStore.toHex(digest.digest());
+    }
+
+    private static void digestRange(FileChannel channel, long position, long length, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+        digest.update(buffer);
+    }
+
+    // With progress to report, the zip is read through a ProgressChannel. Reads of parallel
+    // entries then take turns on it, which costs little next to inflating them.
+    private static void processZip(File zipFile, Extraction extraction, List<String> zipPath) throws IOException {
+        ImportProgress progress = extraction.progress;
+        try (ZipFile zip = progress != null
+                ? new ZipFile(new ProgressChannel(FileChannel.open(zipFile.toPath(), StandardOpenOption.READ), progress),
+                        zipFile.getName(), "UTF8", true)
+                : new ZipFile(zipFile)) {
+            processZip(zip, extraction, zipPath);
+        }
+    }
 
-                if (entry.isDirectory()) {
+    // Entries of a random-access zip are inflated concurrently, each on its own pool thread.
+    // Returns only once they are all done, since they read from this ZipFile. Every entry,
+    // extracted or not, is recorded in the archive index.
+    private static void processZip(ZipFile zip, Extraction extraction, List<String> zipPath) throws IOException {
+        int firstTask = extraction.taskCount();
+        Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+        while (entries.hasMoreElements()) {
+            ZipArchiveEntry entry = entries.nextElement();
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String entryName = entry.getName();
+            ArchiveEntry archiveEntry = extraction.record(entry, zipPath);
+            String fullPathInZip = archiveEntry.fullPath();
+            if (isNestedZip(entryName)) {
+                if (extraction.reuseNested(archiveEntry)) {
                     continue;
                 }
+                try (InputStream is = zip.getInputStream(entry)) {
+                    processNestedZip(is, entry.getSize(), extraction, nested(zipPath, entryName));
+                }
+                continue;
+            }
+            FileMetadata.FileType type = typeOf(entryName);
+            if (type == FileMetadata.FileType.BUGREPORT && !extraction.options.isExtractReports()
+                    && zipPath.isEmpty() && ZipEntrySource.canReadInPlace(archiveEntry)) {
+                File targetFile = extraction.reserveTarget(new File(entryName).getName(), fullPathInZip);
+                extraction.submit(() -> {
+                    try (InputStream is = zip.getInputStream(entry)) {
+                        return indexInPlace(is, targetFile, archiveEntry, extraction).call();
+                    }
+                });
+            } else if (type != null) {
+                FileMetadata unchanged = extraction.reuse(archiveEntry);
+                if (unchanged != null) {
+                    extraction.submit(() -> unchanged);
+                    continue;
+                }
+                File targetFile = extraction.reserveTarget(new File(entryName).getName(), fullPathInZip);
+                archiveEntry.setExtractedFile(targetFile.getName());
+                FileMetadata stored = extraction.findStored(type, entry, () -> {
+                    try (InputStream is = zip.getInputStream(entry)) {
+                        return is.readNBytes(ContentStore.SAMPLE_SIZE);
+                    }
+                });
+                if (stored != null) {
+                    extraction.submit(() -> ContentStore.forProject(stored, targetFile.getName(), fullPathInZip));
+                } else {
+                    extraction.submit(() -> {
+                        try (InputStream is = zip.getInputStream(entry)) {
+                            return extractEntry(is, targetFile, type, fullPathInZip, extraction).call();
+                        }
+                    });
+                }
+            }
+        }
+        extraction.await(firstTask);
+    }
 
-                // Check if it's a nested zip
-                if (entryName.toLowerCase().endsWith(".zip")) {
-                    // Extract nested zip to temp file and process recursively
-                    File tempZip = File.createTempFile("nested_", ".zip", projectDir);
-                    try (InputStream is = zip.getInputStream(entry);
-                         OutputStream os = new FileOutputStream(tempZip)) {
-                        IOUtils.copy(is, os);
+    // Sequential read of a nested zip straight from its parent's entry stream. Inflating can't
+    // be parallel here, but each entry's indexing and splitting runs on the pool while the
+    // next entry is read.
+    private static void processZipStream(InputStream in, Extraction extraction, List<String> zipPath) throws IOException {
+        ZipArchiveInputStream zin = new ZipArchiveInputStream(in, "UTF-8", true, true);
+        ZipArchiveEntry entry;
+        while ((entry = zin.getNextZipEntry()) != null) {
+            if (entry.isDirectory() || !zin.canReadEntryData(entry)) {
+                continue;
+            }
+            String entryName = entry.getName();
+            ArchiveEntry archiveEntry = extraction.record(entry, zipPath);
+            String fullPathInZip = archiveEntry.fullPath();
+            // The entry's data ends where the next entry begins, so it must not close the archive stream
+            try (InputStream is = CloseShieldInputStream.wrap(zin)) {
+                if (isNestedZip(entryName)) {
+                    if (!extraction.reuseNested(archiveEntry)) {
+                        processNestedZip(is, entry.getSize(), extraction, nested(zipPath, entryName));
                     }
-                    processZip(tempZip, projectDir, manifest, fullPathInZip + "/");
-                    tempZip.delete(); // Cleanup temp zip
                     continue;
                 }
+                FileMetadata.FileType type = typeOf(entryName);
+                FileMetadata unchanged = type != null ? extraction.reuse(archiveEntry) : null;
+                if (unchanged != null) {
+                    extraction.submit(() -> unchanged);
+                } else if (type != null) {
+                    File targetFile = extraction.reserveTarget(new File(entryName).getName(), fullPathInZip);
+                    archiveEntry.setExtractedFile(targetFile.getName());
+                    // A stored report is skipped over once its start is compared, unless its CRC
+                    // only follows its data. The compared bytes are pushed back for extraction.
+                    PushbackInputStream data = new PushbackInputStream(is, ContentStore.SAMPLE_SIZE);
+                    FileMetadata stored = extraction.findStored(type, entry, () -> {
+                        byte[] head = data.readNBytes(ContentStore.SAMPLE_SIZE);
+                        data.unread(head);
+                        return head;
+                    });
+                    if (stored != null) {
+                        extraction.submit(() -> ContentStore.forProject(stored, targetFile.getName(), fullPathInZip));
+                    } else {
+                        extraction.submit(extractEntry(data, targetFile, type, fullPathInZip, extraction));
+                    }
+                }
+            }
+        }
+    }
+
+    // Nested zips are never written to disk: small ones are opened from memory (random access,
+    // same as the outer zip), bigger or unknown-size ones are read as a stream in one pass
+    private static void processNestedZip(InputStream is, long size, Extraction extraction, List<String> zipPath) throws IOException {
+        if (size >= 0 && size <= inMemoryNestedLimit()) {
+            byte[] data = IOUtils.toByteArray(is, size);
+            try (ZipFile nested = new ZipFile(new SeekableInMemoryByteChannel(data))) {
+                processZip(nested, extraction, zipPath);
+            }
+        } else {
+            processZipStream(is, extraction, zipPath);
+        }
+    }
+
+    private static List<String> nested(List<String> zipPath, String nestedZipName) {
+        List<String> path = new ArrayList<>(zipPath);
+        path.add(nestedZipName);
+        return path;
+    }
+
+    static long inMemoryNestedLimit() {
+        return Math.min(MAX_IN_MEMORY_NESTED_ZIP, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    static boolean isNestedZip(String entryName) {
+        return entryName.toLowerCase().endsWith(".zip");
+    }
+
+    private static FileMetadata.FileType typeOf(String entryName) {
+        String name = new File(entryName).getName();
+        if (BUGREPORT_PATTERN.matcher(name).matches()) {
+            return FileMetadata.FileType.BUGREPORT;
+        } else if (VIDEO_PATTERN.matcher(name).matches()) {
+            return FileMetadata.FileType.VIDEO;
+        }
+        return null;
+    }
+
+    // Copies the entry to its target file now, and returns the rest of the work (writing the
+    // indexes) to be run on the pool. A bugreport is line-indexed, trigram-indexed and scanned
+    // for section headers in the same pass over the entry stream, so it is never read back from
+    // disk. Its parts are planned from the line index as ranges of the file, not written out.
+    // With compressReports set, a bugreport is written as a block-compressed file next to where
+    // its content file would be, and its indexes still describe the uncompressed bytes. With
+    // deduplication, a bugreport is extracted into a staging folder of the content store while
+    // it is hashed, then filed there by its hash (or dropped in favour of an identical stored
+    // copy), and the project only points at it.
+    private static Callable<FileMetadata> extractEntry(InputStream is, File targetFile, FileMetadata.FileType type,
+                                                       String fullPathInZip, Extraction extraction) throws IOException {
+        ImportOptions options = extraction.options;
+        boolean report = type == FileMetadata.FileType.BUGREPORT;
+        File staging = report && extraction.store != null ? extraction.newStaging() : null;
+        File contentFile = staging != null ? new File(staging, ContentStore.CONTENT_NAME) : targetFile;
+        ReportIndexer indexer = report ? new ReportIndexer(options) : null;
+        File storedFile = report && options.isCompressReports()
+                ? new File(contentFile.getPath() + BlockCompressedFile.EXTENSION) : contentFile;
+        OutputStream target = storedFile != contentFile
+                ? new BlockCompressedFile.Writer(storedFile) : new FileOutputStream(contentFile);
+        MessageDigest digest = staging != null ? ContentStore.newDigest() : null;
+        CRC32 crc = new CRC32();
+        OutputStream os = new IndexingOutputStream(target, indexer, extraction.progress);
+        if (digest != null) {
+            os = new DigestOutputStream(new CheckedOutputStream(os, crc), digest);
+        }
+        long size;
+        extraction.enter(ImportProgress.Stage.EXTRACTING);
+        try (CountingOutputStream counting = new CountingOutputStream(os)) {
+            IOUtils.copy(is, counting);
+            size = counting.getByteCount();
+        } catch (IOException e) {
+            if (staging != null) FileUtils.deleteQuietly(staging);
+            throw e;
+        } finally {
+            extraction.leave(ImportProgress.Stage.EXTRACTING);
+        }
+
+        return () -> {
+            FileMetadata metadata = new FileMetadata(
+                    contentFile.getName(),
+                    size,
+                    storedFile.getName(), // relative path in project dir (or store object)
+                    fullPathInZip,
+                    type
+            );
+            if (storedFile != contentFile) {
+                metadata.setCompressedFile(storedFile.getName());
+            }
+
+            if (indexer != null) {
+                extraction.enter(ImportProgress.Stage.INDEXING);
+                try {
+                    indexer.write(metadata, contentFile.getParentFile(), size, storedFile.lastModified());
+                } finally {
+                    extraction.leave(ImportProgress.Stage.INDEXING);
+                }
+            }
+            if (staging == null) {
+                return metadata;
+            }
+            FileMetadata stored = extraction.store.commit(staging, digest.digest(), size, crc.getValue(), metadata);
+            return ContentStore.forProject(stored, targetFile.getName(), fullPathInZip);
+        };
+    }
+
+    // No-extract import of a bugreport: the entry is only read to build its indexes, and the
+    // viewer and search later read it from the zip through a ZipEntrySource. The indexes are
+    // named after targetFile, which is never created.
+    private static Callable<FileMetadata> indexInPlace(InputStream is, File targetFile, ArchiveEntry archiveEntry,
+                                                       Extraction extraction) throws IOException {
+        File zipFile = extraction.zipFile;
+        ReportIndexer indexer = new ReportIndexer(extraction.options);
+        extraction.enter(ImportProgress.Stage.EXTRACTING);
+        try (OutputStream os = new IndexingOutputStream(OutputStream.nullOutputStream(), indexer, extraction.progress)) {
+            IOUtils.copy(is, os);
+        } finally {
+            extraction.leave(ImportProgress.Stage.EXTRACTING);
+        }
+
+        return () -> {
+            FileMetadata metadata = new FileMetadata(
+                    targetFile.getName(),
+                    archiveEntry.getSize(),
+                    targetFile.getName(),
+                    archiveEntry.fullPath(),
+                    FileMetadata.FileType.BUGREPORT
+            );
+            metadata.setArchivePath(zipFile.getAbsolutePath());
+            metadata.setArchiveEntry(archiveEntry);
+            extraction.enter(ImportProgress.Stage.INDEXING);
+            try {
+                indexer.write(metadata, targetFile.getParentFile(), archiveEntry.getSize(), zipFile.lastModified());
+            } finally {
+                extraction.leave(ImportProgress.Stage.INDEXING);
+            }
+            return metadata;
+        };
+    }
+
+    // The index builders of one bugreport, fed while its bytes stream past
+    private static class ReportIndexer {
+        private final ImportOptions options;
+        private final LineIndex.Builder lineIndex = new LineIndex.Builder();
+        private final TrigramIndex.Builder trigramIndex;
+        private final SectionIndex.Builder sectionIndex = new SectionIndex.Builder();
+
+        ReportIndexer(ImportOptions options) {
+            this.options = options;
+            this.trigramIndex = options.isBuildSearchIndex() ? new TrigramIndex.Builder() : null;
+        }
+
+        void update(byte[] b, int off, int len) {
+            lineIndex.update(b, off, len);
+            if (trigramIndex != null) trigramIndex.update(b, off, len);
+            sectionIndex.update(b, off, len);
+        }
+
+        // Writes the sidecar files next to where the report is (or would be) in the project
+        // folder. size and lastModified identify the indexed bytes for later freshness checks.
+        void write(FileMetadata metadata, File projectDir, long size, long lastModified) throws IOException {
+            String name = metadata.getFileName();
+            File lineIndexFile = new File(projectDir, name + LineIndex.EXTENSION);
+            lineIndex.write(lineIndexFile, size, lastModified);
+            metadata.setLineIndex(lineIndexFile.getName());
+            metadata.setLineCount(lineIndex.getLineCount());
+
+            if (trigramIndex != null) {
+                File indexFile = new File(projectDir, name + TrigramIndex.EXTENSION);
+                TrigramIndex.write(indexFile, name, size, lastModified, trigramIndex);
+                metadata.setSearchIndex(indexFile.getName());
+            }
+
+            File sectionIndexFile = new File(projectDir, name + SectionIndex.EXTENSION);
+            SectionIndex sections = sectionIndex.toIndex();
+            sections.write(sectionIndexFile);
+            metadata.setSectionIndex(sectionIndexFile.getName());
+
+            metadata.setParts(FileSplitter.planParts(new File(projectDir, name), lineIndex.toIndex(size, lastModified),
+                    sections, options.getSplitPolicy()));
+        }
+    }
+
+    // State of one import: the worker pool, the target names handed out so far, the per-entry
+    // tasks in the order their entries were found, the index of all entries, and what an
+    // earlier import of the same zip left. Only the importing thread walks the zips, so only
+    // the tasks run concurrently.
+    private static class Extraction implements Closeable {
+        private final File zipFile;
+        private final File projectDir;
+        private final ImportOptions options;
+        private final ContentStore store; // Null unless reports are deduplicated
+        private final ImportProgress progress; // Null unless someone follows the import
+        private final ExecutorService pool;
+        private final Set<String> reservedNames = new HashSet<>();
+        private final List<Future<FileMetadata>> tasks = new ArrayList<>();
+        private final List<ArchiveEntry> entries = new ArrayList<>();
+        private final List<File> stagings = new ArrayList<>();
+        // Files and entries of the earlier import, by path in the zip; empty if there was none
+        private final Map<String, FileMetadata> previousFiles = new HashMap<>();
+        private final Map<String, ArchiveEntry> previousEntries = new LinkedHashMap<>();
+        private final Set<String> previousNames = new HashSet<>(); // Never written to nor discarded
+        private final Set<String> claimedPaths = new HashSet<>(); // Earlier files reused or replaced
+        private final Set<String> replacedNames = new HashSet<>(); // Written to replacementDir
+        private final File replacementDir;
+        private volatile boolean committing; // Once set, replacementDir's files are the project's
 
-                FileMetadata.FileType type = null;
-                if (BUGREPORT_PATTERN.matcher(new File(entryName).getName()).matches()) {
-                    type = FileMetadata.FileType.BUGREPORT;
-                } else if (VIDEO_PATTERN.matcher(new File(entryName).getName()).matches()) {
-                    type = FileMetadata.FileType.VIDEO;
-                }
-
-                if (type != null) {
-                    // Extract relevant file
-                    String safeName = new File(entryName).getName();
-                    // Handle potential duplicates by prefixing/suffixing if needed? 
-                    // For now, let's assume unique enough or overwrite. 
-                    // Better: preserve some structure or rename.
-                    // Requirement: "存入zip压缩文件所在目录的同名文件夹内"
-                    // Let's just put them in root of project dir for simplicity as per req 1.
-                    
-                    File targetFile = new File(projectDir, safeName);
-                    // If exists, append timestamp or index to avoid overwrite
-                    int index = 1;
-                    while (targetFile.exists()) {
-                        String base = FilenameUtils.getBaseName(safeName);
-                        String ext = FilenameUtils.getExtension(safeName);
-                        targetFile = new File(projectDir, base + "_" + index++ + "." + ext);
+        // previous is the earlier import's manifest, if any; its files are only reused if it was
+        // made with the same settings
+        Extraction(File zipFile, File projectDir, ImportOptions options, ImportProgress progress,
+                   ProjectManifest previous, boolean reusable) {
+            this.zipFile = zipFile;
+            this.projectDir = projectDir;
+            this.options = options;
+            this.progress = progress;
+            if (previous != null) {
+                for (FileMetadata file : previous.getFiles()) {
+                    previousFiles.put(file.getOriginalPath(), file);
+                    previousNames.add(file.getFileName());
+                }
+                if (reusable && previous.getEntries() != null) {
+                    for (ArchiveEntry entry : previous.getEntries()) {
+                        previousEntries.put(entry.fullPath(), entry);
                     }
+                }
+            }
+            // Left over from an import that didn't get to clean up
+            this.replacementDir = new File(projectDir, REPLACEMENT_DIR);
+            FileUtils.deleteQuietly(replacementDir);
+            this.store = options.isDeduplicateReports() ? new ContentStore() : null;
+            this.pool = Executors.newFixedThreadPool(EXTRACT_THREADS, r -> {
+                Thread t = new Thread(r, "zip-extract");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        // Names are reserved up front, in entry order, so concurrent extraction gives the same
+        // de-duplicated names as a sequential one: "name.ext", then "name_1.ext", ...
+        File reserveTarget(String safeName) {
+            File targetFile = new File(projectDir, safeName);
+            int index = 1;
+            while (targetFile.exists() || new File(targetFile.getPath() + BlockCompressedFile.EXTENSION).exists()
+                    || reservedNames.contains(targetFile.getName()) || previousNames.contains(targetFile.getName())) {
+                String base = FilenameUtils.getBaseName(safeName);
+                String ext = FilenameUtils.getExtension(safeName);
+                targetFile = new File(projectDir, base + "_" + index++ + "." + ext);
+            }
+            reservedNames.add(targetFile.getName());
+            return targetFile;
+        }
+
+        // An entry imported before keeps its old name, so importing again doesn't pile up
+        // "name_1.ext" copies. Its new files are written to replacementDir under that name and
+        // only take the old ones' place in commitReplacements().
+        File reserveTarget(String safeName, String fullPath) throws IOException {
+            FileMetadata before = previousFiles.get(fullPath);
+            if (before != null && claimedPaths.add(fullPath) && reservedNames.add(before.getFileName())) {
+                replacedNames.add(before.getFileName());
+                if (!replacementDir.isDirectory() && !replacementDir.mkdirs()) {
+                    throw new IOException("Could not create " + replacementDir);
+                }
+                return new File(replacementDir, before.getFileName());
+            }
+            return reserveTarget(safeName);
+        }
 
-                    try (InputStream is = zip.getInputStream(entry);
-                         OutputStream os = new FileOutputStream(targetFile)) {
-                        IOUtils.copy(is, os);
+        // Once every entry is done: moves the new files of replaced entries over the old ones,
+        // then removes the old files that have no new counterpart (a compressed copy or an index
+        // the new settings don't write). Nothing is deleted before every move has succeeded, and
+        // a commit that fails part way keeps what is left in replacementDir: the earlier
+        // manifest still lists every name, and the entries moved so far are extracted again by
+        // the next import since they changed.
+        void commitReplacements() throws IOException {
+            if (!replacementDir.isDirectory()) return;
+            committing = true;
+            File[] files = replacementDir.listFiles();
+            Set<String> moved = new HashSet<>();
+            if (files != null) {
+                for (File file : files) {
+                    Files.move(file.toPath(), new File(projectDir, file.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    moved.add(file.getName());
+                }
+            }
+            for (String name : replacedNames) {
+                for (String suffix : SUFFIXES) {
+                    if (!moved.contains(name + suffix)) {
+                        FileUtils.deleteQuietly(new File(projectDir, name + suffix));
                     }
+                }
+            }
+            FileUtils.deleteDirectory(replacementDir);
+        }
 
-                    FileMetadata metadata = new FileMetadata(
-                            targetFile.getName(),
-                            targetFile.length(),
-                            targetFile.getName(), // relative path in project dir
-                            fullPathInZip,
-                            type
-                    );
-
-                    // If bugreport, split it
-                    if (type == FileMetadata.FileType.BUGREPORT) {
-                        List<String> parts = FileSplitter.splitFile(targetFile);
-                        metadata.setSplitParts(parts);
+        // The earlier import's file for an entry that hasn't changed since, if its files are
+        // still there, or null. Reports read in place are indexed again instead: their indexes
+        // are tied to the zip's time and their data to its layout.
+        FileMetadata reuse(ArchiveEntry entry) {
+            String path = entry.fullPath();
+            FileMetadata before = previousFiles.get(path);
+            ArchiveEntry earlier = previousEntries.get(path);
+            if (before == null || earlier == null || !entry.isUnchangedFrom(earlier) || before.getArchiveEntry() != null
+                    || !isPresent(before, projectDir) || reservedNames.contains(before.getFileName())) {
+                return null;
+            }
+            keep(before);
+            entry.setExtractedFile(before.getFileName());
+            return before;
+        }
+
+        // Takes over an unchanged nested zip from the earlier import without reading it: its
+        // entries come from the earlier index and its files are reused. Returns false, having
+        // changed nothing, if any of those files is missing.
+        boolean reuseNested(ArchiveEntry nestedZip) {
+            ArchiveEntry earlier = previousEntries.get(nestedZip.fullPath());
+            if (earlier == null || !nestedZip.isUnchangedFrom(earlier)) return false;
+            List<String> nestedPath = nested(nestedZip.getZipPath(), nestedZip.getName());
+            List<ArchiveEntry> inside = new ArrayList<>();
+            List<FileMetadata> files = new ArrayList<>();
+            for (ArchiveEntry entry : previousEntries.values()) {
+                List<String> zipPath = entry.getZipPath();
+                if (zipPath.size() < nestedPath.size() || !zipPath.subList(0, nestedPath.size()).equals(nestedPath)) {
+                    continue;
+                }
+                inside.add(entry);
+                if (entry.getExtractedFile() != null) {
+                    FileMetadata before = previousFiles.get(entry.fullPath());
+                    if (before == null || !isPresent(before, projectDir) || reservedNames.contains(before.getFileName())) {
+                        return false;
                     }
+                    files.add(before);
+                }
+            }
+            entries.addAll(inside);
+            for (FileMetadata before : files) {
+                keep(before);
+                submit(() -> before);
+            }
+            return true;
+        }
 
-                    manifest.addFile(metadata);
+        private void keep(FileMetadata before) {
+            claimedPaths.add(before.getOriginalPath());
+            reservedNames.add(before.getFileName());
+        }
+
+        // Removes the project-folder files of earlier entries that are gone from the zip. The
+        // content store keeps its objects.
+        void removeStale() {
+            for (Map.Entry<String, FileMetadata> file : previousFiles.entrySet()) {
+                String name = file.getValue().getFileName();
+                if (!claimedPaths.contains(file.getKey()) && !reservedNames.contains(name)) {
+                    deleteFiles(name);
                 }
             }
         }
+
+        // A file in the project folder and its compressed copy and sidecar indexes
+        private void deleteFiles(String name) {
+            for (String suffix : SUFFIXES) {
+                FileUtils.deleteQuietly(new File(projectDir, name + suffix));
+            }
+        }
+
+        ArchiveEntry record(ZipArchiveEntry entry, List<String> zipPath) {
+            ArchiveEntry archiveEntry = new ArchiveEntry(entry.getName(), zipPath, entry.getSize(),
+                    entry.getCompressedSize(), entry.getDataOffset());
+            archiveEntry.setMethod(entry.getMethod());
+            archiveEntry.setCrc(entry.getCrc());
+            archiveEntry.setLastModified(entry.getTime());
+            entries.add(archiveEntry);
+            return archiveEntry;
+        }
+
+        // The stored copy of a bugreport entry, recognised by the size and CRC-32 in the zip's
+        // headers and confirmed by the entry's first bytes, which head reads; or null
+        FileMetadata findStored(FileMetadata.FileType type, ZipArchiveEntry entry, IOSupplier<byte[]> head) throws IOException {
+            if (store == null || type != FileMetadata.FileType.BUGREPORT || entry.getSize() < 0 || entry.getCrc() < 0) {
+                return null;
+            }
+            return store.lookup(entry.getSize(), entry.getCrc(), head);
+        }
+
+        synchronized File newStaging() throws IOException {
+            File staging = store.newStaging();
+            stagings.add(staging);
+            return staging;
+        }
+
+        void enter(ImportProgress.Stage stage) {
+            if (progress != null) progress.enter(stage);
+        }
+
+        void leave(ImportProgress.Stage stage) {
+            if (progress != null) progress.leave(stage);
+        }
+
+        void submit(Callable<FileMetadata> task) {
+            tasks.add(pool.submit(task));
+        }
+
+        int taskCount() {
+            return tasks.size();
+        }
+
+        // Waits for the tasks submitted since the given count
+        void await(int fromTask) throws IOException {
+            for (int i = fromTask; i < tasks.size(); i++) {
+                get(tasks.get(i));
+            }
+        }
+
+        List<FileMetadata> awaitAll() throws IOException {
+            List<FileMetadata> results = new ArrayList<>();
+            for (Future<FileMetadata> task : tasks) {
+                results.add(get(task));
+            }
+            return results;
+        }
+
+        private static FileMetadata get(Future<FileMetadata> task) throws IOException {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Extraction interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+        }
+
+        @Override
+        public void close() {
+            pool.shutdownNow();
+        }
+
+        // Undoes a failed or cancelled import: stops the tasks, then removes the new files
+        // written under the reserved names, the replacements of earlier files unless their
+        // commit has started, any report left in staging, and the project folder if nothing
+        // else is in it. Files of the earlier import are left alone.
+        void discard() {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (String name : reservedNames) {
+                if (!previousNames.contains(name)) deleteFiles(name);
+            }
+            if (!committing) FileUtils.deleteQuietly(replacementDir);
+            synchronized (this) {
+                stagings.forEach(FileUtils::deleteQuietly);
+            }
+            String[] left = projectDir.list();
+            if (left != null && left.length == 0) {
+                projectDir.delete();
+            }
+        }
+    }
+
+    // The outer zip's file channel, counting the bytes read from it into the import's progress.
+    // ZipFile serialises reads on a channel that isn't a FileChannel, so one channel is shared.
+    private static class ProgressChannel implements SeekableByteChannel {
+        private final FileChannel channel;
+        private final ImportProgress progress;
+
+        ProgressChannel(FileChannel channel, ImportProgress progress) {
+            this.channel = channel;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            progress.checkpoint();
+            int n = channel.read(dst);
+            if (n > 0) progress.addBytes(n);
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Passes everything written through to the index builders on its way to disk. Also where a
+    // paused import waits and a cancelled one stops, whichever zip the bytes come from.
+    private static class IndexingOutputStream extends FilterOutputStream {
+        private final ReportIndexer indexer;
+        private final ImportProgress progress;
+
+        IndexingOutputStream(OutputStream out, ReportIndexer indexer, ImportProgress progress) {
+            super(out);
+            this.indexer = indexer;
+            this.progress = progress;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (progress != null) progress.checkpoint();
+            out.write(b, off, len);
+            if (indexer != null) indexer.update(b, off, len);
+        }
     }
 }
@@ -0,0 +1,65 @@
+package com.buganalyzer.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One file in the imported zip (or in a zip nested inside it), whether it was extracted or not
+public class ArchiveEntry {
+    private String name; // Entry name inside the zip that directly contains it
+    private List<String> zipPath = new ArrayList<>(); // Names of the nested zips holding it, outermost first
+    private long size; // Uncompressed size, -1 if the zip doesn't record it
+    private long compressedSize;
+    private long dataOffset; // Start of the entry's data in its zip, -1 if unknown
+    private int method; // Zip compression method, 0 = stored, 8 = deflated
+    private long crc = -1; // CRC-32 from the zip's headers, -1 if unknown
+    private long lastModified = -1; // Entry time from the zip's headers, -1 if unknown
+    private String extractedFile; // File name in the project folder if extracted at import
+
+    public ArchiveEntry() {}
+
+    public ArchiveEntry(String name, List<String> zipPath, long size, long compressedSize, long dataOffset) {
+        this.name = name;
+        this.zipPath = zipPath;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.dataOffset = dataOffset;
+    }
+
+    // Path as shown to the user, e.g. "FS/data/anr/traces.txt" or "inner.zip/bugreport.txt"
+    public String fullPath() {
+        return zipPath.isEmpty() ? name : String.join("/", zipPath) + "/" + name;
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public List<String> getZipPath() { return zipPath; }
+    public void setZipPath(List<String> zipPath) { this.zipPath = zipPath; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public long getCompressedSize() { return compressedSize; }
+    public void setCompressedSize(long compressedSize) { this.compressedSize = compressedSize; }
+
+    public long getDataOffset() { return dataOffset; }
+    public void setDataOffset(long dataOffset) { this.dataOffset = dataOffset; }
+
+    public int getMethod() { return method; }
+    public void setMethod(int method) { this.method = method; }
+
+    public long getCrc() { return crc; }
+    public void setCrc(long crc) { this.crc = crc; }
+
+    public long getLastModified() { return lastModified; }
+    public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+
+    // Whether this entry is known to hold the same content as an earlier one: same size,
+    // CRC-32 and time
+    public boolean isUnchangedFrom(ArchiveEntry earlier) {
+        return crc >= 0 && size >= 0 && crc == earlier.crc && size == earlier.size && lastModified == earlier.lastModified;
+    }
+
+    public String getExtractedFile() { return extractedFile; }
+    public void setExtractedFile(String extractedFile) { this.extractedFile = extractedFile; }
+}
@@ -0,0 +1,79 @@
+package com.buganalyzer.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keyword-category hits for one imported zip, written as JSON by the batch command
+public class BatchSummary {
+    private String zipPath;
+    private String projectDir;
+    private long processedDate;
+    private long elapsedMillis;
+    private String error; // Set if the zip could not be processed
+    private List<ReportSummary> reports = new ArrayList<>();
+
+    public BatchSummary() {}
+
+    public BatchSummary(String zipPath) {
+        this.zipPath = zipPath;
+        this.processedDate = System.currentTimeMillis();
+    }
+
+    public String getZipPath() { return zipPath; }
+    public void setZipPath(String zipPath) { this.zipPath = zipPath; }
+
+    public String getProjectDir() { return projectDir; }
+    public void setProjectDir(String projectDir) { this.projectDir = projectDir; }
+
+    public long getProcessedDate() { return processedDate; }
+    public void setProcessedDate(long processedDate) { this.processedDate = processedDate; }
+
+    public long getElapsedMillis() { return elapsedMillis; }
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public List<ReportSummary> getReports() { return reports; }
+    public void setReports(List<ReportSummary> reports) { this.reports = reports; }
+
+    public static class ReportSummary {
+        private String fileName;
+        private String originalPath; // Path inside the zip
+        private int lineCount;
+        private int totalHits; // Lines matching any keyword
+        private Map<String, Integer> categoryHits = new LinkedHashMap<>();
+        private Map<String, Integer> keywordHits = new LinkedHashMap<>();
+        private Map<String, List<String>> samples = new LinkedHashMap<>(); // First few hits per category
+
+        public ReportSummary() {}
+
+        public ReportSummary(String fileName, String originalPath) {
+            this.fileName = fileName;
+            this.originalPath = originalPath;
+        }
+
+        public String getFileName() { return fileName; }
+        public void setFileName(String fileName) { this.fileName = fileName; }
+
+        public String getOriginalPath() { return originalPath; }
+        public void setOriginalPath(String originalPath) { this.originalPath = originalPath; }
+
+        public int getLineCount() { return lineCount; }
+        public void setLineCount(int lineCount) { this.lineCount = lineCount; }
+
+        public int getTotalHits() { return totalHits; }
+        public void setTotalHits(int totalHits) { this.totalHits = totalHits; }
+
+        public Map<String, Integer> getCategoryHits() { return categoryHits; }
+        public void setCategoryHits(Map<String, Integer> categoryHits) { this.categoryHits = categoryHits; }
+
+        public Map<String, Integer> getKeywordHits() { return keywordHits; }
+        public void setKeywordHits(Map<String, Integer> keywordHits) { this.keywordHits = keywordHits; }
+
+        public Map<String, List<String>> getSamples() { return samples; }
+        public void setSamples(Map<String, List<String>> samples) { this.samples = samples; }
+    }
+}
@@ -8,7 +8,16 @@ public class FileMetadata {
     private String relativePath; // Path inside the project folder
     private String originalPath; // Path inside the zip
     private FileType type;
-    private List<String> splitParts; // List of filenames if split
+    private List<String> splitParts; // List of part filenames, in projects split into physical files
+    private List<FilePart> parts; // Byte ranges of the file if split
+    private String searchIndex; // Trigram index file name in the project folder, if built
+    private String lineIndex; // Line offset index file name in the project folder
+    private int lineCount;
+    private String sectionIndex; // Section header index file name in the project folder
+    private String archivePath; // Zip the file is read from when it wasn't extracted
+    private ArchiveEntry archiveEntry; // Its entry in that zip
+    private String compressedFile; // Block-compressed file holding the content, if stored compressed
+    private String storeDir; // Content-store folder holding the content and indexes, if deduplicated
 
     public enum FileType {
         BUGREPORT, VIDEO, OTHER
@@ -41,4 +50,31 @@ public class FileMetadata {
 
     public List<String> getSplitParts() { return splitParts; }
     public void setSplitParts(List<String> splitParts) { this.splitParts = splitParts; }
+
+    public List<FilePart> getParts() { return parts; }
+    public void setParts(List<FilePart> parts) { this.parts = parts; }
+
+    public String getSearchIndex() { return searchIndex; }
+    public void setSearchIndex(String searchIndex) { this.searchIndex = searchIndex; }
+
+    public String getLineIndex() { return lineIndex; }
+    public void setLineIndex(String lineIndex) { this.lineIndex = lineIndex; }
+
+    public int getLineCount() { return lineCount; }
+    public void setLineCount(int lineCount) { this.lineCount = lineCount; }
+
+    public String getArchivePath() { return archivePath; }
+    public void setArchivePath(String archivePath) { this.archivePath = archivePath; }
+
+    public ArchiveEntry getArchiveEntry() { return archiveEntry; }
+    public void setArchiveEntry(ArchiveEntry archiveEntry) { this.archiveEntry = archiveEntry; }
+
+    public String getCompressedFile() { return compressedFile; }
+    public void setCompressedFile(String compressedFile) { this.compressedFile = compressedFile; }
+
+    public String getStoreDir() { return storeDir; }
+    public void setStoreDir(String storeDir) { this.storeDir = storeDir; }
+
+    public String getSectionIndex() { return sectionIndex; }
+    public void setSectionIndex(String sectionIndex) { this.sectionIndex = sectionIndex; }
 }
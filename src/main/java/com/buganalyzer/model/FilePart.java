@@ -0,0 +1,30 @@
+package com.buganalyzer.model;
+
+// One part of a split file: a line-aligned byte range of the extracted file, not a file of its own
+public class FilePart {
+    private String name;
+    private long offset;
+    private long length;
+    private int firstLine; // 1-based line of the file where the part starts
+
+    public FilePart() {}
+
+    public FilePart(String name, long offset, long length, int firstLine) {
+        this.name = name;
+        this.offset = offset;
+        this.length = length;
+        this.firstLine = firstLine;
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public long getOffset() { return offset; }
+    public void setOffset(long offset) { this.offset = offset; }
+
+    public long getLength() { return length; }
+    public void setLength(long length) { this.length = length; }
+
+    public int getFirstLine() { return firstLine; }
+    public void setFirstLine(int firstLine) { this.firstLine = firstLine; }
+}
@@ -9,6 +9,12 @@ public class ProjectManifest {
     private String originalZipPath;
     private long createdDate;
     private List<FileMetadata> files = new ArrayList<>();
+    private List<ArchiveEntry> entries; // Every file in the zip; null in projects imported before it was recorded
+    // Fingerprint of the zip as imported; sourceHash is null in projects imported before it was recorded
+    private long sourceSize;
+    private long sourceLastModified;
+    private String sourceHash;
+    private String importSettings; // ImportOptions.signature() of the import that wrote the files
 
     public ProjectManifest() {}
 
@@ -33,6 +39,21 @@ public class ProjectManifest {
     public List<FileMetadata> getFiles() { return files; }
     public void setFiles(List<FileMetadata> files) { this.files = files; }
     
+    public List<ArchiveEntry> getEntries() { return entries; }
+    public void setEntries(List<ArchiveEntry> entries) { this.entries = entries; }
+
+    public long getSourceSize() { return sourceSize; }
+    public void setSourceSize(long sourceSize) { this.sourceSize = sourceSize; }
+
+    public long getSourceLastModified() { return sourceLastModified; }
+    public void setSourceLastModified(long sourceLastModified) { this.sourceLastModified = sourceLastModified; }
+
+    public String getSourceHash() { return sourceHash; }
+    public void setSourceHash(String sourceHash) { this.sourceHash = sourceHash; }
+
+    public String getImportSettings() { return importSettings; }
+    public void setImportSettings(String importSettings) { this.importSettings = importSettings; }
+
     public void addFile(FileMetadata file) {
         this.files.add(file);
     }
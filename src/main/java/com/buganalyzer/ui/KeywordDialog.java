@@ -87,7 +87,11 @@ public class KeywordDialog extends Dialog<Void> {
         Button saveKeywordsBtn = new Button("保存当前分类关键字");
         saveKeywordsBtn.setDisable(true);
         
-        rightPane.getChildren().addAll(currentCategoryLabel, keywordArea, saveKeywordsBtn);
+        Label matchingNote = new Label("关键字默认按原文匹配（不区分大小写）；含有 . * + ? ( ) [ ] { } | ^ $ \\ 且是合法正则的关键字按正则表达式匹配");
+        matchingNote.setWrapText(true);
+        matchingNote.setStyle("-fx-text-fill: #606060;");
+
+        rightPane.getChildren().addAll(currentCategoryLabel, keywordArea, matchingNote, saveKeywordsBtn);
 
         splitPane.getItems().addAll(leftPane, rightPane);
         splitPane.setDividerPositions(0.35);
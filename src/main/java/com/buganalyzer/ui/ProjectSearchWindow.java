@@ -0,0 +1,203 @@
+package com.buganalyzer.ui;
+
+import com.buganalyzer.core.ProjectSearch;
+import com.buganalyzer.core.SearchEngine;
+import com.buganalyzer.core.SearchHandle;
+import com.buganalyzer.core.SettingsManager;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.PatternSyntaxException;
+
+// Searches every bugreport of one or more projects at once. The left list has one row per
+// report, updated with its hit count as soon as that report is done; selecting a row shows
+// its hits on the right.
+public class ProjectSearchWindow {
+
+    private static final String CONTROL_STYLE = "-fx-base: #e0e0e0; -fx-text-fill: black; -fx-font-weight: bold; -fx-border-color: #a0a0a0; -fx-border-radius: 3;";
+
+    private final List<ProjectSearch.Project> projects;
+    private final ListView<ProjectSearch.ReportResult> reportList = new ListView<>();
+    private final ListView<String> hitList = new ListView<>();
+    private final Label statusLabel = new Label("已就绪");
+    private SearchHandle searchHandle = new SearchHandle();
+    private List<ProjectSearch.ReportResult> openReports = new ArrayList<>(); // guarded by this
+    private boolean hidden;
+
+    public ProjectSearchWindow(List<ProjectSearch.Project> projects) {
+        this.projects = projects;
+    }
+
+    public void show() {
+        Stage stage = new Stage();
+        BorderPane root = new BorderPane();
+        root.setPadding(new Insets(10));
+
+        TextField queryField = new TextField();
+        queryField.setPromptText("在所有报告中搜索...");
+        HBox.setHgrow(queryField, Priority.ALWAYS);
+        CheckBox regexCheck = new CheckBox("正则");
+        regexCheck.setStyle("-fx-text-fill: black; -fx-font-weight: bold;");
+        Button searchButton = new Button("搜索");
+        searchButton.setStyle(CONTROL_STYLE);
+        Button stopButton = new Button("停止");
+        stopButton.setStyle(CONTROL_STYLE);
+        stopButton.setDisable(true);
+
+        HBox searchBox = new HBox(10, queryField, regexCheck, searchButton, stopButton);
+        Label header = new Label("搜索范围: " + projects.size() + " 个项目");
+        header.setStyle("-fx-font-weight: bold; -fx-font-size: 14px;");
+        VBox top = new VBox(5, header, searchBox);
+        top.setPadding(new Insets(0, 0, 5, 0));
+        root.setTop(top);
+
+        reportList.setCellFactory(param -> new ListCell<>() {
+            @Override
+            protected void updateItem(ProjectSearch.ReportResult item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                } else {
+                    setText(item.getProject().getName() + " / " + item.getReport().getFileName()
+                            + " - " + describeReport(item));
+                }
+            }
+        });
+        reportList.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> showHits(newVal));
+        hitList.setStyle("-fx-font-family: 'Monospaced'; -fx-font-size: 12px;");
+
+        SplitPane split = new SplitPane(reportList, hitList);
+        split.setDividerPositions(0.35);
+        root.setCenter(split);
+
+        statusLabel.setPadding(new Insets(5, 0, 0, 0));
+        root.setBottom(statusLabel);
+
+        Runnable start = () -> {
+            // Enter in the query field still arrives while the search button is disabled
+            if (searchButton.isDisabled()) return;
+            String query = queryField.getText();
+            if (query == null || query.isEmpty()) return;
+            SearchEngine.LineMatcher matcher;
+            try {
+                matcher = SearchEngine.queryMatcher(query, regexCheck.isSelected(), true);
+            } catch (PatternSyntaxException e) {
+                statusLabel.setText("无效的正则: " + e.getDescription());
+                return;
+            }
+            searchButton.setDisable(true);
+            stopButton.setDisable(false);
+            runSearch(matcher, () -> {
+                searchButton.setDisable(false);
+                stopButton.setDisable(true);
+            });
+        };
+        queryField.setOnAction(e -> start.run());
+        searchButton.setOnAction(e -> start.run());
+        stopButton.setOnAction(e -> searchHandle.cancel());
+        stage.setOnHidden(e -> {
+            searchHandle.cancel();
+            closeReports(true);
+        });
+
+        stage.setScene(new Scene(root, 1100, 700));
+        stage.setTitle("多报告搜索");
+        stage.show();
+    }
+
+    private void runSearch(SearchEngine.LineMatcher matcher, Runnable onDone) {
+        SettingsManager settings = new SettingsManager();
+        SearchHandle handle = new SearchHandle(0, settings.getSearchTimeBudgetSeconds() * 1000L);
+        // Nothing may still read the reports closed below
+        searchHandle.cancel();
+        searchHandle = handle;
+        hitList.setItems(null);
+        reportList.getItems().clear();
+        closeReports(false);
+        statusLabel.setText("正在准备...");
+
+        CompletableFuture.runAsync(() -> {
+            List<ProjectSearch.ReportResult> reports = ProjectSearch.plan(projects);
+            if (!keepReports(reports)) return;
+            Platform.runLater(() -> {
+                reportList.getItems().setAll(reports);
+                statusLabel.setText("搜索中... 0/" + reports.size() + " 个报告完成");
+            });
+
+            long startTime = System.nanoTime();
+            AtomicInteger finished = new AtomicInteger();
+            AtomicInteger totalHits = new AtomicInteger();
+            try {
+                ProjectSearch.search(reports, matcher, handle, settings.getMaxSearchResults(), report -> {
+                    int done = finished.incrementAndGet();
+                    int hits = totalHits.addAndGet(report.getHitCount());
+                    Platform.runLater(() -> {
+                        reportList.refresh();
+                        if (reportList.getSelectionModel().getSelectedItem() == report) {
+                            showHits(report);
+                        }
+                        statusLabel.setText("搜索中... " + done + "/" + reports.size() + " 个报告完成, 共 " + hits + " 处匹配");
+                    });
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            long totalMillis = (System.nanoTime() - startTime) / 1_000_000;
+            Platform.runLater(() -> {
+                reportList.refresh();
+                statusLabel.setText("完成: " + finished.get() + "/" + reports.size() + " 个报告, 共 " + totalHits.get()
+                        + " 处匹配 (" + totalMillis + " ms)" + SearchWindow.describeStop(handle.getStopReason()));
+                onDone.run();
+            });
+        });
+    }
+
+    // The reports stay open while their hits can be shown, until the next search or until the
+    // window is hidden
+    private synchronized boolean keepReports(List<ProjectSearch.ReportResult> reports) {
+        if (hidden) {
+            ProjectSearch.closeAll(reports);
+            return false;
+        }
+        openReports = reports;
+        return true;
+    }
+
+    private synchronized void closeReports(boolean hide) {
+        hidden |= hide;
+        ProjectSearch.closeAll(openReports);
+        openReports = new ArrayList<>();
+    }
+
+    private void showHits(ProjectSearch.ReportResult report) {
+        if (report == null) {
+            hitList.setItems(null);
+            return;
+        }
+        SearchResultList items = new SearchResultList(report.getResults());
+        items.sync();
+        hitList.setItems(items);
+    }
+
+    private static String describeReport(ProjectSearch.ReportResult report) {
+        if (report.getError() != null) {
+            return "错误: " + report.getError();
+        }
+        if (!report.isFinished()) {
+            return report.getHitCount() > 0 ? "搜索中... " + report.getHitCount() + " 处匹配" : "等待中";
+        }
+        return report.getHitCount() + " 处匹配 (" + report.getElapsedMillis() + " ms)" + SearchWindow.describeStop(report.getStopReason());
+    }
+}
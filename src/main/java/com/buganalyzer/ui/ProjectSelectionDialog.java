@@ -0,0 +1,90 @@
+package com.buganalyzer.ui;
+
+import com.buganalyzer.core.RecentProjectsManager;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.CheckBoxListCell;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.util.StringConverter;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ProjectSelectionDialog extends Dialog<List<RecentProjectsManager.RecentProject>> {
+
+    private final ObservableList<ProjectItem> projects;
+
+    public ProjectSelectionDialog(List<RecentProjectsManager.RecentProject> recentProjects) {
+        this.projects = FXCollections.observableArrayList();
+
+        setTitle("选择搜索项目");
+        setHeaderText("请选择要搜索的项目");
+        setResizable(true);
+
+        ButtonType searchButtonType = new ButtonType("确定", ButtonBar.ButtonData.OK_DONE);
+        getDialogPane().getButtonTypes().addAll(searchButtonType, ButtonType.CANCEL);
+
+        VBox content = new VBox(10);
+        content.setPadding(new Insets(20));
+        content.setPrefSize(400, 300);
+
+        Label label = new Label("最近项目:");
+
+        ListView<ProjectItem> projectListView = new ListView<>(projects);
+        projectListView.setCellFactory(CheckBoxListCell.forListView(ProjectItem::selectedProperty, new StringConverter<ProjectItem>() {
+            @Override
+            public String toString(ProjectItem object) {
+                return object.getProject().getName();
+            }
+            @Override
+            public ProjectItem fromString(String string) {
+                return null;
+            }
+        }));
+        VBox.setVgrow(projectListView, Priority.ALWAYS);
+
+        CheckBox selectAll = new CheckBox("全选");
+        selectAll.setOnAction(e -> {
+            boolean selected = selectAll.isSelected();
+            for (ProjectItem item : projects) {
+                item.setSelected(selected);
+            }
+        });
+
+        content.getChildren().addAll(label, selectAll, projectListView);
+        getDialogPane().setContent(content);
+
+        for (RecentProjectsManager.RecentProject project : recentProjects) {
+            projects.add(new ProjectItem(project));
+        }
+
+        setResultConverter(dialogButton -> {
+            if (dialogButton == searchButtonType) {
+                return projects.stream()
+                        .filter(ProjectItem::isSelected)
+                        .map(ProjectItem::getProject)
+                        .collect(Collectors.toList());
+            }
+            return null;
+        });
+    }
+
+    public static class ProjectItem {
+        private final RecentProjectsManager.RecentProject project;
+        private final BooleanProperty selected = new SimpleBooleanProperty(false);
+
+        public ProjectItem(RecentProjectsManager.RecentProject project) {
+            this.project = project;
+        }
+
+        public RecentProjectsManager.RecentProject getProject() { return project; }
+        public boolean isSelected() { return selected.get(); }
+        public void setSelected(boolean selected) { this.selected.set(selected); }
+        public BooleanProperty selectedProperty() { return selected; }
+    }
+}
@@ -1,7 +1,14 @@
 package com.buganalyzer.ui;
 
+import com.buganalyzer.core.ContentStore;
+import com.buganalyzer.core.EntryCache;
+import com.buganalyzer.core.ProjectSearch;
+import com.buganalyzer.core.SectionIndex;
+import com.buganalyzer.model.ArchiveEntry;
 import com.buganalyzer.model.FileMetadata;
+import com.buganalyzer.model.FilePart;
 import com.buganalyzer.model.ProjectManifest;
+import javafx.application.Platform;
 import javafx.geometry.Orientation;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
@@ -9,6 +16,11 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class ProjectView extends BorderPane {
 
@@ -17,6 +29,8 @@ public class ProjectView extends BorderPane {
     private final TabPane contentTabs;
     private final ListView<FileMetadata> fileList;
     private final ListView<String> partsList;
+    private final TreeView<SectionIndex.Section> sectionTree;
+    private final Map<TreeItem<String>, ArchiveEntry> entryItems = new HashMap<>();
 
     public ProjectView(ProjectManifest manifest, String projectPath) {
         this.manifest = manifest;
@@ -28,10 +42,15 @@ public class ProjectView extends BorderPane {
         MenuItem closeItem = new MenuItem("关闭项目");
         closeItem.setOnAction(e -> closeProject());
         fileMenu.getItems().add(closeItem);
-        menuBar.getMenus().add(fileMenu);
+        Menu searchMenu = new Menu("搜索");
+        MenuItem projectSearchItem = new MenuItem("在项目中搜索...");
+        projectSearchItem.setOnAction(e -> new ProjectSearchWindow(List.of(
+                new ProjectSearch.Project(projectName(), manifest, new File(projectPath)))).show());
+        searchMenu.getItems().add(projectSearchItem);
+        menuBar.getMenus().addAll(fileMenu, searchMenu);
         setTop(menuBar);
 
-        // Left Sidebar: Files and Parts
+        // Left Sidebar: Files, Parts and Sections
         SplitPane sidebarSplit = new SplitPane();
         sidebarSplit.setOrientation(Orientation.VERTICAL);
         
@@ -50,16 +69,49 @@ public class ProjectView extends BorderPane {
             }
         });
         
-        VBox fileBox = new VBox(new Label("文件列表"), fileList);
-        fileBox.setFillWidth(true);
+        // Every entry of the zip, extracted on first open
+        TreeView<String> entryTree = new TreeView<>(buildEntryTree());
+        entryTree.setShowRoot(false);
+        entryTree.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
+            ArchiveEntry entry = entryItems.get(newVal);
+            if (entry != null) {
+                openEntry(entry);
+            }
+        });
+
+        Tab filesTab = new Tab("文件列表", fileList);
+        Tab entriesTab = new Tab("全部条目", entryTree);
+        TabPane fileBox = new TabPane(filesTab, entriesTab);
+        fileBox.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
         
         // Parts List
         partsList = new ListView<>();
         VBox partsBox = new VBox(new Label("分卷部分"), partsList);
         partsBox.setFillWidth(true);
         
-        sidebarSplit.getItems().addAll(fileBox, partsBox);
-        sidebarSplit.setDividerPositions(0.7);
+        // Section navigator
+        sectionTree = new TreeView<>(new TreeItem<>());
+        sectionTree.setShowRoot(false);
+        sectionTree.setCellFactory(param -> new TreeCell<>() {
+            @Override
+            protected void updateItem(SectionIndex.Section item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                    setContextMenu(null);
+                } else {
+                    setText(item.getTitle() + " (" + item.getLine() + "-" + item.getEndLine() + ")");
+                    MenuItem searchItem = new MenuItem("在此分区中搜索...");
+                    searchItem.setOnAction(e -> searchInSection(item));
+                    setContextMenu(new ContextMenu(searchItem));
+                }
+            }
+        });
+        VBox sectionsBox = new VBox(new Label("分区"), sectionTree);
+        sectionsBox.setFillWidth(true);
+
+        sidebarSplit.getItems().addAll(fileBox, partsBox, sectionsBox);
+        sidebarSplit.setDividerPositions(0.4, 0.55);
 
         // Content Area
         contentTabs = new TabPane();
@@ -74,6 +126,7 @@ public class ProjectView extends BorderPane {
             if (newVal != null) {
                 openFile(newVal);
                 updatePartsList(newVal);
+                updateSectionTree(newVal);
             }
         });
         
@@ -81,11 +134,20 @@ public class ProjectView extends BorderPane {
             if (newVal != null) {
                 Tab selectedTab = contentTabs.getSelectionModel().getSelectedItem();
                 if (selectedTab != null && selectedTab.getContent() instanceof TextViewer) {
-                    ((TextViewer) selectedTab.getContent()).loadContent(newVal);
+                    ((TextViewer) selectedTab.getContent()).scrollToPart(newVal);
                 }
             }
         });
         
+        sectionTree.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null && newVal.getValue() != null) {
+                TextViewer viewer = selectedViewer();
+                if (viewer != null) {
+                    viewer.scrollToOffset(newVal.getValue().getOffset());
+                }
+            }
+        });
+
         // Sync parts list when tab changes
         contentTabs.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> {
             if (newTab != null) {
@@ -93,6 +155,7 @@ public class ProjectView extends BorderPane {
                     FileMetadata fm = (FileMetadata) newTab.getUserData();
                     fileList.getSelectionModel().select(fm); // Sync file list
                     updatePartsList(fm);
+                    updateSectionTree(fm);
                 }
             }
         });
@@ -113,7 +176,9 @@ public class ProjectView extends BorderPane {
         if (file.getType() == FileMetadata.FileType.VIDEO) {
             tab.setContent(new VideoPlayer(file, projectPath).getView());
         } else {
-            tab.setContent(new TextViewer(file, projectPath));
+            TextViewer viewer = new TextViewer(file, projectPath);
+            tab.setContent(viewer);
+            tab.setOnClosed(e -> viewer.close());
         }
         
         contentTabs.getTabs().add(tab);
@@ -122,7 +187,11 @@ public class ProjectView extends BorderPane {
     
     private void updatePartsList(FileMetadata file) {
         partsList.getItems().clear();
-        if (file.getSplitParts() != null && !file.getSplitParts().isEmpty()) {
+        if (file.getParts() != null) {
+            for (FilePart part : file.getParts()) {
+                partsList.getItems().add(part.getName());
+            }
+        } else if (file.getSplitParts() != null && !file.getSplitParts().isEmpty()) {
             for (String part : file.getSplitParts()) {
                 if (!part.equals(file.getFileName())) {
                     partsList.getItems().add(part);
@@ -131,7 +200,136 @@ public class ProjectView extends BorderPane {
         }
     }
 
+    // Folders of the zip (nested zips count as folders) with their entries as leaves
+    private TreeItem<String> buildEntryTree() {
+        TreeItem<String> root = new TreeItem<>();
+        if (manifest.getEntries() == null) {
+            root.getChildren().add(new TreeItem<>("此项目导入时未记录条目，请重新导入"));
+            return root;
+        }
+        Map<String, TreeItem<String>> folders = new HashMap<>();
+        for (ArchiveEntry entry : manifest.getEntries()) {
+            if (entry.getName().toLowerCase().endsWith(".zip")) continue; // Shown as the folder of its entries
+            String[] segments = entry.fullPath().split("/");
+            TreeItem<String> parent = root;
+            String path = "";
+            for (int i = 0; i < segments.length - 1; i++) {
+                path += segments[i] + "/";
+                TreeItem<String> folder = folders.get(path);
+                if (folder == null) {
+                    folder = new TreeItem<>(segments[i]);
+                    parent.getChildren().add(folder);
+                    folders.put(path, folder);
+                }
+                parent = folder;
+            }
+            TreeItem<String> item = new TreeItem<>(segments[segments.length - 1] + " (" + formatSize(entry.getSize()) + ")");
+            parent.getChildren().add(item);
+            entryItems.put(item, entry);
+        }
+        return root;
+    }
+
+    private static String formatSize(long size) {
+        if (size < 0) return "?";
+        if (size < 1024) return size + " B";
+        if (size < 1024 * 1024) return (size / 1024) + " KB";
+        return (size / (1024 * 1024)) + " MB";
+    }
+
+    // Imported files (extracted or read in place) open like the file list; anything else is
+    // fetched from the zip first
+    private void openEntry(ArchiveEntry entry) {
+        for (FileMetadata file : manifest.getFiles()) {
+            boolean extracted = entry.getExtractedFile() != null && file.getFileName().equals(entry.getExtractedFile());
+            boolean inPlace = file.getArchiveEntry() != null && file.getArchiveEntry().fullPath().equals(entry.fullPath());
+            if (extracted || inPlace) {
+                openFile(file);
+                return;
+            }
+        }
+        File projectDir = new File(projectPath);
+        CompletableFuture.runAsync(() -> {
+            try {
+                File file = EntryCache.fetch(manifest, projectDir, entry);
+                String name = EntryCache.relativeName(projectDir, file);
+                FileMetadata.FileType type = name.toLowerCase().endsWith(".mp4") ? FileMetadata.FileType.VIDEO : FileMetadata.FileType.OTHER;
+                FileMetadata metadata = new FileMetadata(name, file.length(), name, entry.fullPath(), type);
+                Platform.runLater(() -> openFile(metadata));
+            } catch (IOException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(Alert.AlertType.ERROR, "无法打开 " + entry.fullPath() + ": " + e.getMessage());
+                    alert.showAndWait();
+                });
+            }
+        });
+    }
+
+    // Level 0 sections at the top, the dumpsys services of each one below it
+    private void updateSectionTree(FileMetadata file) {
+        TreeItem<SectionIndex.Section> root = new TreeItem<>();
+        if (file.getSectionIndex() != null) {
+            File indexFile = new File(ContentStore.dirOf(file, new File(projectPath)), file.getSectionIndex());
+            if (indexFile.exists()) {
+                try {
+                    TreeItem<SectionIndex.Section> parent = root;
+                    for (SectionIndex.Section section : SectionIndex.open(indexFile).getSections()) {
+                        TreeItem<SectionIndex.Section> item = new TreeItem<>(section);
+                        if (section.getLevel() == 0) {
+                            root.getChildren().add(item);
+                            parent = item;
+                        } else {
+                            parent.getChildren().add(item);
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        sectionTree.setRoot(root);
+    }
+
+    private void searchInSection(SectionIndex.Section section) {
+        Tab tab = contentTabs.getSelectionModel().getSelectedItem();
+        if (tab == null || !(tab.getUserData() instanceof FileMetadata)) return;
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("分区搜索");
+        dialog.setHeaderText("在分区 " + section.getTitle() + " 中搜索");
+        dialog.setContentText("搜索内容:");
+        dialog.showAndWait().ifPresent(query -> {
+            if (query.isEmpty()) return;
+            SearchWindow window = new SearchWindow((FileMetadata) tab.getUserData(), projectPath, query, false);
+            window.setSection(section);
+            window.show();
+        });
+    }
+
+    private TextViewer selectedViewer() {
+        Tab selectedTab = contentTabs.getSelectionModel().getSelectedItem();
+        if (selectedTab != null && selectedTab.getContent() instanceof TextViewer) {
+            return (TextViewer) selectedTab.getContent();
+        }
+        return null;
+    }
+
+    private String projectName() {
+        String display = manifest.getDisplayName();
+        return display != null && !display.isEmpty() ? display : manifest.getProjectName();
+    }
+
+    // Releases what the open viewers hold on to, before leaving the project
+    public void closeViewers() {
+        for (Tab tab : contentTabs.getTabs()) {
+            if (tab.getContent() instanceof TextViewer) {
+                ((TextViewer) tab.getContent()).close();
+            }
+        }
+    }
+
     private void closeProject() {
+        closeViewers();
         Stage stage = (Stage) getScene().getWindow();
         stage.setScene(new javafx.scene.Scene(new WelcomeView(stage), 800, 600));
         stage.setTitle("欢迎使用Android Bugreport 分析工具");
@@ -0,0 +1,53 @@
+package com.buganalyzer.ui;
+
+import com.buganalyzer.core.CompactResultSet;
+import javafx.collections.ObservableListBase;
+
+import java.util.function.IntFunction;
+
+// Read-only list view of a CompactResultSet. Rows are formatted from the hit's line, read
+// from the file only when a cell (or a copy) asks for it.
+public class SearchResultList extends ObservableListBase<String> {
+
+    private final CompactResultSet results;
+    private int size;
+
+    public SearchResultList(CompactResultSet results) {
+        this.results = results;
+    }
+
+    public CompactResultSet getResults() {
+        return results;
+    }
+
+    // Shows the hits added to the result set since the last call. Must be called on the FX thread.
+    public void sync() {
+        int oldSize = size;
+        int newSize = results.size();
+        if (newSize <= oldSize) return;
+        size = newSize;
+        beginChange();
+        nextAdd(oldSize, newSize);
+        endChange();
+    }
+
+    @Override
+    public String get(int index) {
+        return format(index, results.getLine(index));
+    }
+
+    // The rows as get() formats them, read for a scan over many of them in row order
+    public IntFunction<String> newRowScanner() {
+        IntFunction<String> lines = results.newLineScanner();
+        return index -> format(index, lines.apply(index));
+    }
+
+    private String format(int index, String line) {
+        return "[Line " + results.getLineNumber(index) + "] " + line.trim();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
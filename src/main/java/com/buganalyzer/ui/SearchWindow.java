@@ -1,6 +1,14 @@
 package com.buganalyzer.ui;
 
+import com.buganalyzer.core.ByteSource;
+import com.buganalyzer.core.CompactResultSet;
+import com.buganalyzer.core.KeywordMatcher;
+import com.buganalyzer.core.ProjectSearch;
+import com.buganalyzer.core.ResultFilter;
 import com.buganalyzer.core.SearchEngine;
+import com.buganalyzer.core.SearchHandle;
+import com.buganalyzer.core.SectionIndex;
+import com.buganalyzer.core.SettingsManager;
 import com.buganalyzer.model.FileMetadata;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -16,10 +24,17 @@ import javafx.stage.Stage;
 import javafx.util.Callback;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 public class SearchWindow {
@@ -28,8 +43,20 @@ public class SearchWindow {
     private final String projectPath;
     private final String query;
     private final boolean isRegex;
+    private final KeywordMatcher keywordMatcher; // Set for category keyword searches
+    private SectionIndex.Section section;        // Set to search only this section of the file
     private final ListView<String> resultsList;
     private int currentSearchIndex = -1;
+    private SearchHandle searchHandle;
+    private List<ByteSource> sources; // The report as opened for the scan, guarded by this
+    private boolean hidden;
+
+    // Find-in-results state, only touched on the FX thread
+    private TextField localSearchField;
+    private Label filterLabel;
+    private ResultFilter activeFilter;
+    private SearchHandle filterHandle = new SearchHandle();
+    private int filterGeneration;
 
     // Local search controls
     private CheckBox regexCheck;
@@ -37,6 +64,7 @@ public class SearchWindow {
     private CheckBox wordCheck;
 
     // Common style for darker controls
+    private static final int MAX_COPY_CHARS = 32 * 1024 * 1024;
     private static final String CONTROL_STYLE = "-fx-base: #e0e0e0; -fx-text-fill: black; -fx-font-weight: bold; -fx-border-color: #a0a0a0; -fx-border-radius: 3;";
 
     // Drag selection state
@@ -48,9 +76,23 @@ public class SearchWindow {
         this.projectPath = projectPath;
         this.query = query;
         this.isRegex = isRegex;
+        this.keywordMatcher = null;
         this.resultsList = new ListView<>();
     }
 
+    public SearchWindow(FileMetadata fileMetadata, String projectPath, KeywordMatcher keywordMatcher) {
+        this.fileMetadata = fileMetadata;
+        this.projectPath = projectPath;
+        this.query = String.join("|", keywordMatcher.getKeywords());
+        this.isRegex = false;
+        this.keywordMatcher = keywordMatcher;
+        this.resultsList = new ListView<>();
+    }
+
+    public void setSection(SectionIndex.Section section) {
+        this.section = section;
+    }
+
     public void show() {
         Stage stage = new Stage();
         BorderPane root = new BorderPane();
@@ -82,8 +124,15 @@ public class SearchWindow {
         prevButton.setStyle(CONTROL_STYLE);
         nextButton.setStyle(CONTROL_STYLE);
         
-        localSearchBox.getChildren().addAll(new Label("Find:"), localSearchField, regexCheck, caseCheck, wordCheck, prevButton, nextButton);
-        topContainer.getChildren().addAll(header, localSearchBox);
+        filterLabel = new Label();
+        localSearchBox.getChildren().addAll(new Label("Find:"), localSearchField, regexCheck, caseCheck, wordCheck, prevButton, nextButton, filterLabel);
+        Label categoryLabel = new Label();
+        categoryLabel.setWrapText(true);
+        topContainer.getChildren().add(header);
+        if (keywordMatcher != null) {
+            topContainer.getChildren().add(categoryLabel);
+        }
+        topContainer.getChildren().add(localSearchBox);
         root.setTop(topContainer);
 
         // Results List Styling & Selection
@@ -205,83 +254,154 @@ public class SearchWindow {
         root.setCenter(resultsList);
         
         ProgressIndicator progress = new ProgressIndicator();
-        root.setBottom(progress);
-
-        // Local Search Logic
-        localSearchField.setOnAction(e -> findNext(localSearchField.getText()));
-        nextButton.setOnAction(e -> findNext(localSearchField.getText()));
-        prevButton.setOnAction(e -> findPrev(localSearchField.getText()));
+        progress.setPrefSize(24, 24);
+        Button stopButton = new Button("停止");
+        stopButton.setStyle(CONTROL_STYLE);
+        stopButton.setOnAction(e -> searchHandle.cancel());
+        HBox bottomBox = new HBox(10, progress, stopButton);
+        bottomBox.setPadding(new Insets(5, 0, 0, 0));
+        root.setBottom(bottomBox);
+
+        // Local Search Logic: the filter is refreshed in the background while typing
+        this.localSearchField = localSearchField;
+        localSearchField.textProperty().addListener((obs, oldVal, newVal) -> updateFilter(null));
+        regexCheck.selectedProperty().addListener((obs, oldVal, newVal) -> updateFilter(null));
+        caseCheck.selectedProperty().addListener((obs, oldVal, newVal) -> updateFilter(null));
+        wordCheck.selectedProperty().addListener((obs, oldVal, newVal) -> updateFilter(null));
+        localSearchField.setOnAction(e -> findNext());
+        nextButton.setOnAction(e -> findNext());
+        prevButton.setOnAction(e -> findPrev());
 
         Scene scene = new Scene(root, 900, 700);
         // Reset dragging state on release globally
         scene.addEventFilter(MouseEvent.MOUSE_RELEASED, e -> isDragging = false);
         
+        // The scan only lives as long as its window
+        SettingsManager settings = new SettingsManager();
+        searchHandle = new SearchHandle(settings.getMaxSearchResults(), settings.getSearchTimeBudgetSeconds() * 1000L);
+        stage.setOnHidden(e -> {
+            searchHandle.cancel();
+            closeSources();
+        });
+
         stage.setScene(scene);
-        stage.setTitle("搜索结果 - " + query);
+        stage.setTitle("搜索结果 - " + query + (section != null ? " [分区: " + section.getTitle() + "]" : ""));
         stage.show();
 
         CompletableFuture.runAsync(() -> {
-            List<File> filesToSearch = new ArrayList<>();
-            File projectDir = new File(projectPath);
-
-            if (fileMetadata.getSplitParts() != null && !fileMetadata.getSplitParts().isEmpty()) {
-                boolean partsExist = false;
-                for (String part : fileMetadata.getSplitParts()) {
-                    File partFile = new File(projectDir, part);
-                    if (partFile.exists()) {
-                        filesToSearch.add(partFile);
-                        partsExist = true;
-                    }
-                }
-                if (!partsExist) {
-                     File mainFile = new File(projectDir, fileMetadata.getFileName());
-                     if (!mainFile.exists()) {
-                         // Fallback: Try parent directory
-                         File parentDir = projectDir.getParentFile();
-                         if (parentDir != null) {
-                             File fallbackFile = new File(parentDir, fileMetadata.getFileName());
-                             if (fallbackFile.exists()) {
-                                 mainFile = fallbackFile;
-                             }
-                         }
-                     }
-                     filesToSearch.add(mainFile);
-                }
-            } else {
-                File mainFile = new File(projectDir, fileMetadata.getFileName());
-                if (!mainFile.exists()) {
-                     // Fallback: Try parent directory
-                     File parentDir = projectDir.getParentFile();
-                     if (parentDir != null) {
-                         File fallbackFile = new File(parentDir, fileMetadata.getFileName());
-                         if (fallbackFile.exists()) {
-                             mainFile = fallbackFile;
-                         }
-                     }
+
+            Map<String, Integer> categoryHits = new LinkedHashMap<>();
+            if (keywordMatcher != null) {
+                for (String cat : keywordMatcher.getCategories()) {
+                    categoryHits.put(cat, 0);
                 }
-                filesToSearch.add(mainFile);
             }
 
-            List<String> allMatches = new ArrayList<>();
-            for (File f : filesToSearch) {
-                try {
-                    List<SearchEngine.SearchResult> results = SearchEngine.searchFile(f, query, isRegex, true);
+            // Hits are kept as line numbers and offsets only; the list reads each line back on demand
+            CompactResultSet compactResults;
+            List<ByteSource> opened;
+            try {
+                opened = ProjectSearch.sourcesToSearch(fileMetadata, new File(projectPath));
+                if (!keepSources(opened)) return;
+                compactResults = new CompactResultSet(opened);
+            } catch (IOException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> {
+                    progress.setVisible(false);
+                    stopButton.setDisable(true);
+                    header.setText("错误: " + e.getMessage());
+                });
+                return;
+            }
+            SearchResultList items = new SearchResultList(compactResults);
+            Platform.runLater(() -> resultsList.setItems(items));
+
+            // Batches arrive on this thread; the FX thread shows whatever has piled up since its last run
+            long startTime = System.nanoTime();
+            AtomicLong firstResultMillis = new AtomicLong(-1);
+            AtomicInteger matchCount = new AtomicInteger();
+            AtomicReference<String> categorySummary = new AtomicReference<>("");
+            AtomicBoolean drainScheduled = new AtomicBoolean(false);
+            Runnable drain = () -> {
+                drainScheduled.set(false);
+                items.sync();
+                header.setText("Searching... " + matchCount.get() + " matches for: " + query
+                        + " (first result in " + firstResultMillis.get() + " ms)");
+                categoryLabel.setText("分类命中: " + categorySummary.get());
+            };
+
+            try {
+                SearchEngine.LineMatcher matcher = keywordMatcher != null
+                        ? SearchEngine.keywordMatcher(keywordMatcher)
+                        : SearchEngine.queryMatcher(query, isRegex, true);
+                ProjectSearch.searchReport(fileMetadata, new File(projectPath), opened, section, matcher, searchHandle, results -> {
+                    firstResultMillis.compareAndSet(-1, (System.nanoTime() - startTime) / 1_000_000);
+                    compactResults.addAll(results);
                     for (SearchEngine.SearchResult r : results) {
-                        allMatches.add("[Line " + r.lineNumber + "] " + r.lineContent.trim());
+                        if (r.categories != null) {
+                            for (String cat : r.categories) {
+                                categoryHits.merge(cat, 1, Integer::sum);
+                            }
+                        }
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                    matchCount.addAndGet(results.size());
+                    categorySummary.set(formatCategoryHits(categoryHits));
+                    if (drainScheduled.compareAndSet(false, true)) {
+                        Platform.runLater(drain);
+                    }
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
             }
 
+            long totalMillis = (System.nanoTime() - startTime) / 1_000_000;
             Platform.runLater(() -> {
-                resultsList.getItems().addAll(allMatches);
+                drain.run();
                 progress.setVisible(false);
-                header.setText("Found " + allMatches.size() + " matches for: " + query);
+                stopButton.setDisable(true);
+                String timing = firstResultMillis.get() >= 0
+                        ? " (first result in " + firstResultMillis.get() + " ms, total " + totalMillis + " ms)"
+                        : " (" + totalMillis + " ms)";
+                header.setText("Found " + matchCount.get() + " matches for: " + query + timing
+                        + describeStop(searchHandle.getStopReason()));
             });
         });
     }
 
+    // The report stays open while the window shows its lines; whichever of opening it and
+    // hiding the window comes last closes it
+    private synchronized boolean keepSources(List<ByteSource> opened) {
+        if (hidden) {
+            ByteSource.closeAll(opened);
+            return false;
+        }
+        sources = opened;
+        return true;
+    }
+
+    private synchronized void closeSources() {
+        hidden = true;
+        if (sources != null) {
+            ByteSource.closeAll(sources);
+            sources = null;
+        }
+    }
+
+    static String describeStop(SearchHandle.StopReason reason) {
+        switch (reason) {
+            case CANCELLED: return " [已停止]";
+            case RESULT_LIMIT: return " [已达到结果上限]";
+            case TIME_BUDGET: return " [已达到时间上限]";
+            default: return "";
+        }
+    }
+
+    private static String formatCategoryHits(Map<String, Integer> categoryHits) {
+        return categoryHits.entrySet().stream()
+                .map(e -> e.getKey() + " " + e.getValue())
+                .collect(Collectors.joining(", "));
+    }
+
     private void updateSelectionFromMouse(double sceneX, double sceneY, boolean isControlDown) {
         if (dragAnchorIndex < 0) return;
         
@@ -307,80 +427,97 @@ public class SearchWindow {
         }
     }
 
+    // The selected rows are read on a background thread, in row order so compact results are
+    // read sequentially, and at most MAX_COPY_CHARS of them go to the clipboard
     private void copySelection() {
-        List<String> selected = resultsList.getSelectionModel().getSelectedItems();
-        if (selected != null && !selected.isEmpty()) {
-            String content = String.join("\n", selected);
-            ClipboardContent clipboardContent = new ClipboardContent();
-            clipboardContent.putString(content);
-            Clipboard.getSystemClipboard().setContent(clipboardContent);
-        }
+        List<Integer> selected = resultsList.getSelectionModel().getSelectedIndices();
+        if (selected == null || selected.isEmpty()) return;
+        int[] rows = selected.stream().mapToInt(Integer::intValue).sorted().toArray();
+        List<String> items = resultsList.getItems();
+        IntFunction<String> rowReader = items instanceof SearchResultList
+                ? ((SearchResultList) items).newRowScanner() : items::get;
+        CompletableFuture.supplyAsync(() -> {
+            StringBuilder content = new StringBuilder();
+            int copied = 0;
+            for (int row : rows) {
+                String line = rowReader.apply(row);
+                if (content.length() + line.length() + 1 > MAX_COPY_CHARS) break;
+                if (copied > 0) content.append('\n');
+                content.append(line);
+                copied++;
+            }
+            int copiedRows = copied;
+            Platform.runLater(() -> {
+                ClipboardContent clipboardContent = new ClipboardContent();
+                clipboardContent.putString(content.toString());
+                Clipboard.getSystemClipboard().setContent(clipboardContent);
+                if (copiedRows < rows.length) {
+                    Alert alert = new Alert(Alert.AlertType.WARNING, "选中内容超过 " + MAX_COPY_CHARS / (1024 * 1024)
+                            + "M 字符上限，只复制了前 " + copiedRows + " / " + rows.length + " 行");
+                    alert.show();
+                }
+            });
+            return null;
+        });
     }
 
-    private void findNext(String text) {
-        if (text == null || text.isEmpty()) return;
-        int start = currentSearchIndex + 1;
-        for (int i = start; i < resultsList.getItems().size(); i++) {
-            if (matches(resultsList.getItems().get(i), text)) {
-                selectAndScroll(i);
-                return;
-            }
-        }
-        // Wrap around
-        for (int i = 0; i < start; i++) {
-            if (matches(resultsList.getItems().get(i), text)) {
-                selectAndScroll(i);
-                return;
-            }
-        }
+    private void findNext() {
+        updateFilter(() -> {
+            int row = activeFilter.next(currentSearchIndex);
+            if (row >= 0) selectAndScroll(row);
+        });
     }
 
-    private void findPrev(String text) {
-        if (text == null || text.isEmpty()) return;
-        int start = currentSearchIndex - 1;
-        if (start < 0) start = resultsList.getItems().size() - 1;
-        
-        for (int i = start; i >= 0; i--) {
-            if (matches(resultsList.getItems().get(i), text)) {
-                selectAndScroll(i);
-                return;
-            }
-        }
-        // Wrap around
-        for (int i = resultsList.getItems().size() - 1; i > start; i--) {
-            if (matches(resultsList.getItems().get(i), text)) {
-                selectAndScroll(i);
-                return;
-            }
-        }
+    private void findPrev() {
+        updateFilter(() -> {
+            int from = currentSearchIndex < 0 ? resultsList.getItems().size() : currentSearchIndex;
+            int row = activeFilter.previous(from);
+            if (row >= 0) selectAndScroll(row);
+        });
     }
 
-    private boolean matches(String content, String searchText) {
-        boolean isRegex = regexCheck.isSelected();
-        boolean isCaseSensitive = caseCheck.isSelected();
-        boolean isWholeWord = wordCheck.isSelected();
+    // Makes activeFilter match the find controls over all current rows, then runs the action
+    // on the FX thread. The rows are scanned on a background thread; a newer request cancels
+    // an older one still in flight.
+    private void updateFilter(Runnable then) {
+        String text = localSearchField.getText();
+        filterHandle.cancel();
+        int generation = ++filterGeneration;
+        if (text == null || text.isEmpty()) {
+            activeFilter = null;
+            filterLabel.setText("");
+            return;
+        }
 
-        if (isRegex) {
-            int flags = isCaseSensitive ? 0 : Pattern.CASE_INSENSITIVE;
-            try {
-                Pattern p = Pattern.compile(searchText, flags);
-                return p.matcher(content).find();
-            } catch (Exception e) {
-                return false; // Invalid regex
-            }
-        } else {
-            if (isWholeWord) {
-                String regex = "\\b" + Pattern.quote(searchText) + "\\b";
-                int flags = isCaseSensitive ? 0 : Pattern.CASE_INSENSITIVE;
-                return Pattern.compile(regex, flags).matcher(content).find();
-            } else {
-                if (isCaseSensitive) {
-                    return content.contains(searchText);
-                } else {
-                    return content.toLowerCase().contains(searchText.toLowerCase());
-                }
-            }
+        ResultFilter filter;
+        try {
+            filter = new ResultFilter(text, regexCheck.isSelected(), caseCheck.isSelected(), wordCheck.isSelected());
+        } catch (PatternSyntaxException e) {
+            filterLabel.setText("无效的正则");
+            return; // Invalid regex
+        }
+        List<String> rows = resultsList.getItems();
+        int rowCount = rows.size();
+        if (filter.isSameQuery(activeFilter) && activeFilter.getScannedRows() == rowCount) {
+            if (then != null) then.run();
+            return;
         }
+
+        ResultFilter previous = activeFilter;
+        SearchHandle handle = new SearchHandle();
+        filterHandle = handle;
+        // Compact results are read sequentially, not one disk read per hit through the line cache
+        IntFunction<String> rowReader = rows instanceof SearchResultList
+                ? ((SearchResultList) rows).newRowScanner() : rows::get;
+        CompletableFuture.supplyAsync(() -> filter.run(previous, rowReader, rowCount, handle)).thenAccept(done -> {
+            if (!done) return;
+            Platform.runLater(() -> {
+                if (generation != filterGeneration) return;
+                activeFilter = filter;
+                filterLabel.setText(filter.getMatchCount() + " 项");
+                if (then != null) then.run();
+            });
+        });
     }
 
     private void selectAndScroll(int index) {
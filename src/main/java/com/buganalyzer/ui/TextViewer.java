@@ -1,8 +1,17 @@
 package com.buganalyzer.ui;
 
+import com.buganalyzer.core.ByteSource;
+import com.buganalyzer.core.ConcatByteSource;
+import com.buganalyzer.core.ContentStore;
+import com.buganalyzer.core.FileByteSource;
 import com.buganalyzer.core.KeywordManager;
+import com.buganalyzer.core.KeywordMatcher;
+import com.buganalyzer.core.LineIndex;
+import com.buganalyzer.core.PagedLineReader;
+import com.buganalyzer.core.ProjectSearch;
 import com.buganalyzer.core.SearchEngine;
 import com.buganalyzer.model.FileMetadata;
+import com.buganalyzer.model.FilePart;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
@@ -12,23 +21,33 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
-import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class TextViewer extends BorderPane {
 
+    private static final int INDEX_STEP = 8 * 1024 * 1024;
+
     private final FileMetadata fileMetadata;
     private final String projectPath;
     private final ListView<String> listView;
     private final TextField searchField;
     private final Label statusLabel;
+    private VirtualLineList document; // All parts of the report as one list of lines
+    private boolean indexing;         // True while the document is still growing
+    private ByteSource source;        // The report when read from a zip or compressed file, guarded by this
+    private boolean closed;
+    private int pendingLine = -1;     // 1-based line to jump to once it is indexed
+    private long pendingOffset = -1;  // Byte offset to jump to once it is indexed
 
     public TextViewer(FileMetadata fileMetadata, String projectPath) {
         this.fileMetadata = fileMetadata;
@@ -67,26 +86,34 @@ public class TextViewer extends BorderPane {
             dialog.showAndWait().ifPresent(selectedCategories -> {
                 if (selectedCategories.isEmpty()) return;
                 
-                List<String> allKeywords = new java.util.ArrayList<>();
+                Map<String, List<String>> selected = new LinkedHashMap<>();
                 for (String cat : selectedCategories) {
                     List<String> kws = km.getCategorizedKeywords().get(cat);
-                    if (kws != null) {
-                        allKeywords.addAll(kws);
+                    if (kws != null && !kws.isEmpty()) {
+                        selected.put(cat, kws);
                     }
                 }
                 
-                if (allKeywords.isEmpty()) {
+                KeywordMatcher matcher = KeywordMatcher.forCategories(selected, true);
+                if (matcher.isEmpty()) {
                     Alert alert = new Alert(Alert.AlertType.INFORMATION, "选中的分类中没有关键字。");
                     alert.showAndWait();
                     return;
                 }
                 
-                String query = String.join("|", allKeywords);
-                new SearchWindow(fileMetadata, projectPath, query, true).show();
+                new SearchWindow(fileMetadata, projectPath, matcher).show();
             });
         });
 
-        topBar.getChildren().addAll(searchField, regexCheck, searchButton, keywordsButton, searchKeywordsButton);
+        TextField lineField = new TextField();
+        lineField.setPromptText("行号");
+        lineField.setPrefWidth(90);
+        Button goToLineButton = new Button("跳转");
+        goToLineButton.setStyle("-fx-base: #e0e0e0; -fx-text-fill: black; -fx-font-weight: bold; -fx-border-color: #a0a0a0; -fx-border-radius: 3;");
+        goToLineButton.setOnAction(e -> goToLine(lineField.getText()));
+        lineField.setOnAction(e -> goToLine(lineField.getText()));
+
+        topBar.getChildren().addAll(searchField, regexCheck, searchButton, keywordsButton, searchKeywordsButton, lineField, goToLineButton);
         setTop(topBar);
 
         // Center: ListView (Virtualized)
@@ -113,75 +140,221 @@ public class TextViewer extends BorderPane {
         statusLabel.setPadding(new Insets(5));
         setBottom(statusLabel);
 
-        // Load initial content (first part or full file)
-        loadContent(null);
+        // Load the whole report (all parts) as one document
+        openDocument();
     }
 
-    public void loadContent(String partName) {
+    // Opens the main file (or the report inside the zip or its block-compressed file, if it was
+    // stored that way) through its sidecar line index when there is one. Otherwise the main
+    // file, or the split parts read back to back, is indexed in the background and the list
+    // grows as each step is indexed, so the first lines show up straight away.
+    private void openDocument() {
         statusLabel.setText("加载中...");
         CompletableFuture.runAsync(() -> {
-            File resolvedFile = null;
             try {
-                
-                // Helper to resolve file with parent fallback
-                java.util.function.Function<String, File> resolve = name -> {
-                    File f = new File(projectPath, name);
-                    if (f.exists()) return f;
-                    File parent = new File(projectPath).getParentFile();
-                    if (parent != null) {
-                        File f2 = new File(parent, name);
-                        if (f2.exists()) return f2;
-                    }
-                    return f; // Return original even if not exists, to let downstream handle it
-                };
-
-                if (partName != null) {
-                    resolvedFile = resolve.apply(partName);
-                } else {
-                    // Default to first part if split, or the file itself
-                    if (fileMetadata.getSplitParts() != null && !fileMetadata.getSplitParts().isEmpty()) {
-                        // Try to find the first part
-                        File partFile = resolve.apply(fileMetadata.getSplitParts().get(0));
-                        if (partFile.exists()) {
-                            resolvedFile = partFile;
-                        } else {
-                            // Fallback to main file if split part missing
-                            resolvedFile = resolve.apply(fileMetadata.getFileName());
-                        }
-                    } else {
-                        resolvedFile = resolve.apply(fileMetadata.getFileName());
-                    }
+                ByteSource stored = ProjectSearch.storedSource(fileMetadata, new File(projectPath));
+                if (stored != null && !keepSource(stored)) return;
+                File mainFile = resolveFile(ContentStore.nameOf(fileMetadata));
+                ByteSource mainSource = stored != null ? stored : new FileByteSource(mainFile);
+                LineIndex mainIndex = openLineIndex(mainSource);
+                if (mainIndex != null) {
+                    PagedLineReader reader = new PagedLineReader(mainSource, mainIndex);
+                    Platform.runLater(() -> showDocument(reader, true));
+                    return;
                 }
 
-                File finalFileToLoad = resolvedFile;
-                boolean exists = finalFileToLoad != null && finalFileToLoad.exists();
-                String debugInfo = "Proj: " + projectPath + " | File: " + (finalFileToLoad != null ? finalFileToLoad.getName() : "null") + " | Exists: " + exists;
-                
-                if (!exists) {
-                    throw new IOException("File not found. " + debugInfo);
-                }
+                ByteSource source = stored != null ? stored : openSource(mainFile);
+                LineIndex index = LineIndex.scanProgressively(source, INDEX_STEP, snapshot ->
+                        Platform.runLater(() -> extendDocument(source, snapshot, false)));
+                Platform.runLater(() -> extendDocument(source, index, true));
+            } catch (IOException e) {
+                Platform.runLater(() -> statusLabel.setText("错误: " + e.getMessage()));
+            }
+        });
+    }
 
-                // Read lines with fallback for encoding issues
-                List<String> lines;
-                try {
-                    lines = FileUtils.readLines(finalFileToLoad, StandardCharsets.UTF_8);
-                } catch (IOException e) {
-                    // Fallback to ISO-8859-1 if UTF-8 fails (e.g. "Input length = 1" MalformedInputException)
-                    System.err.println("UTF-8 read failed, falling back to ISO-8859-1: " + e.getMessage());
-                    lines = FileUtils.readLines(finalFileToLoad, StandardCharsets.ISO_8859_1);
-                }
-                
-                List<String> finalLines = lines;
+    // A report read from its zip keeps inflaters and channels open until the viewer is closed;
+    // whichever of opening it and closing the viewer comes last releases them
+    private synchronized boolean keepSource(ByteSource opened) throws IOException {
+        if (closed) {
+            opened.close();
+            return false;
+        }
+        source = opened;
+        return true;
+    }
+
+    // Called when the tab showing this viewer is closed
+    public synchronized void close() {
+        closed = true;
+        try {
+            if (document != null) {
+                document.getReader().close();
+            }
+            if (source != null) {
+                source.close();
+                source = null;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private ByteSource openSource(File mainFile) throws IOException {
+        if (mainFile.exists()) {
+            return new FileByteSource(mainFile);
+        }
+        List<String> parts = fileMetadata.getSplitParts();
+        if (parts == null || parts.isEmpty()) {
+            throw new IOException("File not found. Proj: " + projectPath + " | File: " + mainFile.getName());
+        }
+        List<ByteSource> sources = new ArrayList<>();
+        for (String part : parts) {
+            File partFile = resolveFile(part);
+            if (!partFile.exists()) {
+                throw new IOException("File not found. Proj: " + projectPath + " | File: " + part);
+            }
+            sources.add(new FileByteSource(partFile));
+        }
+        return new ConcatByteSource(fileMetadata.getFileName(), sources);
+    }
+
+    private void extendDocument(ByteSource source, LineIndex index, boolean complete) {
+        if (document == null) {
+            showDocument(new PagedLineReader(source, index), complete);
+            return;
+        }
+        document.extend(index);
+        updateStatus(complete);
+        applyPendingScroll();
+    }
+
+    private void showDocument(PagedLineReader reader, boolean complete) {
+        // Pages are read off the FX thread; redraw the visible rows once some have arrived
+        AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+        reader.setPageListener(() -> {
+            if (refreshScheduled.compareAndSet(false, true)) {
                 Platform.runLater(() -> {
-                    listView.getItems().setAll(finalLines);
-                    statusLabel.setText("已加载: " + finalFileToLoad.getAbsolutePath() + " (" + finalLines.size() + " 行)");
-                    highlightKeywords();
+                    refreshScheduled.set(false);
+                    listView.refresh();
                 });
-            } catch (IOException e) {
-                File errorFile = resolvedFile;
-                Platform.runLater(() -> statusLabel.setText("错误: " + e.getMessage()));
             }
         });
+        document = new VirtualLineList(reader);
+        listView.setItems(document);
+        updateStatus(complete);
+        highlightKeywords();
+        applyPendingScroll();
+    }
+
+    private void updateStatus(boolean complete) {
+        indexing = !complete;
+        PagedLineReader reader = document.getReader();
+        String text = "已加载: " + fileMetadata.getFileName() + " (" + reader.getLineCount() + " 行)";
+        statusLabel.setText(complete ? text : text + " 索引中...");
+    }
+
+    // Scrolls to the first line of a split part. The parts are one document, so this is just
+    // a jump to the part's start offset (deferred until background indexing reaches it).
+    public void scrollToPart(String partName) {
+        if (fileMetadata.getParts() != null) {
+            for (FilePart part : fileMetadata.getParts()) {
+                if (part.getName().equals(partName)) {
+                    scrollToOffset(part.getOffset());
+                    return;
+                }
+            }
+            return;
+        }
+        List<String> parts = fileMetadata.getSplitParts();
+        int partNumber = parts != null ? parts.indexOf(partName) : -1;
+        if (partNumber < 0) return;
+        pendingOffset = partStartOffset(partNumber);
+        pendingLine = -1;
+        applyPendingScroll();
+    }
+
+    // Scrolls to the line containing a byte offset of the file, e.g. a section header
+    public void scrollToOffset(long offset) {
+        pendingOffset = offset;
+        pendingLine = -1;
+        applyPendingScroll();
+    }
+
+    // Byte offset of a part inside the document: the sum of the sizes of the parts before it
+    private long partStartOffset(int partNumber) {
+        if (document != null && document.getReader().getSource() instanceof ConcatByteSource) {
+            return ((ConcatByteSource) document.getReader().getSource()).getSourceStart(partNumber);
+        }
+        long offset = 0;
+        List<String> parts = fileMetadata.getSplitParts();
+        for (int i = 0; i < partNumber; i++) {
+            offset += resolveFile(parts.get(i)).length();
+        }
+        return offset;
+    }
+
+    private File resolveFile(String name) {
+        File f = new File(ContentStore.dirOf(fileMetadata, new File(projectPath)), name);
+        if (f.exists()) return f;
+        File parent = new File(projectPath).getParentFile();
+        if (parent != null) {
+            File f2 = new File(parent, name);
+            if (f2.exists()) return f2;
+        }
+        return f; // Return original even if not exists, to let downstream handle it
+    }
+
+    // Jumps to a global (whole-file) line number, which is simply a row of the document
+    private void goToLine(String text) {
+        int requested;
+        try {
+            requested = Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (requested < 1) return;
+        pendingLine = requested;
+        pendingOffset = -1;
+        applyPendingScroll();
+    }
+
+    // Performs the last requested jump once the document's index covers the target
+    private void applyPendingScroll() {
+        if (document == null || document.isEmpty()) return;
+        LineIndex index = document.getReader().getIndex();
+        boolean complete = !indexing;
+        if (pendingLine > 0) {
+            if (pendingLine <= index.getLineCount() || complete) {
+                scrollToRow(pendingLine - 1);
+                pendingLine = -1;
+            }
+        } else if (pendingOffset >= 0) {
+            if (pendingOffset < index.getFileSize() || complete) {
+                scrollToRow(index.lineAt(pendingOffset) - 1);
+                pendingOffset = -1;
+            }
+        }
+    }
+
+    private LineIndex openLineIndex(ByteSource source) {
+        if (fileMetadata.getLineIndex() == null) return null;
+        File indexFile = new File(ContentStore.dirOf(fileMetadata, new File(projectPath)), fileMetadata.getLineIndex());
+        if (!indexFile.exists()) return null;
+        try {
+            LineIndex index = LineIndex.open(indexFile);
+            return index.isFresh(source.size(), source.lastModified()) ? index : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void scrollToRow(int row) {
+        if (listView.getItems().isEmpty()) return;
+        int target = Math.max(0, Math.min(row, listView.getItems().size() - 1));
+        listView.scrollTo(target);
+        listView.getSelectionModel().clearAndSelect(target);
     }
 
     private void performSearch(String query, boolean isRegex) {
@@ -0,0 +1,48 @@
+package com.buganalyzer.ui;
+
+import com.buganalyzer.core.LineIndex;
+import com.buganalyzer.core.PagedLineReader;
+import javafx.collections.ObservableListBase;
+
+// Read-only list view of a PagedLineReader. ListView only asks for the rows it is about to
+// show, so only those pages are ever decoded. Rows whose page is still being read show a
+// placeholder until the owner refreshes the view.
+public class VirtualLineList extends ObservableListBase<String> {
+
+    private static final String LOADING = "加载中...";
+
+    private final PagedLineReader reader;
+    private int size;
+
+    public VirtualLineList(PagedLineReader reader) {
+        this.reader = reader;
+        this.size = reader.getLineCount();
+    }
+
+    public PagedLineReader getReader() {
+        return reader;
+    }
+
+    // Appends the rows a newer index snapshot covers. Must be called on the FX thread.
+    public void extend(LineIndex newIndex) {
+        reader.extend(newIndex);
+        int oldSize = size;
+        int newSize = reader.getLineCount();
+        if (newSize <= oldSize) return;
+        size = newSize;
+        beginChange();
+        nextAdd(oldSize, newSize);
+        endChange();
+    }
+
+    @Override
+    public String get(int index) {
+        String line = reader.peekLine(index);
+        return line != null ? line : LOADING;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
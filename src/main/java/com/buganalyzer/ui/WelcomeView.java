@@ -1,11 +1,21 @@
 package com.buganalyzer.ui;
 
+import com.buganalyzer.core.ContentStore;
+import com.buganalyzer.core.FileSplitter;
+import com.buganalyzer.core.ImportOptions;
+import com.buganalyzer.core.ImportProgress;
+import com.buganalyzer.core.ImportQueue;
 import com.buganalyzer.core.ProjectManager;
+import com.buganalyzer.core.ProjectSearch;
 import com.buganalyzer.core.RecentProjectsManager;
 import com.buganalyzer.core.SettingsManager;
-import com.buganalyzer.core.ZipExtractor;
 import com.buganalyzer.model.ProjectManifest;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -14,19 +24,32 @@ import javafx.scene.input.Dragboard;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import org.apache.commons.io.FileUtils;
 
 public class WelcomeView extends BorderPane {
 
-    private final ProgressIndicator progress;
+    // Imports outlive the view: it is rebuilt whenever a project is closed
+    private static ImportQueue importQueue;
+    private static final ObservableList<ImportQueue.Job> importJobs = FXCollections.observableArrayList();
+    private static final Set<ImportQueue.Job> openWhenDone = new HashSet<>(); // Zips opened on their own
+
+    private final ListView<ImportQueue.Job> jobList;
+    private Timeline refreshJobs;
+    private final ListView<RecentProjectsManager.RecentProject> recentList;
     private final Label statusLabel;
     private final RecentProjectsManager recentProjectsManager;
     private final SettingsManager settingsManager;
@@ -64,12 +87,23 @@ public class WelcomeView extends BorderPane {
         openProjectButton.setStyle("-fx-base: #e0e0e0; -fx-text-fill: black; -fx-font-weight: bold; -fx-border-color: #a0a0a0; -fx-border-radius: 3; -fx-font-size: 14px;");
         openProjectButton.setOnAction(e -> chooseProjectFile());
 
-        progress = new ProgressIndicator();
-        progress.setVisible(false);
-        
         statusLabel = new Label("");
 
-        centerBox.getChildren().addAll(titleLabel, dropLabel, openZipButton, openProjectButton, progress, statusLabel);
+        jobList = new ListView<>(importJobs);
+        jobList.setPrefHeight(160);
+        jobList.setCellFactory(param -> new ImportJobCell());
+        jobList.visibleProperty().bind(Bindings.isNotEmpty(importJobs));
+        jobList.managedProperty().bind(jobList.visibleProperty());
+        Button clearJobsButton = new Button("清除已完成");
+        clearJobsButton.setOnAction(e -> importJobs.removeIf(ImportQueue.Job::isFinished));
+        clearJobsButton.visibleProperty().bind(jobList.visibleProperty());
+        clearJobsButton.managedProperty().bind(jobList.visibleProperty());
+
+        Button multiSearchButton = new Button("多项目搜索");
+        multiSearchButton.setStyle("-fx-base: #e0e0e0; -fx-text-fill: black; -fx-font-weight: bold; -fx-border-color: #a0a0a0; -fx-border-radius: 3; -fx-font-size: 14px;");
+        multiSearchButton.setOnAction(e -> openMultiProjectSearch());
+
+        centerBox.getChildren().addAll(titleLabel, dropLabel, openZipButton, openProjectButton, multiSearchButton, jobList, clearJobsButton, statusLabel);
         setCenter(centerBox);
         
         // Right: Recent Projects
@@ -81,7 +115,7 @@ public class WelcomeView extends BorderPane {
         Label recentLabel = new Label("最近项目");
         recentLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14px;");
         
-        ListView<RecentProjectsManager.RecentProject> recentList = new ListView<>();
+        recentList = new ListView<>();
         recentList.getItems().addAll(recentProjectsManager.getRecentProjects());
         recentList.setCellFactory(param -> new ListCell<>() {
             @Override
@@ -192,15 +226,36 @@ public class WelcomeView extends BorderPane {
             Dragboard db = event.getDragboard();
             boolean success = false;
             if (db.hasFiles()) {
-                File file = db.getFiles().get(0);
-                if (file.getName().endsWith(".zip")) {
-                    processZipFile(file);
+                List<File> zips = new ArrayList<>();
+                for (File file : db.getFiles()) {
+                    if (file.getName().toLowerCase().endsWith(".zip")) {
+                        zips.add(file);
+                    }
+                }
+                if (!zips.isEmpty()) {
+                    importZipFiles(zips);
                     success = true;
                 }
             }
             event.setDropCompleted(success);
             event.consume();
         });
+
+        // Progress is polled: the import threads update it far more often than worth redrawing
+        refreshJobs = new Timeline(new KeyFrame(Duration.millis(500), e -> {
+            if (stage.getScene() != getScene()) {
+                refreshJobs.stop(); // A project was opened over this view
+            } else {
+                jobList.refresh();
+            }
+        }));
+        refreshJobs.setCycleCount(Timeline.INDEFINITE);
+        refreshJobs.play();
+
+        if (importQueue == null) {
+            importQueue = new ImportQueue(settingsManager.getImportWorkers());
+        }
+        importQueue.setListener(job -> Platform.runLater(() -> onJobChanged(job)));
     }
 
     private void chooseZipFile() {
@@ -214,9 +269,9 @@ public class WelcomeView extends BorderPane {
             if (dir.exists()) fileChooser.setInitialDirectory(dir);
         }
         
-        File file = fileChooser.showOpenDialog(getScene().getWindow());
-        if (file != null) {
-            processZipFile(file);
+        List<File> files = fileChooser.showOpenMultipleDialog(getScene().getWindow());
+        if (files != null && !files.isEmpty()) {
+            importZipFiles(files);
         }
     }
 
@@ -237,51 +292,133 @@ public class WelcomeView extends BorderPane {
         }
     }
 
-    private void processZipFile(File zipFile) {
-        progress.setVisible(true);
-        statusLabel.setText("正在解压并处理 " + zipFile.getName() + "...");
-        
-        CompletableFuture.runAsync(() -> {
-            try {
-                ZipExtractor extractor = new ZipExtractor();
-                ProjectManifest manifest = ZipExtractor.extractProject(zipFile);
-                
-                // Save JSON INSIDE the project directory
-                File projectDir = new File(new File(manifest.getOriginalZipPath()).getParent(), manifest.getProjectName());
-                ProjectManager.saveProject(manifest, projectDir);
-                
-                Platform.runLater(() -> {
-                    progress.setVisible(false);
-                    // JSON path is now projectDir/ProjectName.json
-                    File jsonFile = new File(projectDir, manifest.getProjectName() + ".json");
-                    recentProjectsManager.addProject(manifest.getProjectName(), jsonFile.getAbsolutePath());
-                    openProjectView(manifest, projectDir.getAbsolutePath());
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-                Platform.runLater(() -> {
-                    progress.setVisible(false);
-                    statusLabel.setText("错误: " + e.getMessage());
-                    Alert alert = new Alert(Alert.AlertType.ERROR, "处理 zip 失败: " + e.getMessage());
-                    alert.showAndWait();
-                });
+    // Queues the zips for import. A zip imported on its own opens when done, as long as no
+    // other import is still going; with several, each finished project just joins the recent list.
+    private void importZipFiles(List<File> zipFiles) {
+        importQueue.setWorkers(settingsManager.getImportWorkers());
+        ImportOptions options = ImportOptions.fromSettings(settingsManager);
+        for (File zipFile : zipFiles) {
+            ImportQueue.Job job = importQueue.submit(zipFile, options);
+            if (importJobs.contains(job)) continue; // Already being imported
+            importJobs.add(job);
+            if (zipFiles.size() == 1) {
+                openWhenDone.add(job);
             }
-        });
+        }
+        statusLabel.setText("");
+    }
+
+    private void onJobChanged(ImportQueue.Job job) {
+        jobList.refresh();
+        if (!job.isFinished()) return;
+        boolean open = openWhenDone.remove(job);
+        if (job.getState() == ImportQueue.State.DONE) {
+            ProjectManifest manifest = job.getManifest();
+            File jsonFile = new File(job.getProjectDir(), manifest.getProjectName() + ".json");
+            recentProjectsManager.addProject(manifest.getProjectName(), jsonFile.getAbsolutePath());
+            recentList.getItems().setAll(recentProjectsManager.getRecentProjects());
+            boolean othersActive = importJobs.stream().anyMatch(j -> j != job && !j.isFinished());
+            if (open && !othersActive && stage.getScene() == getScene()) {
+                importJobs.remove(job);
+                openProjectView(manifest, job.getProjectDir().getAbsolutePath());
+            }
+        } else if (job.getState() == ImportQueue.State.FAILED && open) {
+            statusLabel.setText("错误: " + job.getError().getMessage());
+            Alert alert = new Alert(Alert.AlertType.ERROR, "处理 zip 失败: " + job.getError().getMessage());
+            alert.showAndWait();
+        }
+    }
+
+    // One queued import: name, stage, speed and time left, with pause/resume and cancel
+    private class ImportJobCell extends ListCell<ImportQueue.Job> {
+        private final Label nameLabel = new Label();
+        private final Label detailLabel = new Label();
+        private final ProgressBar progressBar = new ProgressBar(0);
+        private final Button pauseButton = new Button();
+        private final Button cancelButton = new Button("取消");
+        private final HBox row;
+
+        ImportJobCell() {
+            nameLabel.setStyle("-fx-font-weight: bold;");
+            detailLabel.setStyle("-fx-text-fill: #666;");
+            progressBar.setMaxWidth(Double.MAX_VALUE);
+            VBox info = new VBox(2, nameLabel, detailLabel, progressBar);
+            HBox.setHgrow(info, Priority.ALWAYS);
+            row = new HBox(10, info, pauseButton, cancelButton);
+            row.setAlignment(Pos.CENTER_LEFT);
+            pauseButton.setOnAction(e -> {
+                ImportQueue.Job job = getItem();
+                if (job == null) return;
+                if (job.getState() == ImportQueue.State.PAUSED) {
+                    importQueue.resume(job);
+                } else {
+                    importQueue.pause(job);
+                }
+            });
+            cancelButton.setOnAction(e -> {
+                ImportQueue.Job job = getItem();
+                if (job != null) importQueue.cancel(job);
+            });
+        }
+
+        @Override
+        protected void updateItem(ImportQueue.Job job, boolean empty) {
+            super.updateItem(job, empty);
+            if (empty || job == null) {
+                setGraphic(null);
+                return;
+            }
+            ImportProgress progress = job.getProgress();
+            nameLabel.setText(job.getZipFile().getName());
+            detailLabel.setText(describe(job));
+            double fraction = progress.getFraction();
+            progressBar.setProgress(job.getState() == ImportQueue.State.DONE ? 1 : Math.max(0, fraction));
+            pauseButton.setText(job.getState() == ImportQueue.State.PAUSED ? "继续" : "暂停");
+            pauseButton.setDisable(job.isFinished());
+            cancelButton.setDisable(job.isFinished());
+            setGraphic(row);
+        }
+
+        private String describe(ImportQueue.Job job) {
+            ImportProgress progress = job.getProgress();
+            switch (job.getState()) {
+                case QUEUED: return "排队中";
+                case DONE: return "完成";
+                case CANCELLED: return "已取消";
+                case FAILED: return "失败: " + job.getError().getMessage();
+                default: break;
+            }
+            String stage;
+            switch (progress.getStage()) {
+                case INDEXING: stage = "建立索引"; break;
+                case SAVING: stage = "保存项目"; break;
+                default: stage = "解压中"; break;
+            }
+            if (job.getState() == ImportQueue.State.PAUSED) {
+                stage = "已暂停";
+            }
+            StringBuilder sb = new StringBuilder(stage);
+            double fraction = progress.getFraction();
+            if (fraction >= 0) {
+                sb.append(String.format("  %d%%", (int) (fraction * 100)));
+            }
+            double rate = progress.getBytesPerSecond();
+            if (rate > 0) {
+                sb.append(String.format("  %.1f MB/s", rate / (1024 * 1024)));
+            }
+            long eta = progress.getEtaSeconds();
+            if (eta >= 0 && job.getState() == ImportQueue.State.RUNNING) {
+                sb.append(String.format("  剩余 %d:%02d", eta / 60, eta % 60));
+            }
+            return sb.toString();
+        }
     }
 
     private void loadProject(File jsonFile) {
         try {
             ProjectManifest manifest = ProjectManager.loadProject(jsonFile);
             
-            File projectDir;
-            // Check if the parent directory name matches the project name (New Structure)
-            // Structure: .../ProjectName/ProjectName.json
-            if (jsonFile.getParentFile().getName().equals(manifest.getProjectName())) {
-                projectDir = jsonFile.getParentFile();
-            } else {
-                // Fallback to Old Structure: .../ProjectName.json (Sibling is .../ProjectName/)
-                projectDir = new File(jsonFile.getParentFile(), manifest.getProjectName());
-            }
+            File projectDir = ProjectManager.getProjectDir(jsonFile, manifest);
             
             String display = manifest.getDisplayName();
             if (display == null || display.isEmpty()) {
@@ -312,9 +449,29 @@ public class WelcomeView extends BorderPane {
         }
     }
 
+    // Searches several recent projects at once
+    private void openMultiProjectSearch() {
+        new ProjectSelectionDialog(recentProjectsManager.getRecentProjects()).showAndWait().ifPresent(selected -> {
+            if (selected.isEmpty()) return;
+            List<ProjectSearch.Project> projects = new ArrayList<>();
+            for (RecentProjectsManager.RecentProject recent : selected) {
+                try {
+                    projects.add(ProjectSearch.Project.load(new File(recent.getPath())));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    statusLabel.setText("无法加载项目: " + recent.getName());
+                }
+            }
+            if (!projects.isEmpty()) {
+                new ProjectSearchWindow(projects).show();
+            }
+        });
+    }
+
     private void openProjectView(ProjectManifest manifest, String projectPath) {
         Stage stage = (Stage) getScene().getWindow();
-        stage.setScene(new Scene(new ProjectView(manifest, projectPath), 1200, 800));
+        ProjectView projectView = new ProjectView(manifest, projectPath);
+        stage.setScene(new Scene(projectView, 1200, 800));
         stage.setTitle("Bug Analyzer - " + manifest.getProjectName());
         
         // Custom Close Behavior for Project View: Confirm and Return to Welcome
@@ -328,6 +485,7 @@ public class WelcomeView extends BorderPane {
             alert.showAndWait().ifPresent(response -> {
                 if (response == ButtonType.OK) {
                     // Switch back to WelcomeView
+                    projectView.closeViewers();
                     stage.setScene(new Scene(new WelcomeView(stage), 800, 600));
                     stage.setTitle("欢迎 - Bug Analyzer");
                     // The WelcomeView constructor will reset the close handler to Exit!
@@ -359,13 +517,58 @@ public class WelcomeView extends BorderPane {
         });
         
         HBox dirBox = new HBox(10, dirField, browseButton);
-        content.getChildren().addAll(dirLabel, dirBox);
+
+        Label limitLabel = new Label("搜索结果上限 (0 表示不限):");
+        TextField limitField = new TextField(String.valueOf(settingsManager.getMaxSearchResults()));
+        Label budgetLabel = new Label("搜索时间上限/秒 (0 表示不限):");
+        TextField budgetField = new TextField(String.valueOf(settingsManager.getSearchTimeBudgetSeconds()));
+
+        CheckBox indexCheck = new CheckBox("导入时建立搜索索引");
+        indexCheck.setSelected(settingsManager.isBuildSearchIndex());
+        CheckBox inPlaceCheck = new CheckBox("不解压报告，直接从压缩包读取");
+        inPlaceCheck.setSelected(settingsManager.isReadReportsFromZip());
+        CheckBox compressCheck = new CheckBox("解压后的报告分块压缩存储（节省磁盘空间）");
+        compressCheck.setSelected(settingsManager.isCompressReports());
+        CheckBox dedupCheck = new CheckBox("相同的报告在所有项目中只保存一份");
+        dedupCheck.setSelected(settingsManager.isDeduplicateReports());
+        Label storeLabel = new Label("共享报告存储: 统计中...");
+        Button purgeButton = new Button("清理未被项目使用的报告");
+        purgeButton.setDisable(true);
+        HBox storeBox = new HBox(10, storeLabel, purgeButton);
+        storeBox.setAlignment(Pos.CENTER_LEFT);
+        refreshStoreUsage(storeLabel, purgeButton);
+        purgeButton.setOnAction(e -> confirmAndPurgeStore(storeLabel, purgeButton));
+        Label workersLabel = new Label("同时导入的压缩包数 (0 表示自动):");
+        TextField workersField = new TextField(String.valueOf(settingsManager.getImportWorkers()));
+
+        Label splitLabel = new Label("大文件分卷方式:");
+        ComboBox<String> splitCombo = new ComboBox<>();
+        splitCombo.getItems().addAll("按大小", "按行数", "按 dumpsys 分区");
+        splitCombo.getSelectionModel().select(settingsManager.getSplitMode().ordinal());
+        Label partSizeLabel = new Label("每卷大小/MB (0 表示按可用内存):");
+        TextField partSizeField = new TextField(String.valueOf(settingsManager.getSplitPartSizeMB()));
+        Label partLinesLabel = new Label("每卷行数 (0 表示 " + FileSplitter.DEFAULT_LINES_PER_PART + "):");
+        TextField partLinesField = new TextField(String.valueOf(settingsManager.getSplitLinesPerPart()));
+
+        content.getChildren().addAll(dirLabel, dirBox, limitLabel, limitField, budgetLabel, budgetField, indexCheck, inPlaceCheck,
+                compressCheck, dedupCheck, storeBox, workersLabel, workersField, splitLabel, splitCombo, partSizeLabel, partSizeField, partLinesLabel, partLinesField);
         
         dialog.getDialogPane().setContent(content);
         
         dialog.setResultConverter(dialogButton -> {
             if (dialogButton == saveButtonType) {
                 settingsManager.setDefaultOpenDirectory(dirField.getText());
+                settingsManager.setMaxSearchResults(parseNonNegative(limitField.getText()));
+                settingsManager.setSearchTimeBudgetSeconds(parseNonNegative(budgetField.getText()));
+                settingsManager.setBuildSearchIndex(indexCheck.isSelected());
+                settingsManager.setReadReportsFromZip(inPlaceCheck.isSelected());
+                settingsManager.setCompressReports(compressCheck.isSelected());
+                settingsManager.setDeduplicateReports(dedupCheck.isSelected());
+                settingsManager.setImportWorkers(parseNonNegative(workersField.getText()));
+                importQueue.setWorkers(settingsManager.getImportWorkers());
+                settingsManager.setSplitMode(FileSplitter.Mode.values()[splitCombo.getSelectionModel().getSelectedIndex()]);
+                settingsManager.setSplitPartSizeMB(parseNonNegative(partSizeField.getText()));
+                settingsManager.setSplitLinesPerPart(parseNonNegative(partLinesField.getText()));
             }
             return null;
         });
@@ -373,6 +576,63 @@ public class WelcomeView extends BorderPane {
         dialog.showAndWait();
     }
 
+    // Project files the store should count as users besides those its objects list
+    private List<File> knownProjectFiles() {
+        List<File> files = new ArrayList<>();
+        for (RecentProjectsManager.RecentProject project : recentProjectsManager.getRecentProjects()) {
+            files.add(new File(project.getPath()));
+        }
+        return files;
+    }
+
+    private void refreshStoreUsage(Label storeLabel, Button purgeButton) {
+        List<File> known = knownProjectFiles();
+        CompletableFuture.runAsync(() -> {
+            try {
+                ContentStore.Usage usage = new ContentStore().usage(known);
+                Platform.runLater(() -> {
+                    storeLabel.setText("共享报告存储: " + usage.getObjectCount() + " 份, "
+                            + FileUtils.byteCountToDisplaySize(usage.getBytes()) + "; 未被使用 "
+                            + usage.getUnreferencedCount() + " 份, " + FileUtils.byteCountToDisplaySize(usage.getUnreferencedBytes()));
+                    purgeButton.setDisable(usage.getUnreferencedCount() == 0);
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> storeLabel.setText("共享报告存储: 统计失败 - " + e.getMessage()));
+            }
+        });
+    }
+
+    private void confirmAndPurgeStore(Label storeLabel, Button purgeButton) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("清理共享报告");
+        alert.setHeaderText("删除没有项目使用的报告");
+        alert.setContentText("将永久删除共享存储中不再被任何项目引用的报告（一天内导入的除外）。\n"
+                + "仍使用这些报告但不在最近项目列表中、且早于本版本创建的项目将无法再打开这些报告。\n确定继续吗？");
+        alert.showAndWait().ifPresent(response -> {
+            if (response != ButtonType.OK) return;
+            purgeButton.setDisable(true);
+            storeLabel.setText("共享报告存储: 清理中...");
+            List<File> known = knownProjectFiles();
+            CompletableFuture.runAsync(() -> {
+                try {
+                    new ContentStore().purge(known);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                Platform.runLater(() -> refreshStoreUsage(storeLabel, purgeButton));
+            });
+        });
+    }
+
+    private static int parseNonNegative(String text) {
+        try {
+            return Math.max(0, Integer.parseInt(text.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     private void confirmAndDeleteProject(RecentProjectsManager.RecentProject project) {
         boolean canMoveToTrash = java.awt.Desktop.isDesktopSupported() && 
                                  java.awt.Desktop.getDesktop().isSupported(java.awt.Desktop.Action.MOVE_TO_TRASH);
@@ -436,6 +696,9 @@ public class WelcomeView extends BorderPane {
                     }
 
                     // EXECUTE DELETION
+                    if (projectDir != null) {
+                        ProjectSearch.evictIndexes(projectDir);
+                    }
                     if (canMoveToTrash) {
                         boolean dirDeleted = false;
                         boolean jsonDeleted = false;
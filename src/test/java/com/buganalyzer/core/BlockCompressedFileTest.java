@@ -0,0 +1,147 @@
+package com.buganalyzer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockCompressedFileTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    File dir;
+
+    // Log-like text with some incompressible runs, so blocks compress very differently
+    private static byte[] content(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        String[] words = {"ActivityManager", "ANR", "日志", "wakelock", "\n", "\r\n", " ", "0x1f"};
+        int pos = 0;
+        while (pos < size) {
+            if (random.nextInt(20) == 0) {
+                int n = Math.min(size - pos, random.nextInt(3000));
+                for (int i = 0; i < n; i++) data[pos++] = (byte) random.nextInt(256);
+            } else {
+                byte[] word = words[random.nextInt(words.length)].getBytes(StandardCharsets.UTF_8);
+                int n = Math.min(size - pos, word.length);
+                System.arraycopy(word, 0, data, pos, n);
+                pos += n;
+            }
+        }
+        return data;
+    }
+
+    private File write(String name, byte[] content, int pieceSize) throws IOException {
+        File file = new File(dir, name + BlockCompressedFile.EXTENSION);
+        try (BlockCompressedFile.Writer writer = new BlockCompressedFile.Writer(file, BLOCK_SIZE)) {
+            for (int off = 0; off < content.length; off += pieceSize) {
+                writer.write(content, off, Math.min(pieceSize, content.length - off));
+            }
+            assertEquals(content.length, writer.getSize());
+        }
+        return file;
+    }
+
+    private static void assertRange(byte[] content, ByteSource source, long position, int length) throws IOException {
+        byte[] buffer = new byte[length + 2];
+        int read = source.readFully(position, buffer, 1, length);
+        int expected = (int) Math.max(0, Math.min(length, content.length - position));
+        assertEquals(expected, read, "bytes read at " + position);
+        assertArrayEquals(Arrays.copyOfRange(content, (int) position, (int) position + expected),
+                Arrays.copyOfRange(buffer, 1, 1 + expected), "bytes at " + position);
+        assertEquals(0, buffer[0]);
+    }
+
+    @Test
+    void roundTripsWholeAndRandomRanges() throws IOException {
+        byte[] content = content(300_000, 1);
+        File file = write("bugreport.txt", content, 1000);
+        try (BlockCompressedFile source = BlockCompressedFile.open(file, "bugreport.txt")) {
+            assertEquals("bugreport.txt", source.getName());
+            assertEquals(content.length, source.size());
+            assertRange(content, source, 0, content.length);
+
+            Random random = new Random(2);
+            for (int i = 0; i < 500; i++) {
+                long position = random.nextInt(content.length);
+                assertRange(content, source, position, random.nextInt(3 * BLOCK_SIZE));
+            }
+        }
+        assertTrue(file.length() < content.length);
+    }
+
+    @Test
+    void readsAcrossBlockBoundaries() throws IOException {
+        byte[] content = content(10 * BLOCK_SIZE + 17, 3);
+        try (BlockCompressedFile source = BlockCompressedFile.open(write("b.txt", content, 7), "b.txt")) {
+            for (int block = 1; block <= 10; block++) {
+                long boundary = (long) block * BLOCK_SIZE;
+                assertRange(content, source, boundary - 1, 2);
+                assertRange(content, source, boundary - 100, BLOCK_SIZE + 200);
+                assertRange(content, source, boundary, 1);
+            }
+            // Reads that run into the end stop there, reads past it return -1
+            assertRange(content, source, content.length - 5, 100);
+            assertEquals(-1, source.read(content.length, new byte[10], 0, 10));
+        }
+    }
+
+    @Test
+    void handlesEmptyAndExactMultipleSizes() throws IOException {
+        try (BlockCompressedFile empty = BlockCompressedFile.open(write("empty.txt", new byte[0], 1), "empty.txt")) {
+            assertEquals(0, empty.size());
+            assertEquals(-1, empty.read(0, new byte[1], 0, 1));
+        }
+        byte[] content = content(4 * BLOCK_SIZE, 4);
+        try (BlockCompressedFile exact = BlockCompressedFile.open(write("exact.txt", content, BLOCK_SIZE), "exact.txt")) {
+            assertRange(content, exact, 0, content.length);
+            assertRange(content, exact, 3 * BLOCK_SIZE, BLOCK_SIZE);
+        }
+    }
+
+    @Test
+    void servesConcurrentReaders() throws Exception {
+        byte[] content = content(200 * BLOCK_SIZE, 5);
+        BlockCompressedFile source = BlockCompressedFile.open(write("c.txt", content, 65536), "c.txt");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                long seed = t;
+                futures.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 300; i++) {
+                        assertRange(content, source, random.nextInt(content.length), random.nextInt(2 * BLOCK_SIZE));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+            source.close();
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        File plain = new File(dir, "plain.txt");
+        Files.write(plain.toPath(), "not a block-compressed file".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> BlockCompressedFile.open(plain, "plain.txt"));
+    }
+}
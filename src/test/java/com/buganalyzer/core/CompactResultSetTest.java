@@ -0,0 +1,94 @@
+package com.buganalyzer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactResultSetTest {
+
+    @TempDir
+    File dir;
+
+    // Counts the reads that reach the file
+    private static class CountingSource extends FileByteSource {
+        int reads;
+
+        CountingSource(File file) {
+            super(file);
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            reads++;
+            return super.read(position, buffer, offset, length);
+        }
+    }
+
+    // Writes the lines and records every one of them as a hit
+    private File write(String name, List<String> lines, String eol, boolean trailingNewline,
+                       int fileId, CompactResultSet results) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        long offset = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            results.add(fileId, i + 1, offset);
+            String line = lines.get(i) + (i + 1 < lines.size() || trailingNewline ? eol : "");
+            sb.append(line);
+            offset += line.getBytes(StandardCharsets.UTF_8).length;
+        }
+        File file = new File(dir, name);
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    void scansTheSameLinesAsSingleReads() throws IOException {
+        List<String> first = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            first.add(i == 1500 ? "long " + "x".repeat(3 * 1024 * 1024) : "line " + i + " 日志");
+        }
+        List<String> second = List.of("crlf one", "", "crlf three 日志", "last without newline");
+        List<ByteSource> sources = new ArrayList<>();
+        CompactResultSet results = new CompactResultSet(sources);
+        sources.add(new CountingSource(write("a.txt", first, "\n", true, 0, results)));
+        sources.add(new CountingSource(write("b.txt", second, "\r\n", false, 1, results)));
+
+        IntFunction<String> scanner = results.newLineScanner();
+        List<String> expected = new ArrayList<>(first);
+        expected.addAll(second);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(expected.get(i), scanner.apply(i), "hit " + i);
+            assertEquals(expected.get(i), results.getLine(i), "hit " + i);
+        }
+        ByteSource.closeAll(sources);
+    }
+
+    @Test
+    void readsHitsInWindowsRatherThanOneByOne() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            lines.add("hit " + i + " lorem ipsum dolor sit amet");
+        }
+        List<ByteSource> sources = new ArrayList<>();
+        CompactResultSet results = new CompactResultSet(sources);
+        CountingSource source = new CountingSource(write("hits.txt", lines, "\n", true, 0, results));
+        sources.add(source);
+
+        IntFunction<String> scanner = results.newLineScanner();
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(lines.get(i), scanner.apply(i));
+        }
+        // About 3.5 MB through a 1 MB window
+        assertTrue(source.reads < 20, source.reads + " reads");
+        source.close();
+        assertThrows(IOException.class, () -> source.read(0, new byte[1], 0, 1));
+    }
+}
@@ -0,0 +1,177 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.FileMetadata;
+import com.buganalyzer.model.ProjectManifest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentStoreTest {
+
+    private static final long TWO_DAYS = 2L * 24 * 60 * 60 * 1000;
+
+    @TempDir
+    File dir;
+
+    private ContentStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new ContentStore(new File(dir, "store"));
+    }
+
+    private static long crcOf(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    // Stages the content the way an import does and commits it
+    private FileMetadata commit(String text) throws IOException {
+        return commit(text, store.newStaging());
+    }
+
+    private FileMetadata commit(String text, File staging) throws IOException {
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        FileUtils.writeByteArrayToFile(new File(staging, ContentStore.CONTENT_NAME), content);
+        FileMetadata metadata = new FileMetadata(ContentStore.CONTENT_NAME, content.length, ContentStore.CONTENT_NAME,
+                "bugreport.txt", FileMetadata.FileType.BUGREPORT);
+        byte[] sha256 = ContentStore.newDigest().digest(content);
+        return store.commit(staging, sha256, content.length, crcOf(content), metadata);
+    }
+
+    private FileMetadata lookup(String text, byte[] head) throws IOException {
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        return store.lookup(content.length, crcOf(content), () -> head);
+    }
+
+    private static void age(File file) {
+        assertTrue(file.setLastModified(System.currentTimeMillis() - TWO_DAYS));
+    }
+
+    private File objectsDir() {
+        return new File(dir, "store/objects");
+    }
+
+    private File aliasesDir() {
+        return new File(dir, "store/aliases");
+    }
+
+    // A project file pointing at the objects, saved the way the app saves projects
+    private File saveProject(String name, FileMetadata... stored) throws IOException {
+        ProjectManifest manifest = new ProjectManifest(name, name + ".zip");
+        for (FileMetadata metadata : stored) {
+            manifest.addFile(ContentStore.forProject(metadata, "bugreport.txt", "bugreport.txt"));
+        }
+        File projectDir = new File(dir, name);
+        assertTrue(projectDir.mkdirs());
+        ProjectManager.saveProject(manifest, projectDir);
+        return new File(projectDir, name + ".json");
+    }
+
+    @Test
+    void storesTheSameContentOnce() throws IOException {
+        FileMetadata first = commit("same report\n");
+        File staging = store.newStaging();
+        FileMetadata second = commit("same report\n", staging);
+
+        assertEquals(first.getStoreDir(), second.getStoreDir());
+        assertFalse(staging.exists());
+        assertEquals(1, objectsDir().listFiles(File::isDirectory).length);
+        assertEquals("same report\n", FileUtils.readFileToString(
+                new File(second.getStoreDir(), ContentStore.CONTENT_NAME), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void rejectsAnAliasWhoseContentStartsDifferently() throws IOException {
+        String text = "01-01 10:00:00 I first line\n";
+        FileMetadata stored = commit(text);
+        byte[] head = text.getBytes(StandardCharsets.UTF_8);
+
+        FileMetadata found = lookup(text, head);
+        assertNotNull(found);
+        assertEquals(stored.getStoreDir(), found.getStoreDir());
+
+        // Same size and CRC-32 but different first bytes: a collision must not reuse the object
+        byte[] other = Arrays.copyOf(head, head.length);
+        other[0] = 'X';
+        assertNull(lookup(text, other));
+
+        // Without an alias the head is never read
+        assertNull(store.lookup(head.length + 1, 0, () -> fail("read the head without a candidate")));
+    }
+
+    @Test
+    void purgeKeepsRecentAndPossiblyUsedObjects() throws IOException {
+        FileMetadata recent = commit("recent\n");
+        FileMetadata used = commit("used by a project\n");
+        FileMetadata unreadable = commit("used by a damaged project\n");
+        FileMetadata known = commit("used by a known project\n");
+
+        saveProject("kept", used);
+        File damaged = saveProject("damaged", unreadable);
+        FileUtils.writeStringToFile(damaged, "{ not json", StandardCharsets.UTF_8);
+        ProjectManifest recentProject = new ProjectManifest("recent", "recent.zip");
+        recentProject.addFile(ContentStore.forProject(known, "bugreport.txt", "bugreport.txt"));
+        File knownDir = new File(dir, "known");
+        assertTrue(knownDir.mkdirs());
+        File knownFile = new File(knownDir, "known.json");
+        FileUtils.writeStringToFile(knownFile, new ObjectMapper()
+                .writeValueAsString(recentProject), StandardCharsets.UTF_8);
+        for (FileMetadata metadata : List.of(used, unreadable, known)) {
+            age(new File(metadata.getStoreDir()));
+        }
+
+        ContentStore.Usage removed = store.purge(List.of(knownFile));
+        assertEquals(0, removed.getUnreferencedCount());
+        assertEquals(4, removed.getObjectCount());
+        for (FileMetadata metadata : List.of(recent, used, unreadable, known)) {
+            assertTrue(new File(metadata.getStoreDir()).isDirectory(), metadata.getStoreDir());
+        }
+        assertEquals(4, aliasesDir().listFiles().length);
+    }
+
+    @Test
+    void purgeRemovesObjectsNoProjectUsesWithTheirAliases() throws IOException {
+        FileMetadata kept = commit("still used\n");
+        FileMetadata dropped = commit("no longer used\n");
+        FileMetadata orphan = commit("never referenced\n");
+
+        // The project used both, then was saved again without the second report
+        File project = saveProject("project", kept, dropped);
+        ProjectManifest manifest = ProjectManager.loadProject(project);
+        manifest.getFiles().remove(1);
+        ProjectManager.saveProject(manifest, project.getParentFile());
+        for (FileMetadata metadata : List.of(kept, dropped, orphan)) {
+            age(new File(metadata.getStoreDir()));
+        }
+        File staleStaging = store.newStaging();
+        age(staleStaging);
+        File liveStaging = store.newStaging();
+
+        assertEquals(2, store.usage(List.of()).getUnreferencedCount());
+        ContentStore.Usage removed = store.purge(List.of());
+        assertEquals(2, removed.getUnreferencedCount());
+        assertEquals(1, removed.getObjectCount());
+
+        assertTrue(new File(kept.getStoreDir()).isDirectory());
+        assertFalse(new File(dropped.getStoreDir()).exists());
+        assertFalse(new File(orphan.getStoreDir()).exists());
+        assertEquals(1, aliasesDir().listFiles().length);
+        assertNotNull(lookup("still used\n", "still used\n".getBytes(StandardCharsets.UTF_8)));
+        assertNull(lookup("no longer used\n", "no longer used\n".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(staleStaging.exists());
+        assertTrue(liveStaging.exists());
+    }
+}
@@ -0,0 +1,193 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.FilePart;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSplitterTest {
+
+    private static LineIndex linesOf(byte[] content) {
+        LineIndex.Builder builder = new LineIndex.Builder();
+        builder.update(content, 0, content.length);
+        return builder.toIndex(content.length, 0);
+    }
+
+    private static SectionIndex sectionsOf(byte[] content) {
+        SectionIndex.Builder builder = new SectionIndex.Builder();
+        builder.update(content, 0, content.length);
+        return builder.toIndex();
+    }
+
+    // Lines of mixed ASCII and three-byte UTF-8 characters
+    private static byte[] text(int lines, String eol) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("line ").append(i).append(" 日志内容 ").append("x".repeat(i % 50)).append(eol);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Parts must be contiguous, cover the whole file, start on line starts and decode cleanly
+    private static void assertLineAligned(byte[] content, LineIndex index, List<FilePart> parts) {
+        long expected = 0;
+        for (FilePart part : parts) {
+            assertEquals(expected, part.getOffset());
+            assertEquals(index.lineStart(part.getFirstLine()), part.getOffset());
+            assertTrue(part.getOffset() == 0 || content[(int) part.getOffset() - 1] == '\n');
+            byte[] bytes = Arrays.copyOfRange(content, (int) part.getOffset(), (int) (part.getOffset() + part.getLength()));
+            String decoded = new String(bytes, StandardCharsets.UTF_8);
+            assertArrayEquals(bytes, decoded.getBytes(StandardCharsets.UTF_8), "part cuts a UTF-8 character");
+            expected += part.getLength();
+        }
+        assertEquals(content.length, expected);
+    }
+
+    private static List<FilePart> plan(byte[] content, SectionIndex sections, FileSplitter.SplitPolicy policy) {
+        return FileSplitter.planParts(new File("bugreport.txt"), linesOf(content), sections, policy);
+    }
+
+    @Test
+    void leavesSmallFilesWhole() {
+        byte[] content = text(100, "\n");
+        assertNull(plan(content, null, FileSplitter.bySize(content.length)));
+        assertNull(plan(content, null, FileSplitter.byLines(100)));
+        assertNull(plan(content, null, FileSplitter.bySection(content.length)));
+        assertNull(plan(new byte[0], null, FileSplitter.bySize(1)));
+    }
+
+    @Test
+    void splitsBySizeAtTheFirstLineBreakPastThePartSize() {
+        byte[] content = text(20_000, "\n");
+        LineIndex index = linesOf(content);
+        long partBytes = 64 * 1024;
+        List<FilePart> parts = plan(content, null, FileSplitter.bySize(partBytes));
+        assertTrue(parts.size() > 5);
+        assertLineAligned(content, index, parts);
+        for (int i = 0; i + 1 < parts.size(); i++) {
+            FilePart part = parts.get(i);
+            assertTrue(part.getLength() >= partBytes);
+            // Dropping the last line would make the part too short
+            long withoutLastLine = index.lineStart(parts.get(i + 1).getFirstLine() - 1) - part.getOffset();
+            assertTrue(withoutLastLine < partBytes);
+        }
+        assertTrue(parts.get(parts.size() - 1).getLength() <= partBytes);
+    }
+
+    @Test
+    void keepsLinesLongerThanThePartWhole() {
+        String longLine = "y".repeat(10_000);
+        byte[] content = ("a\n" + longLine + "\nb\n" + longLine + "\nc\n").getBytes(StandardCharsets.UTF_8);
+        List<FilePart> parts = plan(content, null, FileSplitter.bySize(1000));
+        assertLineAligned(content, linesOf(content), parts);
+        for (FilePart part : parts) {
+            assertTrue(part.getLength() <= 10_003);
+        }
+    }
+
+    @Test
+    void splitsByLineCount() {
+        byte[] content = text(1001, "\n");
+        List<FilePart> parts = plan(content, null, FileSplitter.byLines(250));
+        assertEquals(5, parts.size());
+        assertEquals(List.of(1, 251, 501, 751, 1001), firstLines(parts));
+        assertLineAligned(content, linesOf(content), parts);
+    }
+
+    @Test
+    void handlesCrlfAndAMissingTrailingNewline() {
+        byte[] crlf = text(5000, "\r\n");
+        byte[] content = Arrays.copyOf(crlf, crlf.length - 2);
+        LineIndex index = linesOf(content);
+        for (FileSplitter.SplitPolicy policy : List.of(FileSplitter.bySize(10_000), FileSplitter.byLines(333))) {
+            List<FilePart> parts = plan(content, null, policy);
+            assertLineAligned(content, index, parts);
+            FilePart last = parts.get(parts.size() - 1);
+            assertEquals(content.length, last.getOffset() + last.getLength());
+        }
+    }
+
+    @Test
+    void startsPartsOnSectionHeadersAndPacksSmallSections() {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < 12; s++) {
+            String title = "SECTION " + s + " (cmd)";
+            sb.append("------ ").append(title).append(" ------\n");
+            for (int i = 0; i < 100; i++) {
+                sb.append("section ").append(s).append(" line ").append(i).append('\n');
+            }
+        }
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        SectionIndex sections = sectionsOf(content);
+        LineIndex index = linesOf(content);
+        long sectionBytes = sections.getSections().get(1).getOffset();
+
+        // Three sections fit in a part, a fourth doesn't; the last three are slightly longer
+        // but still fit together
+        List<FilePart> parts = plan(content, sections, FileSplitter.bySection(sectionBytes * 3 + 1000));
+        assertLineAligned(content, index, parts);
+        assertEquals(4, parts.size());
+        for (FilePart part : parts) {
+            String firstLine = new String(content, (int) part.getOffset(), 40, StandardCharsets.UTF_8);
+            assertTrue(firstLine.startsWith("------ SECTION "), firstLine);
+        }
+    }
+
+    @Test
+    void cutsOversizedSectionsBySize() {
+        StringBuilder sb = new StringBuilder("------ SMALL (a) ------\nx\n------ HUGE (b) ------\n");
+        for (int i = 0; i < 5000; i++) {
+            sb.append("huge line ").append(i).append('\n');
+        }
+        sb.append("------ TAIL (c) ------\nz\n");
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        SectionIndex sections = sectionsOf(content);
+        List<FilePart> parts = plan(content, sections, FileSplitter.bySection(8 * 1024));
+        assertLineAligned(content, linesOf(content), parts);
+        assertTrue(parts.size() > 5);
+        for (FilePart part : parts) {
+            assertTrue(part.getLength() <= 8 * 1024 + 20);
+        }
+    }
+
+    @Test
+    void leavesTheRestInOnePartOnceItFits() {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < 5; s++) {
+            sb.append("------ S").append(s).append(" (x) ------\n");
+            sb.append("body\n".repeat(200));
+        }
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        SectionIndex sections = sectionsOf(content);
+        // Room for three sections: the first part takes three and the last two fit together,
+        // so the fifth section's header doesn't start a part of its own
+        long sectionBytes = sections.getSections().get(1).getOffset();
+        List<FilePart> parts = plan(content, sections, FileSplitter.bySection(sectionBytes * 3));
+        assertEquals(2, parts.size());
+        assertEquals(sections.getSections().get(3).getLine(), parts.get(1).getFirstLine());
+    }
+
+    @Test
+    void namesPartsAfterTheFile() {
+        byte[] content = text(10, "\n");
+        List<FilePart> parts = plan(content, null, FileSplitter.byLines(5));
+        assertEquals("bugreport_sub1.txt", parts.get(0).getName());
+        assertEquals("bugreport_sub2.txt", parts.get(1).getName());
+        assertEquals("log_sub3", FileSplitter.partName("log", 3));
+        assertEquals("size:100", FileSplitter.bySize(100).toString());
+    }
+
+    private static List<Integer> firstLines(List<FilePart> parts) {
+        List<Integer> lines = new ArrayList<>();
+        for (FilePart part : parts) {
+            lines.add(part.getFirstLine());
+        }
+        return lines;
+    }
+}
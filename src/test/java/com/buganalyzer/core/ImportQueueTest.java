@@ -0,0 +1,83 @@
+package com.buganalyzer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImportQueueTest {
+
+    @TempDir
+    File dir;
+
+    private File writeZip(String name, int lines) throws IOException {
+        File zip = new File(dir, name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("bugreport-" + name + ".txt"));
+            for (int i = 0; i < lines; i++) {
+                out.write(("line " + i + " of " + name + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            out.closeEntry();
+        }
+        return zip;
+    }
+
+    private static void awaitAll(ImportQueue.Job... jobs) throws InterruptedException {
+        for (ImportQueue.Job job : jobs) {
+            for (int i = 0; i < 600 && !job.isFinished(); i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(ImportQueue.State.DONE, job.getState(), job.getZipFile().getName());
+        }
+    }
+
+    @Test
+    void returnsTheQueuedJobForTheSameZip() throws Exception {
+        ImportQueue queue = new ImportQueue(2);
+        File zip = writeZip("twice.zip", 200_000);
+        ImportQueue.Job first = queue.submit(zip, new ImportOptions());
+        assertSame(first, queue.submit(new File(dir, "./twice.zip"), new ImportOptions()));
+        awaitAll(first);
+        // Once finished, the zip can be imported again
+        ImportQueue.Job again = queue.submit(zip, new ImportOptions());
+        assertNotSame(first, again);
+        awaitAll(again);
+    }
+
+    @Test
+    void runsJobsForTheSameProjectFolderOneAtATime() throws Exception {
+        ImportQueue queue = new ImportQueue(2);
+        // Both import into the folder "same"
+        File lower = writeZip("same.zip", 200_000);
+        File upper = writeZip("same.ZIP", 200_000);
+        File other = writeZip("other.zip", 200_000);
+
+        List<ImportQueue.Job> same = new CopyOnWriteArrayList<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        queue.setListener(job -> {
+            if (job.getState() != ImportQueue.State.RUNNING || !same.contains(job)) return;
+            for (ImportQueue.Job peer : same) {
+                if (peer != job && peer.getState() == ImportQueue.State.RUNNING) overlaps.incrementAndGet();
+            }
+        });
+        ImportQueue.Job a = queue.submit(lower, new ImportOptions());
+        same.add(a);
+        ImportQueue.Job b = queue.submit(upper, new ImportOptions());
+        same.add(b);
+        ImportQueue.Job c = queue.submit(other, new ImportOptions());
+        // The other folder's job doesn't wait behind them
+        assertNotEquals(ImportQueue.State.QUEUED, c.getState());
+        awaitAll(a, b, c);
+        assertEquals(0, overlaps.get());
+    }
+}
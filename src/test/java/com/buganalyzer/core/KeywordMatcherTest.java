@@ -0,0 +1,176 @@
+package com.buganalyzer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeywordMatcherTest {
+
+    private static List<String> found(KeywordMatcher matcher, String text) {
+        List<String> keywords = new ArrayList<>();
+        for (int id : matcher.findKeywordIds(text)) {
+            keywords.add(matcher.getKeyword(id));
+        }
+        return keywords;
+    }
+
+    @Test
+    void findsKeywordsInOrderOfFirstOccurrence() {
+        KeywordMatcher matcher = KeywordMatcher.forKeywords(List.of("ANR", "crash", "FATAL"), false);
+        assertEquals(List.of("FATAL", "crash", "ANR"), found(matcher, "FATAL EXCEPTION: crash then ANR, crash again"));
+        assertTrue(matcher.matches("an ANR"));
+        assertFalse(matcher.matches("an anr"));
+    }
+
+    @Test
+    void followsFailLinksIntoOverlappingKeywords() {
+        // The classic he/she/his/hers set: "she" ends inside "hers" only through fail links
+        KeywordMatcher matcher = KeywordMatcher.forKeywords(List.of("he", "she", "his", "hers"), false);
+        assertEquals(List.of("she", "he", "hers"), found(matcher, "ushers"));
+        assertEquals(List.of("his"), found(matcher, "ahishe".substring(0, 4)));
+    }
+
+    @Test
+    void reportsKeywordsThatAreSuffixesOfOthers() {
+        KeywordMatcher matcher = KeywordMatcher.forKeywords(List.of("abcd", "bc", "c"), false);
+        assertEquals(List.of("bc", "c"), found(matcher, "abce"));
+        assertEquals(List.of("bc", "c", "abcd"), found(matcher, "abcd"));
+    }
+
+    @Test
+    void ignoresCaseWhenAsked() {
+        KeywordMatcher matcher = KeywordMatcher.forKeywords(List.of("OutOfMemoryError"), true);
+        assertTrue(matcher.matches("java.lang.outofmemoryerror: failed"));
+        assertTrue(matcher.matches("OUTOFMEMORYERROR"));
+        assertEquals("OutOfMemoryError", matcher.getKeyword(0));
+    }
+
+    @Test
+    void matchesNonAsciiKeywords() {
+        KeywordMatcher matcher = KeywordMatcher.forKeywords(List.of("崩溃", "应用无响应", "Ärger", "无响"), true);
+        assertEquals(List.of("崩溃", "无响", "应用无响应"), found(matcher, "系统崩溃, 应用无响应"));
+        assertEquals(List.of("Ärger"), found(matcher, "viel ärger"));
+        assertFalse(matcher.matches("应用有响应"));
+    }
+
+    @Test
+    void followsFailLinksThroughNonAsciiNodes() {
+        // After "应用无" fails on "法", the automaton must fall back to the "无" node, not the root
+        KeywordMatcher matcher = KeywordMatcher.forKeywords(List.of("应用无响应", "无法"), false);
+        assertEquals(List.of("无法"), found(matcher, "应用无法启动"));
+        KeywordMatcher mixed = KeywordMatcher.forKeywords(List.of("a中b", "中bc"), false);
+        assertEquals(List.of("a中b", "中bc"), found(mixed, "xa中bc"));
+    }
+
+    @Test
+    void mapsKeywordsToEveryCategoryTheyBelongTo() {
+        Map<String, List<String>> categories = new LinkedHashMap<>();
+        categories.put("Crash", List.of("FATAL", "crash"));
+        categories.put("Power", List.of("wakelock", "Crash"));
+        KeywordMatcher matcher = KeywordMatcher.forCategories(categories, true);
+
+        // "crash" and "Crash" fold to one keyword that belongs to both categories
+        assertEquals(3, matcher.getKeywords().size());
+        int[] ids = matcher.findKeywordIds("app crash");
+        assertEquals(1, ids.length);
+        assertArrayEquals(new int[]{0, 1}, matcher.categoryIdsOf(ids));
+        assertArrayEquals(new int[]{1}, matcher.categoryIdsOf(matcher.findKeywordIds("wakelock held")));
+    }
+
+    @Test
+    void emptyKeywordsNeverMatch() {
+        KeywordMatcher matcher = KeywordMatcher.forKeywords(Arrays.asList("", null), false);
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.matches("anything"));
+        assertEquals(0, matcher.findKeywordIds("anything").length);
+        assertFalse(KeywordMatcher.forKeywords(List.of("x"), false).matches(""));
+    }
+
+    @Test
+    void agreesWithNaiveSearch() {
+        Random random = new Random(42);
+        String alphabet = "abAB中文";
+        for (int round = 0; round < 200; round++) {
+            List<String> keywords = new ArrayList<>();
+            for (int i = 0; i < 1 + random.nextInt(6); i++) {
+                keywords.add(randomText(random, alphabet, 1 + random.nextInt(4)));
+            }
+            boolean ignoreCase = random.nextBoolean();
+            KeywordMatcher matcher = KeywordMatcher.forKeywords(keywords, ignoreCase);
+            String text = randomText(random, alphabet, random.nextInt(40));
+
+            Set<String> expected = new HashSet<>();
+            for (String keyword : matcher.getKeywords()) {
+                String haystack = ignoreCase ? text.toLowerCase(Locale.ROOT) : text;
+                String needle = ignoreCase ? keyword.toLowerCase(Locale.ROOT) : keyword;
+                if (haystack.contains(needle)) expected.add(keyword);
+            }
+            assertEquals(expected, new HashSet<>(found(matcher, text)), keywords + " in " + text);
+            assertEquals(!expected.isEmpty(), matcher.matches(text));
+        }
+    }
+
+    @Test
+    void matchesRegexKeywordsBesideLiteralOnes() {
+        KeywordMatcher matcher = KeywordMatcher.forCategories(Map.of(
+                "crash", List.of("FATAL EXCEPTION", "am_crash.*NullPointer"),
+                "anr", List.of("ANR in \\S+", "watchdog")), true);
+        assertTrue(matcher.isPattern(matcher.getKeywords().indexOf("am_crash.*NullPointer")));
+        assertFalse(matcher.isPattern(matcher.getKeywords().indexOf("watchdog")));
+
+        assertEquals(List.of("ANR in \\S+", "watchdog"), found(matcher, "anr in com.example, WATCHDOG killing"));
+        assertEquals(List.of("watchdog", "am_crash.*NullPointer", "FATAL EXCEPTION"),
+                found(matcher, "watchdog: am_crash [NullPointerException] FATAL EXCEPTION"));
+        assertTrue(matcher.matches("AM_CRASH: java.lang.nullpointerexception"));
+        assertFalse(matcher.matches("am_crash without the exception"));
+        int[] ids = matcher.findKeywordIds("ANR in system_server");
+        assertEquals(1, ids.length);
+        assertEquals("anr", matcher.getCategories().get(matcher.categoryIdsOf(ids)[0]));
+    }
+
+    @Test
+    void keepsKeywordsThatAreNotValidRegexesLiteral() {
+        KeywordMatcher matcher = KeywordMatcher.forKeywords(List.of("Fatal signal (11", "[unterminated", "a.b"), false);
+        assertFalse(matcher.isPattern(0));
+        assertFalse(matcher.isPattern(1));
+        assertTrue(matcher.isPattern(2));
+        assertEquals(List.of("Fatal signal (11"), found(matcher, "Fatal signal (11) SIGSEGV"));
+        assertEquals(List.of("[unterminated"), found(matcher, "x [unterminated y"));
+        assertEquals(List.of("a.b"), found(matcher, "axb"));
+    }
+
+    @Test
+    void agreesWithANaiveSearchOverManyNonAsciiKeywords() {
+        Random random = new Random(7);
+        StringBuilder alphabet = new StringBuilder("aB");
+        for (char c = '\u4e00'; c < '\u4e00' + 1500; c++) alphabet.append(c);
+        // A small set gets every non-ASCII move precomputed, a big one follows fail links
+        for (int keywordCount : new int[]{50, 3000}) {
+            List<String> keywords = new ArrayList<>();
+            for (int i = 0; i < keywordCount; i++) {
+                keywords.add(randomText(random, alphabet.substring(0, 40), 1 + random.nextInt(3))
+                        + randomText(random, alphabet.toString(), random.nextInt(3)));
+            }
+            KeywordMatcher matcher = KeywordMatcher.forKeywords(keywords, true);
+            assertEquals(keywordCount == 50, matcher.hasCompleteOtherMoves());
+            for (int round = 0; round < 300; round++) {
+                String text = randomText(random, alphabet.substring(0, 60), random.nextInt(80));
+                Set<String> expected = new HashSet<>();
+                for (String keyword : matcher.getKeywords()) {
+                    if (text.toLowerCase(Locale.ROOT).contains(keyword.toLowerCase(Locale.ROOT))) expected.add(keyword);
+                }
+                assertEquals(expected, new HashSet<>(found(matcher, text)), text);
+            }
+        }
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
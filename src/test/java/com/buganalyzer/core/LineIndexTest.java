@@ -0,0 +1,165 @@
+package com.buganalyzer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineIndexTest {
+
+    @TempDir
+    File dir;
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    // Random lines, some empty and some long, so deltas vary widely within each checkpoint
+    private static byte[] randomLines(Random random, int lines, String eol) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            int length = random.nextInt(10) == 0 ? random.nextInt(5000) : random.nextInt(80);
+            for (int j = 0; j < length; j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            sb.append(eol);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Long> lineStarts(byte[] content) {
+        List<Long> starts = new ArrayList<>();
+        for (int i = 0; i < content.length; i++) {
+            if (i == 0 || content[i - 1] == '\n') starts.add((long) i);
+        }
+        return starts;
+    }
+
+    private static void assertMatches(byte[] content, LineIndex index) {
+        List<Long> starts = lineStarts(content);
+        assertEquals(starts.size(), index.getLineCount());
+        assertEquals(content.length, index.getFileSize());
+        for (int line = 1; line <= starts.size(); line++) {
+            long start = starts.get(line - 1);
+            long end = line < starts.size() ? starts.get(line) : content.length;
+            assertEquals(start, index.lineStart(line), "start of line " + line);
+            assertEquals(end, index.lineEnd(line), "end of line " + line);
+            assertEquals(line, index.lineAt(start));
+            assertEquals(line, index.lineAt(end - 1));
+        }
+    }
+
+    @Test
+    void mapsLinesAcrossManyCheckpoints() throws IOException {
+        byte[] content = randomLines(new Random(7), 5000, "\n");
+        File file = write("bugreport.txt", content);
+        File indexFile = new File(dir, "bugreport.txt" + LineIndex.EXTENSION);
+        LineIndex.build(file, indexFile);
+
+        LineIndex index = LineIndex.open(indexFile);
+        assertTrue(index.isFresh(file));
+        assertMatches(content, index);
+        assertMatches(content, LineIndex.buildInMemory(file));
+    }
+
+    @Test
+    void countsCrlfLinesOnceAndKeepsTheCarriageReturn() throws IOException {
+        byte[] content = "first\r\nsecond\r\n\r\nlast\r\n".getBytes(StandardCharsets.UTF_8);
+        LineIndex index = LineIndex.buildInMemory(write("crlf.txt", content));
+        assertEquals(4, index.getLineCount());
+        assertEquals(7, index.lineStart(2));
+        assertEquals(15, index.lineEnd(2));
+        assertEquals(17, index.lineStart(4));
+        assertMatches(content, index);
+        assertMatches(randomLines(new Random(3), 3000, "\r\n"),
+                LineIndex.buildInMemory(write("random.txt", randomLines(new Random(3), 3000, "\r\n"))));
+    }
+
+    @Test
+    void countsALastLineWithoutTrailingNewline() throws IOException {
+        LineIndex withNewline = LineIndex.buildInMemory(write("a.txt", "a\nb\n".getBytes(StandardCharsets.UTF_8)));
+        LineIndex without = LineIndex.buildInMemory(write("b.txt", "a\nb".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2, withNewline.getLineCount());
+        assertEquals(2, without.getLineCount());
+        assertEquals(3, without.lineEnd(2));
+        assertEquals(2, without.lineAt(2));
+    }
+
+    @Test
+    void indexesEmptyFiles() throws IOException {
+        File file = write("empty.txt", new byte[0]);
+        File indexFile = new File(dir, "empty.txt" + LineIndex.EXTENSION);
+        LineIndex.build(file, indexFile);
+        LineIndex index = LineIndex.open(indexFile);
+        assertEquals(0, index.getLineCount());
+        assertEquals(0, index.getFileSize());
+    }
+
+    @Test
+    void keepsCheckpointsExactAcrossLongLines() throws IOException {
+        // Every line is 100 KB, so each checkpoint's deltas reach about 100 MB
+        byte[] line = new byte[100 * 1024];
+        Arrays.fill(line, (byte) 'x');
+        line[line.length - 1] = '\n';
+        LineIndex.Builder builder = new LineIndex.Builder();
+        for (int i = 0; i < 2500; i++) {
+            builder.update(line, 0, line.length);
+        }
+        File indexFile = new File(dir, "long" + LineIndex.EXTENSION);
+        long size = 2500L * line.length;
+        builder.write(indexFile, size, 0);
+
+        LineIndex index = LineIndex.open(indexFile);
+        assertEquals(2500, index.getLineCount());
+        for (int l : new int[]{1, 1024, 1025, 1026, 2048, 2049, 2500}) {
+            assertEquals((long) (l - 1) * line.length, index.lineStart(l));
+            assertEquals(l, index.lineAt((long) (l - 1) * line.length + 5));
+        }
+        assertEquals(size, index.lineEnd(2500));
+        assertTrue(index.isFresh(size, 0));
+    }
+
+    @Test
+    void builderFedInPiecesMatchesAWholeScan() throws IOException {
+        byte[] content = randomLines(new Random(11), 4000, "\n");
+        LineIndex.Builder builder = new LineIndex.Builder();
+        Random random = new Random(5);
+        for (int off = 0; off < content.length; ) {
+            int length = Math.min(1 + random.nextInt(300), content.length - off);
+            builder.update(content, off, length);
+            off += length;
+        }
+        assertMatches(content, builder.toIndex(content.length, 0));
+    }
+
+    @Test
+    void snapshotsOnlyHoldCompleteLines() throws IOException {
+        byte[] content = randomLines(new Random(13), 3000, "\n");
+        byte[] partial = Arrays.copyOf(content, content.length - 10); // Ends mid-line
+        List<LineIndex> snapshots = new ArrayList<>();
+        LineIndex index = LineIndex.scanProgressively(new FileByteSource(write("p.txt", partial)), 4096, snapshots::add);
+        assertMatches(partial, index);
+        assertFalse(snapshots.isEmpty());
+
+        List<Long> starts = lineStarts(partial);
+        for (LineIndex snapshot : snapshots) {
+            int lines = snapshot.getLineCount();
+            assertTrue(lines < starts.size());
+            assertEquals(starts.get(lines), snapshot.getFileSize(), "snapshot ends where its next line starts");
+            for (int line = 1; line <= lines; line += 97) {
+                assertEquals(starts.get(line - 1), snapshot.lineStart(line));
+            }
+        }
+    }
+}
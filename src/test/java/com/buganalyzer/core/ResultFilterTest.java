@@ -0,0 +1,169 @@
+package com.buganalyzer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultFilterTest {
+
+    private static final List<String> ROWS = List.of(
+            "E ActivityManager: ANR in com.example",
+            "W WindowManager: window leaked",
+            "E AndroidRuntime: FATAL EXCEPTION: main",
+            "I ActivityManager: Start proc com.example",
+            "D 应用无响应 com.example",
+            "E AndroidRuntime: java.lang.NullPointerException");
+
+    // Counts how many rows the filter reads
+    private static class CountingRows implements IntFunction<String> {
+        final List<String> rows;
+        int reads;
+
+        CountingRows(List<String> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public String apply(int row) {
+            reads++;
+            return rows.get(row);
+        }
+    }
+
+    private static List<Integer> matches(ResultFilter filter, int rowCount) {
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < rowCount; row++) {
+            if (filter.indexOf(row) >= 0) rows.add(row);
+        }
+        return rows;
+    }
+
+    private static ResultFilter run(String text, boolean regex, boolean caseSensitive, boolean wholeWord) {
+        ResultFilter filter = new ResultFilter(text, regex, caseSensitive, wholeWord);
+        assertTrue(filter.run(null, ROWS::get, ROWS.size(), new SearchHandle()));
+        return filter;
+    }
+
+    @Test
+    void matchesLiteralRegexAndWholeWordQueries() {
+        assertEquals(List.of(0, 3), matches(run("activitymanager", false, false, false), ROWS.size()));
+        assertEquals(List.of(), matches(run("activitymanager", false, true, false), ROWS.size()));
+        assertEquals(List.of(2, 5), matches(run("^E Android.*(FATAL|Null)", true, true, false), ROWS.size()));
+        assertEquals(List.of(0, 3, 4), matches(run("example", false, false, true), ROWS.size()));
+        assertEquals(List.of(), matches(run("exam", false, false, true), ROWS.size()));
+        assertEquals(List.of(4), matches(run("无响应", false, false, false), ROWS.size()));
+        // Regex metacharacters in a literal query are taken literally
+        assertEquals(List.of(), matches(run("E.*main", false, false, false), ROWS.size()));
+        assertThrows(PatternSyntaxException.class, () -> new ResultFilter("(", true, false, false));
+    }
+
+    @Test
+    void onlyScansNewRowsForTheSameQuery() {
+        List<String> rows = new ArrayList<>(ROWS);
+        CountingRows counting = new CountingRows(rows);
+        ResultFilter first = new ResultFilter("example", false, false, false);
+        assertTrue(first.run(null, counting, 4, new SearchHandle()));
+        assertEquals(4, counting.reads);
+
+        counting.reads = 0;
+        ResultFilter second = new ResultFilter("example", false, false, false);
+        assertTrue(second.run(first, counting, rows.size(), new SearchHandle()));
+        assertEquals(2, counting.reads);
+        assertEquals(List.of(0, 3, 4), matches(second, rows.size()));
+        assertEquals(rows.size(), second.getScannedRows());
+        // The previous filter is only read
+        assertEquals(2, first.getMatchCount());
+    }
+
+    @Test
+    void narrowsAnExtendedLiteralToThePreviousMatches() {
+        CountingRows counting = new CountingRows(ROWS);
+        ResultFilter typed = new ResultFilter("e a", false, false, false);
+        typed.run(null, counting, ROWS.size(), new SearchHandle());
+        assertEquals(List.of(0, 2, 5), matches(typed, ROWS.size()));
+
+        counting.reads = 0;
+        ResultFilter more = new ResultFilter("E ANDROID", false, false, false);
+        assertTrue(more.run(typed, counting, ROWS.size(), new SearchHandle()));
+        assertEquals(3, counting.reads);
+        assertEquals(List.of(2, 5), matches(more, ROWS.size()));
+
+        // A regex, a case change or an unrelated query rescans everything
+        for (ResultFilter other : List.of(new ResultFilter("E Android", true, false, false),
+                new ResultFilter("E Android", false, true, false),
+                new ResultFilter("Window", false, false, false))) {
+            counting.reads = 0;
+            other.run(typed, counting, ROWS.size(), new SearchHandle());
+            assertEquals(ROWS.size(), counting.reads);
+        }
+    }
+
+    @Test
+    void incrementalRunsAgreeWithAFreshScan() {
+        Random random = new Random(17);
+        List<String> rows = new ArrayList<>();
+        String alphabet = "abcAB中 ";
+        ResultFilter previous = null;
+        String query = "";
+        for (int step = 0; step < 300; step++) {
+            for (int i = random.nextInt(20); i > 0; i--) {
+                StringBuilder row = new StringBuilder();
+                for (int j = random.nextInt(30); j > 0; j--) {
+                    row.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                rows.add(row.toString());
+            }
+            int change = random.nextInt(4);
+            if (change == 0 || query.isEmpty()) {
+                query += alphabet.charAt(random.nextInt(alphabet.length()));
+            } else if (change == 1) {
+                query = query.substring(0, query.length() - 1);
+            }
+            boolean caseSensitive = step % 50 < 25;
+
+            ResultFilter filter = new ResultFilter(query, false, caseSensitive, false);
+            assertTrue(filter.run(previous, rows::get, rows.size(), new SearchHandle()));
+            ResultFilter fresh = new ResultFilter(query, false, caseSensitive, false);
+            fresh.run(null, rows::get, rows.size(), new SearchHandle());
+            assertEquals(matches(fresh, rows.size()), matches(filter, rows.size()), "query '" + query + "'");
+            previous = filter;
+        }
+    }
+
+    @Test
+    void stopsWhenTheHandleIsCancelled() {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            rows.add("row " + i);
+        }
+        SearchHandle handle = new SearchHandle();
+        handle.cancel();
+        ResultFilter filter = new ResultFilter("row", false, false, false);
+        assertFalse(filter.run(null, rows::get, rows.size(), handle));
+        assertEquals(0, filter.getScannedRows());
+    }
+
+    @Test
+    void stepsThroughMatchesWithWrapAround() {
+        ResultFilter filter = run("E ", false, true, false); // Rows 0, 2, 5
+        assertEquals(2, filter.next(0));
+        assertEquals(5, filter.next(2));
+        assertEquals(0, filter.next(5));
+        assertEquals(2, filter.next(1));
+        assertEquals(5, filter.previous(0));
+        assertEquals(2, filter.previous(5));
+        assertEquals(0, filter.previous(1));
+        assertEquals(1, filter.indexOf(2));
+        assertEquals(-1, filter.indexOf(3));
+
+        ResultFilter none = run("nothing here", false, false, false);
+        assertEquals(-1, none.next(0));
+        assertEquals(-1, none.previous(0));
+    }
+}
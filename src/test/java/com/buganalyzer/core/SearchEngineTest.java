@@ -0,0 +1,243 @@
+package com.buganalyzer.core;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Files big enough to be searched as several chunks, so line numbers and offsets have to be
+// stitched back together across chunk boundaries
+class SearchEngineTest {
+
+    private static final int LINES = 350_000;
+    private static final int LONG_LINE = 200_000; // About 600 KB, longer than a scan window
+    private static final String MARK = "mark";
+
+    @TempDir
+    static File dir;
+    static File big;
+    static File crlf;
+    static List<String> expected; // "file:line:offset:content" of every marked line, in order
+
+    // Fixed-width lines, so marking a line doesn't move any chunk boundary
+    private static String line(int n, boolean marked, String eol) {
+        String tag = marked ? MARK : "----";
+        String filler = n == LONG_LINE ? "x".repeat(600_000) : "lorem ipsum dolor";
+        return String.format("L%08d 日志 %s %s", n, filler, n == LONG_LINE ? tag : "....") + " " + tag + eol;
+    }
+
+    private static File write(String name, String eol, Set<Integer> marked, boolean trailingNewline) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int n = 1; n <= LINES; n++) {
+            sb.append(line(n, marked.contains(n), n == LINES && !trailingNewline ? "" : eol));
+        }
+        File file = new File(dir, name);
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @BeforeAll
+    static void writeFiles() throws IOException {
+        Set<Integer> marked = new HashSet<>();
+        for (int n = 1; n <= LINES; n += 997) marked.add(n);
+        marked.add(LINES);
+        marked.add(LONG_LINE);
+        // Mark the lines on both sides of every chunk boundary
+        big = write("bugreport.txt", "\n", marked, true);
+        for (long[] chunk : SearchEngine.splitIntoChunks(big, 0, big.length(), 0)) {
+            int lineAfter = lineAt(big, chunk[1]);
+            marked.add(lineAfter - 1);
+            marked.add(lineAfter);
+        }
+        big = write("bugreport.txt", "\n", marked, true);
+        crlf = write("crlf.txt", "\r\n", marked, false);
+        assertTrue(SearchEngine.splitIntoChunks(big, 0, big.length(), 0).size() > 1);
+
+        expected = new ArrayList<>();
+        expected.addAll(naive(big, 0));
+        expected.addAll(naive(crlf, 1));
+    }
+
+    // 1-based line starting at or containing the offset
+    private static int lineAt(File file, long offset) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        int line = 1;
+        for (int i = 0; i < offset && i < content.length; i++) {
+            if (content[i] == '\n') line++;
+        }
+        return line;
+    }
+
+    private static List<String> naive(File file, int fileIndex) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        List<String> found = new ArrayList<>();
+        int line = 0;
+        for (int start = 0; start < content.length; ) {
+            int end = start;
+            while (end < content.length && content[end] != '\n') end++;
+            line++;
+            String text = new String(content, start, end - start, StandardCharsets.UTF_8);
+            if (text.endsWith("\r")) text = text.substring(0, text.length() - 1);
+            if (text.contains(MARK)) found.add(fileIndex + ":" + line + ":" + start + ":" + text);
+            start = end + 1;
+        }
+        return found;
+    }
+
+    private static List<String> describe(List<SearchEngine.SearchResult> results) {
+        List<String> described = new ArrayList<>();
+        for (SearchEngine.SearchResult r : results) {
+            described.add(r.fileIndex + ":" + r.lineNumber + ":" + r.offset + ":" + r.lineContent);
+        }
+        return described;
+    }
+
+    private static List<String> search(SearchEngine.LineMatcher matcher, TrigramIndex index) throws IOException {
+        List<SearchEngine.SearchResult> results = new ArrayList<>();
+        SearchEngine.searchFilesStreaming(List.of(big, crlf), matcher, index, new SearchHandle(), results::addAll);
+        return describe(results);
+    }
+
+    @Test
+    void stitchesLineNumbersAndOffsetsAcrossChunks() throws IOException {
+        assertEquals(expected, search(SearchEngine.queryMatcher(MARK, false, false), null));
+        assertEquals(expected, search(SearchEngine.queryMatcher("MARK", false, true), null));
+        assertEquals(expected, search(SearchEngine.queryMatcher("日志.*m[a]rk", true, false), null));
+        assertEquals(expected, search(SearchEngine.keywordMatcher(KeywordMatcher.forKeywords(List.of("MARK"), true)), null));
+    }
+
+    @Test
+    void findsTheSameLinesThroughTheTrigramIndex() throws IOException {
+        File indexFile = new File(dir, "index" + TrigramIndex.EXTENSION);
+        TrigramIndex.build(List.of(big, crlf), indexFile);
+        TrigramIndex index = TrigramIndex.open(indexFile);
+        assertEquals(expected, search(SearchEngine.queryMatcher(MARK, false, false), index));
+        assertEquals(expected, search(SearchEngine.queryMatcher("MARK", false, true), index));
+    }
+
+    @Test
+    void readsSourcesInLineAlignedChunks() throws IOException {
+        File indexFile = new File(dir, "source" + TrigramIndex.EXTENSION);
+        TrigramIndex.build(List.of(crlf), indexFile);
+        TrigramIndex.FileEntry entry = TrigramIndex.open(indexFile).getFreshEntry(crlf);
+        List<String> crlfExpected = naive(crlf, 0);
+        for (TrigramIndex.FileEntry indexEntry : new TrigramIndex.FileEntry[]{null, entry}) {
+            List<SearchEngine.SearchResult> results = new ArrayList<>();
+            try (ByteSource source = new FileByteSource(crlf)) {
+                SearchEngine.searchSourceStreaming(source, null, SearchEngine.queryMatcher(MARK, false, false), indexEntry,
+                        new SearchHandle(), results::addAll);
+            }
+            assertEquals(crlfExpected, describe(results));
+        }
+    }
+
+    @Test
+    void keepsWholeFileLineNumbersInASection() throws IOException {
+        List<String> all = naive(big, 0);
+        String first = all.get(all.size() / 3);
+        String last = all.get(2 * all.size() / 3);
+        int firstLine = Integer.parseInt(first.split(":")[1]);
+        long from = Long.parseLong(first.split(":")[2]);
+        long to = Long.parseLong(last.split(":")[2]); // Exclusive: the section ends before this line
+        SectionIndex.Section section = new SectionIndex.Section("middle", 0, from, firstLine);
+        section.setEndOffset(to);
+
+        List<String> inSection = new ArrayList<>();
+        for (String hit : all) {
+            long offset = Long.parseLong(hit.split(":")[2]);
+            if (offset >= from && offset < to) inSection.add(hit);
+        }
+        List<SearchEngine.SearchResult> results = new ArrayList<>();
+        SearchEngine.searchSectionStreaming(big, section, SearchEngine.queryMatcher(MARK, false, false), null,
+                new SearchHandle(), results::addAll);
+        assertEquals(inSection, describe(results));
+
+        results.clear();
+        try (ByteSource source = new FileByteSource(big)) {
+            SearchEngine.searchSourceStreaming(source, section, SearchEngine.queryMatcher(MARK, false, false), null,
+                    new SearchHandle(), results::addAll);
+        }
+        assertEquals(inSection, describe(results));
+    }
+
+    @Test
+    void stopsAtTheResultLimitWithAnInOrderPrefix() throws IOException {
+        SearchHandle handle = new SearchHandle(5, 0);
+        List<SearchEngine.SearchResult> results = new ArrayList<>();
+        int total = SearchEngine.searchFilesStreaming(List.of(big, crlf), SearchEngine.queryMatcher(MARK, false, false),
+                handle, results::addAll);
+        assertEquals(5, total);
+        assertEquals(expected.subList(0, 5), describe(results));
+        assertEquals(SearchHandle.StopReason.RESULT_LIMIT, handle.getStopReason());
+    }
+
+    @Test
+    void searchesEmptyAndUnterminatedSmallFiles() throws IOException {
+        File empty = new File(dir, "empty.txt");
+        Files.write(empty.toPath(), new byte[0]);
+        File small = new File(dir, "small.txt");
+        Files.write(small.toPath(), "a\r\nmark one\r\nb\r\nlast mark".getBytes(StandardCharsets.UTF_8));
+
+        List<SearchEngine.SearchResult> results = SearchEngine.searchFilesParallel(List.of(empty, small),
+                SearchEngine.queryMatcher(MARK, false, false));
+        assertEquals(List.of("1:2:3:mark one", "1:4:16:last mark"), describe(results));
+        assertEquals(describe(results), describe(SearchEngine.searchFilesParallel(List.of(empty, small),
+                SearchEngine.queryMatcher("mark", true, false))));
+    }
+
+    // The same query through LiteralMatcher.match only, which forces the decoded String path
+    private static SearchEngine.LineMatcher stringPath(SearchEngine.LineMatcher matcher) {
+        return matcher::match;
+    }
+
+    @Test
+    void matchesTheSameLinesOnBytesAsOnStrings() throws IOException {
+        File mixed = new File(dir, "mixed.txt");
+        Files.write(mixed.toPath(), String.join("\r\n",
+                "I ActivityManager: Start proc 日志",
+                "E activitymanager: ANR in com.example",
+                "W ACTIVITYMANAGER ärger über 日志 😀x",
+                "D Ärger: café crème",
+                "I nothing here",
+                "E CAFÉ 😀X ende").getBytes(StandardCharsets.UTF_8));
+
+        String[] queries = {"activitymanager", "ActivityMANAGER", "日志", "über 日志", "😀x", "café", "a", "r: ", "Ärger"};
+        for (String query : queries) {
+            for (boolean ignoreCase : new boolean[]{false, true}) {
+                SearchEngine.LiteralMatcher matcher = (SearchEngine.LiteralMatcher) SearchEngine.queryMatcher(query, false, ignoreCase);
+                String label = query + (ignoreCase ? " (ignore case)" : "");
+                List<String> onBytes = describe(SearchEngine.searchFilesParallel(List.of(mixed), matcher));
+                List<String> onStrings = describe(SearchEngine.searchFilesParallel(List.of(mixed), stringPath(matcher)));
+                assertEquals(onStrings, onBytes, label);
+                if (ignoreCase) assertFalse(onBytes.isEmpty(), label);
+            }
+        }
+        // Mixed-case ASCII is folded on the bytes
+        assertEquals(3, SearchEngine.searchFilesParallel(List.of(mixed), SearchEngine.queryMatcher("ACTIVITYmanager", false, true)).size());
+        assertEquals(2, SearchEngine.searchFilesParallel(List.of(mixed), SearchEngine.queryMatcher("😀x", false, true)).size());
+    }
+
+    @Test
+    void fallsBackToStringsForNonAsciiCasedQueries() throws IOException {
+        assertTrue(((SearchEngine.LiteralMatcher) SearchEngine.queryMatcher("日志 ANR", false, true)).matchesBytes());
+        assertTrue(((SearchEngine.LiteralMatcher) SearchEngine.queryMatcher("Ärger", false, false)).matchesBytes());
+        SearchEngine.LiteralMatcher folded = (SearchEngine.LiteralMatcher) SearchEngine.queryMatcher("Ärger", false, true);
+        assertFalse(folded.matchesBytes());
+        assertFalse(((SearchEngine.LiteralMatcher) SearchEngine.queryMatcher("café", false, true)).matchesBytes());
+
+        File file = new File(dir, "umlaut.txt");
+        Files.write(file.toPath(), "ärger\nÄRGER\nÄrger\narger\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(List.of("0:1:0:ärger", "0:2:7:ÄRGER", "0:3:14:Ärger"),
+                describe(SearchEngine.searchFilesParallel(List.of(file), folded)));
+    }
+}
@@ -0,0 +1,138 @@
+package com.buganalyzer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SectionIndexTest {
+
+    @TempDir
+    File dir;
+
+    private static final String REPORT = String.join("\n",
+            "========================================================",
+            "== dumpstate: 2024-01-01 10:00:00",
+            "------ UPTIME (uptime) ------",
+            "up 3 days",
+            "------ 0.010s was the duration of 'UPTIME' ------",
+            "------ DUMPSYS (/system/bin/dumpsys) ------",
+            "DUMP OF SERVICE activity:",
+            "ACTIVITY MANAGER",
+            "DUMP OF SERVICE window:",
+            "WINDOW MANAGER",
+            "-------------------------------------------------------------------------------",
+            "------ SYSTEM LOG (logcat -v threadtime) ------",
+            "01-01 10:00:00.000 D tag: DUMP OF SERVICE fake: not at line start",
+            "Done") + "\n";
+
+    private static SectionIndex index(byte[] content, int pieceSize) {
+        SectionIndex.Builder builder = new SectionIndex.Builder();
+        for (int off = 0; off < content.length; off += pieceSize) {
+            builder.update(content, off, Math.min(pieceSize, content.length - off));
+        }
+        return builder.toIndex();
+    }
+
+    private static List<String> titles(SectionIndex index) {
+        List<String> titles = new ArrayList<>();
+        for (SectionIndex.Section section : index.getSections()) {
+            titles.add(section.getLevel() + ":" + section.getTitle());
+        }
+        return titles;
+    }
+
+    @Test
+    void findsSectionAndServiceHeaders() {
+        SectionIndex index = index(REPORT.getBytes(StandardCharsets.UTF_8), 1 << 16);
+        assertEquals(List.of("0:UPTIME (uptime)", "0:DUMPSYS (/system/bin/dumpsys)", "1:activity", "1:window",
+                "0:SYSTEM LOG (logcat -v threadtime)"), titles(index));
+    }
+
+    @Test
+    void recordsRangesThatNestServicesInTheirSection() {
+        byte[] content = REPORT.getBytes(StandardCharsets.UTF_8);
+        List<SectionIndex.Section> sections = index(content, 1 << 16).getSections();
+        SectionIndex.Section uptime = sections.get(0);
+        SectionIndex.Section dumpsys = sections.get(1);
+        SectionIndex.Section activity = sections.get(2);
+        SectionIndex.Section window = sections.get(3);
+        SectionIndex.Section log = sections.get(4);
+
+        assertEquals(3, uptime.getLine());
+        assertEquals(5, uptime.getEndLine());
+        assertEquals(REPORT.indexOf("------ UPTIME"), uptime.getOffset());
+        assertEquals(dumpsys.getOffset(), uptime.getEndOffset());
+
+        // The dumpsys section contains both services and ends where the system log starts
+        assertEquals(log.getOffset(), dumpsys.getEndOffset());
+        assertEquals(11, dumpsys.getEndLine());
+        assertEquals(window.getOffset(), activity.getEndOffset());
+        assertEquals(8, activity.getEndLine());
+        assertEquals(log.getOffset(), window.getEndOffset());
+
+        assertEquals(content.length, log.getEndOffset());
+        assertEquals(14, log.getEndLine());
+    }
+
+    @Test
+    void findsHeadersSplitAcrossUpdates() {
+        byte[] content = REPORT.getBytes(StandardCharsets.UTF_8);
+        List<String> expected = titles(index(content, 1 << 16));
+        for (int pieceSize : new int[]{1, 2, 7, 31}) {
+            assertEquals(expected, titles(index(content, pieceSize)), "pieces of " + pieceSize);
+        }
+    }
+
+    @Test
+    void handlesCrlfAndAHeaderOnTheLastLineWithoutNewline() {
+        String crlf = REPORT.replace("\n", "\r\n") + "DUMP OF SERVICE last:";
+        byte[] content = crlf.getBytes(StandardCharsets.UTF_8);
+        SectionIndex index = index(content, 1 << 16);
+        List<String> titles = titles(index);
+        assertEquals("0:UPTIME (uptime)", titles.get(0));
+        assertEquals("1:last", titles.get(titles.size() - 1));
+        SectionIndex.Section last = index.getSections().get(titles.size() - 1);
+        assertEquals(15, last.getLine());
+        assertEquals(content.length, last.getEndOffset());
+        assertEquals(crlf.indexOf("DUMP OF SERVICE last"), last.getOffset());
+    }
+
+    @Test
+    void ignoresOverlongLinesAndMultiByteText() {
+        String report = "------ " + "x".repeat(600) + " ------\n"
+                + "------ 日志 (log) ------\n"
+                + "DUMP OF SERVICE " + "y".repeat(600) + ":\n";
+        SectionIndex index = index(report.getBytes(StandardCharsets.UTF_8), 1 << 16);
+        assertEquals(List.of("0:日志 (log)"), titles(index));
+        assertEquals(2, index.getSections().get(0).getLine());
+    }
+
+    @Test
+    void indexesEmptyInput() {
+        assertTrue(index(new byte[0], 1).getSections().isEmpty());
+    }
+
+    @Test
+    void roundTripsThroughTheSidecarFile() throws IOException {
+        SectionIndex index = index(REPORT.getBytes(StandardCharsets.UTF_8), 1 << 16);
+        File file = new File(dir, "bugreport.txt" + SectionIndex.EXTENSION);
+        index.write(file);
+        SectionIndex reopened = SectionIndex.open(file);
+        assertEquals(titles(index), titles(reopened));
+        for (int i = 0; i < index.getSections().size(); i++) {
+            SectionIndex.Section a = index.getSections().get(i);
+            SectionIndex.Section b = reopened.getSections().get(i);
+            assertEquals(a.getOffset(), b.getOffset());
+            assertEquals(a.getEndOffset(), b.getEndOffset());
+            assertEquals(a.getLine(), b.getLine());
+            assertEquals(a.getEndLine(), b.getEndLine());
+        }
+    }
+}
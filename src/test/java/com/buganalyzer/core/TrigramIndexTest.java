@@ -0,0 +1,209 @@
+package com.buganalyzer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    @TempDir
+    File dir;
+
+    // Lines "line N lorem ipsum...", with extra words appended to the lines given as {line, word} pairs
+    private File writeLines(String name, int lineCount, String eol, String... extra) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            sb.append("line ").append(i).append(" lorem ipsum dolor sit amet");
+            for (int j = 0; j + 1 < extra.length; j += 2) {
+                if (Integer.parseInt(extra[j]) == i) sb.append(' ').append(extra[j + 1]);
+            }
+            sb.append(eol);
+        }
+        File file = new File(dir, name);
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private TrigramIndex.FileEntry index(File file) throws IOException {
+        File indexFile = new File(dir, file.getName() + TrigramIndex.EXTENSION);
+        TrigramIndex.build(List.of(file), indexFile);
+        TrigramIndex.FileEntry entry = TrigramIndex.open(indexFile).getFreshEntry(file);
+        assertNotNull(entry);
+        return entry;
+    }
+
+    // Every occurrence of the query must lie in a returned range, and each range's line count must be right
+    private static void assertCovers(File file, List<long[]> ranges, String query) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        String text = new String(content, StandardCharsets.ISO_8859_1).toLowerCase();
+        for (int at = text.indexOf(query.toLowerCase()); at >= 0; at = text.indexOf(query.toLowerCase(), at + 1)) {
+            boolean covered = false;
+            for (long[] range : ranges) {
+                if (at >= range[0] && at + query.length() <= range[1]) covered = true;
+            }
+            assertTrue(covered, query + " at " + at + " not in a candidate range");
+        }
+        for (long[] range : ranges) {
+            int lines = 0;
+            for (int i = 0; i < range[0]; i++) {
+                if (content[i] == '\n') lines++;
+            }
+            assertEquals(lines, range[2], "lines before " + range[0]);
+            assertTrue(range[0] == 0 || content[(int) range[0] - 1] == '\n', "range starts mid-line");
+        }
+    }
+
+    @Test
+    void narrowsSearchToBlocksHoldingTheQuery() throws IOException {
+        File file = writeLines("bugreport.txt", 100_000, "\n", "10", "needle-one", "90000", "Needle-Two");
+        TrigramIndex.FileEntry entry = index(file);
+        assertTrue(entry.getBlockCount() > 3);
+
+        List<long[]> ranges = entry.candidateRanges("needle-one".getBytes(StandardCharsets.UTF_8), Long.MAX_VALUE);
+        assertEquals(1, ranges.size());
+        assertEquals(0, ranges.get(0)[0]);
+        assertCovers(file, ranges, "needle-one");
+
+        // Trigrams are case-folded, so a differently cased query finds the same blocks
+        List<long[]> upper = entry.candidateRanges("NEEDLE-TWO".getBytes(StandardCharsets.UTF_8), Long.MAX_VALUE);
+        assertEquals(1, upper.size());
+        assertTrue(upper.get(0)[0] > 0);
+        assertCovers(file, upper, "needle-two");
+    }
+
+    @Test
+    void returnsNoRangesForAbsentTrigramsAndNullForShortQueries() throws IOException {
+        TrigramIndex.FileEntry entry = index(writeLines("bugreport.txt", 1000, "\n"));
+        assertTrue(entry.candidateRanges("zzq".getBytes(StandardCharsets.UTF_8), Long.MAX_VALUE).isEmpty());
+        assertNull(entry.candidateRanges("li".getBytes(StandardCharsets.UTF_8), Long.MAX_VALUE));
+    }
+
+    @Test
+    void mergesAdjacentBlocksUpToTheRangeSize() throws IOException {
+        File file = writeLines("bugreport.txt", 150_000, "\n");
+        TrigramIndex.FileEntry entry = index(file);
+        byte[] common = "lorem".getBytes(StandardCharsets.UTF_8);
+
+        List<long[]> whole = entry.candidateRanges(common, Long.MAX_VALUE);
+        assertEquals(1, whole.size());
+        assertEquals(file.length(), whole.get(0)[1]);
+
+        List<long[]> perBlock = entry.candidateRanges(common, 1);
+        assertEquals(entry.getBlockCount(), perBlock.size());
+        for (int i = 1; i < perBlock.size(); i++) {
+            assertEquals(perBlock.get(i - 1)[1], perBlock.get(i)[0]);
+        }
+        assertCovers(file, perBlock, "lorem");
+    }
+
+    @Test
+    void findsMatchesOnBothSidesOfABlockBoundary() throws IOException {
+        File plain = writeLines("plain.txt", 60_000, "\n");
+        TrigramIndex.FileEntry probe = index(plain);
+        List<long[]> blocks = probe.candidateRanges("lorem".getBytes(StandardCharsets.UTF_8), 1);
+        // The lines just before and just after the first boundary
+        int boundaryLine = (int) blocks.get(1)[2];
+
+        File file = writeLines("bugreport.txt", 60_000, "\n",
+                String.valueOf(boundaryLine - 1), "tailmarker", String.valueOf(boundaryLine), "headmarker");
+        TrigramIndex.FileEntry entry = index(file);
+        List<long[]> tail = entry.candidateRanges("tailmarker".getBytes(StandardCharsets.UTF_8), 1);
+        List<long[]> head = entry.candidateRanges("headmarker".getBytes(StandardCharsets.UTF_8), 1);
+        assertEquals(1, tail.size());
+        assertEquals(1, head.size());
+        assertEquals(tail.get(0)[1], head.get(0)[0]);
+        assertCovers(file, tail, "tailmarker");
+        assertCovers(file, head, "headmarker");
+    }
+
+    @Test
+    void handlesCrlfAndMissingTrailingNewline() throws IOException {
+        File file = writeLines("bugreport.txt", 80_000, "\r\n", "79999", "lastline");
+        byte[] content = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(content, content.length - 2));
+        TrigramIndex.FileEntry entry = index(file);
+        List<long[]> ranges = entry.candidateRanges("lastline".getBytes(StandardCharsets.UTF_8), 1);
+        assertEquals(1, ranges.size());
+        assertEquals(file.length(), ranges.get(0)[1]);
+        assertCovers(file, ranges, "lastline");
+        // A trigram spanning the line break never matches
+        assertTrue(entry.candidateRanges("amet\r\nline".getBytes(StandardCharsets.UTF_8), 1).isEmpty());
+    }
+
+    @Test
+    void indexesEmptyFiles() throws IOException {
+        File file = new File(dir, "empty.txt");
+        Files.write(file.toPath(), new byte[0]);
+        TrigramIndex.FileEntry entry = index(file);
+        assertEquals(1, entry.getBlockCount());
+        assertTrue(entry.candidateRanges("abc".getBytes(StandardCharsets.UTF_8), 1).isEmpty());
+    }
+
+    @Test
+    void builderFedInPiecesMatchesBuild() throws IOException {
+        File file = writeLines("bugreport.txt", 50_000, "\n", "123", "needle");
+        File built = new File(dir, "built" + TrigramIndex.EXTENSION);
+        TrigramIndex.build(List.of(file), built);
+
+        TrigramIndex.Builder builder = new TrigramIndex.Builder();
+        byte[] content = Files.readAllBytes(file.toPath());
+        for (int off = 0; off < content.length; off += 7919) {
+            builder.update(content, off, Math.min(7919, content.length - off));
+        }
+        File streamed = new File(dir, "streamed" + TrigramIndex.EXTENSION);
+        TrigramIndex.write(streamed, file, builder);
+        assertArrayEquals(Files.readAllBytes(built.toPath()), Files.readAllBytes(streamed.toPath()));
+    }
+
+    @Test
+    void spilledRunsMergeToTheSameIndex() throws IOException {
+        File file = writeLines("bugreport.txt", 200_000, "\n", "5", "needle", "199999", "needle");
+        File built = new File(dir, "built" + TrigramIndex.EXTENSION);
+        TrigramIndex.build(List.of(file), built);
+
+        // Runs of a few hundred pairs: a spill after every block
+        TrigramIndex.Builder builder = new TrigramIndex.Builder(300);
+        byte[] content = Files.readAllBytes(file.toPath());
+        builder.update(content, 0, content.length);
+        File spilled = new File(dir, "spilled" + TrigramIndex.EXTENSION);
+        TrigramIndex.write(spilled, file, builder);
+        assertArrayEquals(Files.readAllBytes(built.toPath()), Files.readAllBytes(spilled.toPath()));
+    }
+
+    @Test
+    void detectsChangedFiles() throws IOException {
+        File file = writeLines("bugreport.txt", 100, "\n");
+        File indexFile = new File(dir, "index" + TrigramIndex.EXTENSION);
+        TrigramIndex.build(List.of(file), indexFile);
+        Files.write(file.toPath(), "changed\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(TrigramIndex.open(indexFile).getFreshEntry(file));
+        assertNotNull(TrigramIndex.open(indexFile).getEntry(file.getName()));
+    }
+
+    @Test
+    void keepsNothingOfTheIndexFileOpen() throws IOException {
+        File file = writeLines("bugreport.txt", 50_000, "\n", "40000", "needle");
+        File indexFile = new File(dir, "bugreport.txt" + TrigramIndex.EXTENSION);
+        TrigramIndex.build(List.of(file), indexFile);
+        TrigramIndex index = TrigramIndex.open(indexFile);
+
+        // Overwriting the file in place would show through a mapping
+        byte[] zeros = new byte[(int) indexFile.length()];
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+            raf.write(zeros);
+        }
+        assertTrue(indexFile.delete());
+        List<long[]> ranges = index.getFreshEntry(file).candidateRanges("needle".getBytes(StandardCharsets.UTF_8), Long.MAX_VALUE);
+        assertEquals(1, ranges.size());
+        assertCovers(file, ranges, "needle");
+    }
+}
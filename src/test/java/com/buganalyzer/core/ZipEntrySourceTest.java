@@ -0,0 +1,165 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.ArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipEntrySourceTest {
+
+    @TempDir
+    static File dir;
+    static File zip;
+    static final Map<String, byte[]> contents = new LinkedHashMap<>();
+    static final Map<String, ArchiveEntry> entries = new LinkedHashMap<>();
+
+    // Bugreport-like text with some random stretches, long enough for several access points
+    private static byte[] report(int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(size + 200);
+        while (sb.length() < size) {
+            sb.append(String.format("%05d I ActivityManager: proc %d 日志 ", random.nextInt(99999), random.nextInt()));
+            for (int i = random.nextInt(30); i > 0; i--) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            sb.append(random.nextInt(10) == 0 ? "\r\n" : "\n");
+        }
+        return Arrays.copyOf(sb.toString().getBytes(StandardCharsets.UTF_8), size);
+    }
+
+    @BeforeAll
+    static void writeZip() throws IOException {
+        contents.put("bugreport-fast.txt", report(12_000_000, 1));
+        contents.put("bugreport-best.txt", report(3_000_000, 2));
+        contents.put("bugreport-stored.txt", report(2_000_000, 3));
+        contents.put("empty.txt", new byte[0]);
+        contents.put("one.txt", new byte[]{'x'});
+
+        zip = new File(dir, "bugreport.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+                ZipEntry entry = new ZipEntry(e.getKey());
+                out.setLevel(e.getKey().contains("best") ? 9 : 1);
+                if (e.getKey().contains("stored")) {
+                    CRC32 crc = new CRC32();
+                    crc.update(e.getValue());
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(e.getValue().length);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+        }
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+                ArchiveEntry archiveEntry = new ArchiveEntry(entry.getName(), new ArrayList<>(), entry.getSize(),
+                        entry.getCompressedSize(), entry.getDataOffset());
+                archiveEntry.setMethod(entry.getMethod());
+                archiveEntry.setCrc(entry.getCrc());
+                assertTrue(ZipEntrySource.canReadInPlace(archiveEntry));
+                entries.put(entry.getName(), archiveEntry);
+            }
+        }
+    }
+
+    private static ZipEntrySource open(String name) {
+        return new ZipEntrySource(zip, name, entries.get(name));
+    }
+
+    private static void assertRange(byte[] content, ByteSource source, long position, int length) throws IOException {
+        byte[] buffer = new byte[length];
+        int read = source.readFully(position, buffer, 0, length);
+        int expected = (int) Math.max(0, Math.min(length, content.length - position));
+        assertEquals(expected, read, "bytes read at " + position);
+        assertArrayEquals(Arrays.copyOfRange(content, (int) position, (int) position + expected),
+                Arrays.copyOf(buffer, expected), "bytes at " + position);
+    }
+
+    @Test
+    void readsEntriesFrontToBack() throws IOException {
+        for (String name : contents.keySet()) {
+            byte[] content = contents.get(name);
+            try (ZipEntrySource source = open(name)) {
+                assertEquals(content.length, source.size());
+                for (long position = 0; position < content.length; position += 300_000) {
+                    assertRange(content, source, position, 300_000);
+                }
+                assertEquals(-1, source.read(content.length, new byte[1], 0, 1));
+            }
+        }
+    }
+
+    @Test
+    void readsRandomRangesOfDeflatedAndStoredEntries() throws IOException {
+        Random random = new Random(9);
+        for (String name : List.of("bugreport-fast.txt", "bugreport-best.txt", "bugreport-stored.txt")) {
+            byte[] content = contents.get(name);
+            try (ZipEntrySource source = open(name)) {
+                for (int i = 0; i < 150; i++) {
+                    long position = random.nextInt(content.length);
+                    // Some reads straddle the 1 MB cache blocks
+                    if (i % 3 == 0) position = Math.max(0, (position / (1 << 20)) * (1 << 20) - random.nextInt(100));
+                    assertRange(content, source, position, 1 + random.nextInt(200_000));
+                }
+            }
+        }
+    }
+
+    @Test
+    void jumpsBackwardsAfterReadingToTheEnd() throws IOException {
+        byte[] content = contents.get("bugreport-fast.txt");
+        try (ZipEntrySource source = open("bugreport-fast.txt")) {
+            assertRange(content, source, content.length - 1000, 1000);
+            // Access points left by the first pass serve reads far from any cached block
+            for (long position = content.length - 2_000_000; position > 0; position -= 2_100_000) {
+                assertRange(content, source, position, 5000);
+            }
+            assertRange(content, source, 0, 100);
+        }
+    }
+
+    @Test
+    void detectsACrcMismatch() {
+        ArchiveEntry entry = entries.get("bugreport-best.txt");
+        ArchiveEntry wrong = new ArchiveEntry(entry.getName(), new ArrayList<>(), entry.getSize(),
+                entry.getCompressedSize(), entry.getDataOffset());
+        wrong.setMethod(entry.getMethod());
+        wrong.setCrc(entry.getCrc() ^ 1);
+        byte[] buffer = new byte[(int) entry.getSize()];
+        IOException e = assertThrows(IOException.class, () -> {
+            try (ZipEntrySource source = new ZipEntrySource(zip, "bad.txt", wrong)) {
+                source.readFully(0, buffer, 0, buffer.length);
+            }
+        });
+        assertTrue(e.getMessage().contains("CRC"), e.getMessage());
+    }
+
+    @Test
+    void refusesReadsOnceClosed() throws IOException {
+        ZipEntrySource source = open("bugreport-best.txt");
+        assertRange(contents.get("bugreport-best.txt"), source, 1_500_000, 10);
+        source.close();
+        assertThrows(IOException.class, () -> source.read(0, new byte[1], 0, 1));
+    }
+}
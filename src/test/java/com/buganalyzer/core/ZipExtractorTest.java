@@ -0,0 +1,246 @@
+package com.buganalyzer.core;
+
+import com.buganalyzer.model.FileMetadata;
+import com.buganalyzer.model.FilePart;
+import com.buganalyzer.model.ProjectManifest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The single extraction pass must leave the same line index, section index, trigram index and
+// parts as building each of them from the finished file would
+class ZipExtractorTest {
+
+    private static final long PART_BYTES = 256 * 1024;
+
+    @TempDir
+    File dir;
+
+    // Sections with CRLF and LF lines, ending without a newline
+    private static byte[] report(long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < 40; s++) {
+            sb.append("------ SECTION ").append(s).append(" (cmd ").append(s).append(") ------\n");
+            if (s % 4 == 1) sb.append("DUMP OF SERVICE service").append(s).append(":\r\n");
+            for (int i = random.nextInt(2000); i > 0; i--) {
+                sb.append("01-01 10:00:00 I 日志 line ").append(random.nextInt()).append(random.nextBoolean() ? "\n" : "\r\n");
+            }
+        }
+        sb.append("last line needle");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] zipOf(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(e.getKey()));
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private Map<String, byte[]> writeZip(File zip) throws IOException {
+        return writeZip(zip, 1);
+    }
+
+    private Map<String, byte[]> writeZip(File zip, long mainSeed) throws IOException {
+        Map<String, byte[]> reports = new HashMap<>();
+        reports.put("bugreport-main.txt", report(mainSeed));
+        reports.put("bugreport-nested.txt", report(2));
+        Map<String, byte[]> inner = new HashMap<>();
+        inner.put("bugreport-nested.txt", reports.get("bugreport-nested.txt"));
+        Map<String, byte[]> outer = new LinkedHashMap<>();
+        outer.put("bugreport-main.txt", reports.get("bugreport-main.txt"));
+        outer.put("inner.zip", zipOf(inner));
+        outer.put("notes.txt", "not a bugreport\n".getBytes(StandardCharsets.UTF_8));
+        try (FileOutputStream out = new FileOutputStream(zip)) {
+            out.write(zipOf(outer));
+        }
+        return reports;
+    }
+
+    private static ByteSource sourceOf(FileMetadata metadata, File projectDir) throws IOException {
+        ByteSource stored = ProjectSearch.storedSource(metadata, projectDir);
+        if (stored != null) return stored;
+        return new FileByteSource(new File(ContentStore.dirOf(metadata, projectDir), ContentStore.nameOf(metadata)));
+    }
+
+    private static byte[] readAll(ByteSource source) throws IOException {
+        byte[] bytes = new byte[(int) source.size()];
+        assertEquals(bytes.length, source.readFully(0, bytes, 0, bytes.length));
+        return bytes;
+    }
+
+    private void assertPipeline(ImportOptions options, String name) throws IOException {
+        File zip = new File(dir, name + ".zip");
+        Map<String, byte[]> reports = writeZip(zip);
+        options.setSplitPolicy(FileSplitter.bySize(PART_BYTES));
+        ProjectManifest manifest = ZipExtractor.extractProject(zip, options);
+        File projectDir = new File(dir, name);
+
+        List<String> found = new ArrayList<>();
+        for (FileMetadata metadata : manifest.getFiles()) {
+            if (metadata.getType() != FileMetadata.FileType.BUGREPORT) continue;
+            found.add(metadata.getFileName());
+            byte[] content = reports.get(metadata.getFileName());
+            File indexDir = ContentStore.dirOf(metadata, projectDir);
+            try (ByteSource source = sourceOf(metadata, projectDir)) {
+                assertArrayEquals(content, readAll(source), metadata.getFileName());
+
+                LineIndex.Builder lines = new LineIndex.Builder();
+                lines.update(content, 0, content.length);
+                LineIndex expectedLines = lines.toIndex(content.length, 0);
+                LineIndex lineIndex = LineIndex.open(new File(indexDir, metadata.getLineIndex()));
+                assertTrue(lineIndex.isFresh(source.size(), source.lastModified()));
+                assertEquals(expectedLines.getLineCount(), lineIndex.getLineCount());
+                assertEquals(expectedLines.getLineCount(), metadata.getLineCount());
+                for (int line = 1; line <= lineIndex.getLineCount(); line++) {
+                    assertEquals(expectedLines.lineStart(line), lineIndex.lineStart(line));
+                }
+
+                SectionIndex.Builder sectionBuilder = new SectionIndex.Builder();
+                sectionBuilder.update(content, 0, content.length);
+                List<SectionIndex.Section> expectedSections = sectionBuilder.toIndex().getSections();
+                List<SectionIndex.Section> sections = SectionIndex.open(new File(indexDir, metadata.getSectionIndex())).getSections();
+                assertEquals(expectedSections.size(), sections.size());
+                for (int i = 0; i < sections.size(); i++) {
+                    assertEquals(expectedSections.get(i).getTitle(), sections.get(i).getTitle());
+                    assertEquals(expectedSections.get(i).getOffset(), sections.get(i).getOffset());
+                    assertEquals(expectedSections.get(i).getEndLine(), sections.get(i).getEndLine());
+                }
+
+                TrigramIndex index = TrigramIndex.open(new File(indexDir, metadata.getSearchIndex()));
+                TrigramIndex.FileEntry entry = index.getFreshEntry(source.getName(), source.size(), source.lastModified());
+                assertNotNull(entry, metadata.getFileName());
+                List<long[]> ranges = entry.candidateRanges("needle".getBytes(StandardCharsets.UTF_8), Long.MAX_VALUE);
+                assertEquals(1, ranges.size());
+                assertEquals(content.length, ranges.get(0)[1]);
+
+                List<FilePart> parts = metadata.getParts();
+                assertNotNull(parts);
+                assertEquals(FileSplitter.planParts(new File(metadata.getFileName()), expectedLines, null,
+                        FileSplitter.bySize(PART_BYTES)).size(), parts.size());
+                long offset = 0;
+                for (FilePart part : parts) {
+                    assertEquals(offset, part.getOffset());
+                    assertEquals(expectedLines.lineStart(part.getFirstLine()), part.getOffset());
+                    offset += part.getLength();
+                }
+                assertEquals(content.length, offset);
+            }
+        }
+        found.sort(null);
+        assertEquals(List.of("bugreport-main.txt", "bugreport-nested.txt"), found);
+    }
+
+    @Test
+    void indexesAndSplitsExtractedReportsInOnePass() throws IOException {
+        assertPipeline(new ImportOptions(), "extracted");
+    }
+
+    @Test
+    void indexesAndSplitsCompressedReportsInOnePass() throws IOException {
+        ImportOptions options = new ImportOptions();
+        options.setCompressReports(true);
+        assertPipeline(options, "compressed");
+    }
+
+    @Test
+    void indexesReportsReadInPlace() throws IOException {
+        ImportOptions options = new ImportOptions();
+        options.setExtractReports(false);
+        assertPipeline(options, "inplace");
+    }
+
+    @Test
+    void importsAnUnchangedZipAgainAsIs() throws IOException {
+        File zip = new File(dir, "again.zip");
+        writeZip(zip);
+        ProjectManifest first = ZipExtractor.extractProject(zip, new ImportOptions());
+        ProjectManager.saveProject(first, new File(dir, "again"));
+        ProjectManifest second = ZipExtractor.extractProject(zip, new ImportOptions());
+        assertEquals(first.getFiles().size(), second.getFiles().size());
+        assertEquals(first.getSourceHash(), second.getSourceHash());
+    }
+
+    private static FileMetadata report(ProjectManifest manifest, String fileName) {
+        for (FileMetadata metadata : manifest.getFiles()) {
+            if (metadata.getFileName().equals(fileName)) return metadata;
+        }
+        return fail(fileName + " is not in the manifest");
+    }
+
+    @Test
+    void replacesChangedReportsUnderTheirOldNames() throws IOException {
+        File zip = new File(dir, "changed.zip");
+        File projectDir = new File(dir, "changed");
+        writeZip(zip, 1);
+        ImportOptions compressed = new ImportOptions();
+        compressed.setCompressReports(true);
+        ProjectManager.saveProject(ZipExtractor.extractProject(zip, compressed), projectDir);
+        assertTrue(new File(projectDir, "bugreport-main.txt" + BlockCompressedFile.EXTENSION).isFile());
+
+        // New content and new settings: the plain files replace the compressed ones
+        Map<String, byte[]> reports = writeZip(zip, 3);
+        assertTrue(zip.setLastModified(zip.lastModified() + 2000));
+        ProjectManifest manifest = ZipExtractor.extractProject(zip, new ImportOptions());
+        for (String name : List.of("bugreport-main.txt", "bugreport-nested.txt")) {
+            FileMetadata metadata = report(manifest, name);
+            try (ByteSource source = sourceOf(metadata, projectDir)) {
+                assertArrayEquals(reports.get(name), readAll(source), name);
+                assertTrue(LineIndex.open(new File(projectDir, metadata.getLineIndex()))
+                        .isFresh(source.size(), source.lastModified()), name);
+            }
+            assertFalse(new File(projectDir, name + BlockCompressedFile.EXTENSION).exists(), name);
+        }
+        assertFalse(new File(projectDir, "bugreport-main_1.txt").exists());
+        assertFalse(new File(projectDir, ".reimport").exists());
+    }
+
+    @Test
+    void keepsTheEarlierFilesWhenTheCommitFails() throws IOException {
+        File zip = new File(dir, "stuck.zip");
+        File projectDir = new File(dir, "stuck");
+        writeZip(zip, 1);
+        ProjectManifest first = ZipExtractor.extractProject(zip, new ImportOptions());
+        ProjectManager.saveProject(first, projectDir);
+
+        // A directory in place of one sidecar makes moving the new one over it fail
+        FileMetadata main = report(first, "bugreport-main.txt");
+        File blocked = new File(projectDir, main.getSectionIndex());
+        assertTrue(blocked.delete());
+        assertTrue(new File(blocked, "inside").mkdirs());
+
+        writeZip(zip, 3);
+        assertTrue(zip.setLastModified(zip.lastModified() + 2000));
+        assertThrows(IOException.class, () -> ZipExtractor.extractProject(zip, new ImportOptions()));
+
+        // Whatever was moved before the failure, every name of the earlier import is still there
+        for (FileMetadata metadata : first.getFiles()) {
+            assertTrue(new File(projectDir, metadata.getFileName()).isFile(), metadata.getFileName());
+            if (metadata.getLineIndex() != null) {
+                assertTrue(new File(projectDir, metadata.getLineIndex()).isFile(), metadata.getLineIndex());
+            }
+        }
+        assertTrue(new File(projectDir, ".reimport").isDirectory());
+    }
+}